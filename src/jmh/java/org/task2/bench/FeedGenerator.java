@@ -0,0 +1,78 @@
+package org.task2.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates synthetic feeds in the {@code fo_random.txt} format: a header line followed by
+ * {@code 'MATCH_ID'|MARKET_ID|'OUTCOME_ID'|'SPECIFIERS'} lines, where lines without specifiers are B events.
+ * <p>
+ * Can also be run on its own to write a feed to disk:
+ * {@code java -cp target/classes org.task2.bench.FeedGenerator feed.txt 10000000 50000}
+ */
+public final class FeedGenerator {
+
+    public static final String HEADER = "MATCH_ID|MARKET_ID|OUTCOME_ID|SPECIFIERS";
+
+    private final int matchIds;
+    private final double aEventRatio;
+    private final Random random;
+
+    /**
+     * @param matchIds    Number of distinct MATCH_IDs the lines are spread over.
+     * @param aEventRatio Share of lines that carry specifiers (A events), between 0 and 1.
+     */
+    public FeedGenerator(int matchIds, double aEventRatio, long seed) {
+        this.matchIds = matchIds;
+        this.aEventRatio = aEventRatio;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return The feed, header line included, as UTF-8 bytes.
+     */
+    public byte[] generate(int lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(lines * 40);
+        write(out, lines);
+        return out.toByteArray();
+    }
+
+    public void write(OutputStream out, long lines) {
+        try {
+            out.write((HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+            StringBuilder line = new StringBuilder(64);
+            for (long i = 0; i < lines; i++) {
+                line.setLength(0);
+                line.append("'sr:match:").append(random.nextInt(matchIds)).append("'|")
+                        .append(1 + random.nextInt(1000)).append("|'")
+                        .append(random.nextInt(30)).append('\'');
+                if (random.nextDouble() < aEventRatio) {
+                    line.append("|'total=").append(random.nextInt(10)).append(".5'");
+                }
+                line.append('\n');
+                out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: FeedGenerator <output file> <lines> <distinct match ids> [A event ratio]");
+            System.exit(1);
+        }
+        double aEventRatio = args.length > 3 ? Double.parseDouble(args[3]) : 0.5;
+        FeedGenerator generator = new FeedGenerator(Integer.parseInt(args[2]), aEventRatio, 42);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Path.of(args[0])), 1 << 16)) {
+            generator.write(out, Long.parseLong(args[1]));
+        }
+    }
+}
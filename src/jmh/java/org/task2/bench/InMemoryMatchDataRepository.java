@@ -0,0 +1,124 @@
+package org.task2.bench;
+
+import org.task2.model.MatchDataColumns;
+import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
+import org.task2.repository.MatchDataRepository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for {@link MatchDataRepository} that only counts rows, optionally sleeping per batch to
+ * simulate a database round-trip, so the write stage can be measured without PostgreSQL.
+ */
+public class InMemoryMatchDataRepository implements MatchDataRepository {
+
+    private final long batchLatencyNanos;
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public InMemoryMatchDataRepository(long batchLatencyMicros) {
+        this.batchLatencyNanos = TimeUnit.MICROSECONDS.toNanos(batchLatencyMicros);
+    }
+
+    @Override
+    public void insertMatchData(List<MatchDataDTO> matchDataList) {
+        write(matchDataList.size());
+    }
+
+    @Override
+    public void copyMatchData(List<MatchDataDTO> matchDataList) {
+        write(matchDataList.size());
+    }
+
+    @Override
+    public void insertMatchData(MatchDataColumns columns, int[] rows, int from, int to) {
+        write(to - from);
+    }
+
+    @Override
+    public void copyMatchData(MatchDataColumns columns, int[] rows, int from, int to) {
+        write(to - from);
+    }
+
+    @Override
+    public int[] upsertMatchData(List<MatchDataDTO> matchDataList) {
+        return inserted(matchDataList.size());
+    }
+
+    @Override
+    public int[] upsertMatchData(MatchDataColumns columns, int[] rows, int from, int to) {
+        return inserted(to - from);
+    }
+
+    @Override
+    public void prepareUpsert(String runId) {
+    }
+
+    @Override
+    public void createRunPartition(String runId) {
+    }
+
+    @Override
+    public void attachRunPartition(String runId) {
+    }
+
+    @Override
+    public void createStagingTable(String runId, int partitionIndex) {
+    }
+
+    @Override
+    public void copyToStaging(String runId, int partitionIndex, MatchDataColumns columns, int from, int to) {
+        write(to - from);
+    }
+
+    @Override
+    public long mergeStaging(String runId, int partitionIndex, boolean skipExisting) {
+        return 0;
+    }
+
+    @Override
+    public void dropStagingTable(String runId, int partitionIndex) {
+    }
+
+    @Override
+    public long exportMatchData(MatchDataQueryDTO query, RowHandler handler) {
+        throw new UnsupportedOperationException("Rows are only counted");
+    }
+
+    @Override
+    public List<MatchDataDTO> findMatchHistory(String matchId, String runId) {
+        throw new UnsupportedOperationException("Rows are only counted");
+    }
+
+    @Override
+    public void dropRunData(String runId) {
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    private int[] inserted(int rowCount) {
+        write(rowCount);
+        int[] updateCounts = new int[rowCount];
+        Arrays.fill(updateCounts, 1);
+        return updateCounts;
+    }
+
+    private void write(int rowCount) {
+        if (batchLatencyNanos > 0) {
+            LockSupport.parkNanos(batchLatencyNanos);
+        }
+        rows.add(rowCount);
+        batches.increment();
+    }
+}
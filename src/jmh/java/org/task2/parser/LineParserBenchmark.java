@@ -0,0 +1,73 @@
+package org.task2.parser;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.task2.bench.FeedGenerator;
+import org.task2.model.MatchDataDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MatchDataLineParser} with the original {@code split}/{@code replaceAll} line parsing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineParserBenchmark {
+
+    private static final int LINES = 100_000;
+
+    @Param({"100", "10000"})
+    int matchIds;
+
+    private String[] lines;
+    private byte[] bytes;
+    private int[] lineStarts;
+    private int[] lineEnds;
+
+    @Setup
+    public void setup() {
+        bytes = new FeedGenerator(matchIds, 0.5, 42).generate(LINES);
+        lines = new String[LINES];
+        lineStarts = new int[LINES];
+        lineEnds = new int[LINES];
+        int start = FeedGenerator.HEADER.length() + 1;
+        for (int i = 0; i < LINES; i++) {
+            int end = start;
+            while (bytes[end] != '\n') {
+                end++;
+            }
+            lineStarts[i] = start;
+            lineEnds[i] = end;
+            lines[i] = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            start = end + 1;
+        }
+    }
+
+    @Benchmark
+    public void splitReplaceAll(Blackhole blackhole) {
+        for (String line : lines) {
+            String[] parts = line.split("\\|");
+            MatchDataDTO matchData = new MatchDataDTO();
+            matchData.setMatchId(parts[0].replaceAll("'", ""));
+            matchData.setMarketId(Integer.parseInt(parts[1].replaceAll("'", "")));
+            matchData.setOutcomeId(parts[2].replaceAll("'", ""));
+            matchData.setSpecifiers(parts.length > 3 ? parts[3].replaceAll("'", "") : null);
+            blackhole.consume(matchData);
+        }
+    }
+
+    @Benchmark
+    public void byteParser(Blackhole blackhole) {
+        MatchDataLineParser parser = new MatchDataLineParser();
+        for (int i = 0; i < LINES; i++) {
+            MatchDataDTO matchData = new MatchDataDTO();
+            parser.parse(bytes, lineStarts[i], lineEnds[i], matchData);
+            blackhole.consume(matchData);
+        }
+    }
+}
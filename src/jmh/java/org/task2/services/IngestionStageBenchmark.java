@@ -0,0 +1,110 @@
+package org.task2.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.task2.bench.FeedGenerator;
+import org.task2.bench.InMemoryMatchDataRepository;
+import org.task2.model.MatchDataColumns;
+import org.task2.parser.ByteLineReader;
+import org.task2.parser.MatchDataLineParser;
+import org.task2.repository.WriteMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of {@link FileProcessingService} on its own: line parsing into a
+ * {@link MatchDataColumns} store, which also assigns the sequence numbers, grouping by MATCH_ID and the A/B
+ * writers against {@link InMemoryMatchDataRepository}.
+ * <p>
+ * {@code matchIds} controls the MATCH_ID cardinality of the synthetic feed and {@code batchLatencyMicros}
+ * the simulated database round-trip per written batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionStageBenchmark {
+
+    @Param({"200000"})
+    int lines;
+
+    @Param({"100", "10000", "100000"})
+    int matchIds;
+
+    @Param({"0", "500"})
+    long batchLatencyMicros;
+
+    private byte[] feed;
+    private MatchDataColumns columns;
+    private MatchGroups aGroups;
+    private MatchGroups bGroups;
+    private FileProcessingService service;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        feed = new FeedGenerator(matchIds, 0.5, 42).generate(lines);
+
+        service = new FileProcessingService();
+        service.matchDataRepository = new InMemoryMatchDataRepository(batchLatencyMicros);
+        service.ingestionMetrics = new IngestionMetrics(new SimpleMeterRegistry(), 1);
+        service.writeMode = WriteMode.COPY;
+        service.ingestMode = IngestMode.GROUPED;
+        service.writerThreads = WriterThreads.PLATFORM;
+        service.maxPoolSize = 50;
+        service.batchInitialSize = 1000;
+        service.batchMinSize = 100;
+        service.batchMaxSize = 10000;
+        service.batchTargetLatencyMs = 100;
+        service.batchMaxFlushIntervalMs = 50;
+        service.configuredNodeId = Optional.of("benchmark");
+        service.inputBaseDir = ".";
+        service.init();
+
+        columns = parseAll();
+        aGroups = MatchGroups.build(columns, MatchDataColumns.EVENT_A);
+        bGroups = MatchGroups.build(columns, MatchDataColumns.EVENT_B);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+    }
+
+    @Benchmark
+    public MatchDataColumns parse() throws IOException {
+        return parseAll();
+    }
+
+    @Benchmark
+    public MatchGroups group() {
+        MatchGroups.build(columns, MatchDataColumns.EVENT_A);
+        return MatchGroups.build(columns, MatchDataColumns.EVENT_B);
+    }
+
+    @Benchmark
+    public long write() {
+        IngestionJob job = newJob();
+        service.processAEvents(columns, aGroups, job);
+        service.processBEvents(columns, bGroups, job);
+        return job.getRowsWritten();
+    }
+
+    private MatchDataColumns parseAll() throws IOException {
+        MatchDataColumns result = new MatchDataColumns("1", lines);
+        service.parseColumns(new ByteLineReader(new ByteArrayInputStream(feed)), true, new MatchDataLineParser(),
+                MatchPartition.ALL, result, newJob());
+        return result;
+    }
+
+    private IngestionJob newJob() {
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), "benchmark");
+        job.start("1", service.ingestionMetrics.forRun("1"));
+        return job;
+    }
+}
@@ -1,18 +1,31 @@
 package org.task2.jpa;
 
 import jakarta.persistence.*;
+
+import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.Objects;
 
+/**
+ * Row of {@code match_data}. With {@code file-processing.partitioning.enabled} the table is partitioned by
+ * {@code run_id}, one partition per run (see {@code db/partitioned-schema.sql}), which JPA cannot express. The
+ * primary key is {@code (id, run_id)} either way, since a partitioned table's key must include the partition key.
+ */
 @Entity
+@IdClass(MatchDataJpa.Key.class)
 @Table(name = "match_data", indexes = {
         @Index(name = "idx_match_id", columnList = "match_id"),
-        @Index(name = "idx_date_insert", columnList = "date_insert"),
-        @Index(name = "idx_run_id", columnList = "run_id")
-})
+        @Index(name = "idx_date_insert", columnList = "date_insert")
+}, uniqueConstraints = @UniqueConstraint(name = "uk_match_data_natural_key",
+        columnNames = {"run_id", "match_id", "event_type", "sequence_number"}))
 public class MatchDataJpa {
 
+    // A sequence default rather than an identity column, so rows copied without an id, straight into a
+    // partition or into the flat table, get ids too
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "match_data_id_seq")
+    @SequenceGenerator(name = "match_data_id_seq", sequenceName = "match_data_id_seq", allocationSize = 1)
+    @Column(name = "id", columnDefinition = "bigint default nextval('match_data_id_seq')")
     private Long id;
 
     @Column(name = "match_id", nullable = false)
@@ -30,6 +43,7 @@ public class MatchDataJpa {
     @Column(name = "date_insert", nullable = false)
     private LocalDateTime dateInsert;
 
+    @Id
     @Column(name = "run_id", nullable = false)
     private String runId;
 
@@ -104,4 +118,29 @@ public class MatchDataJpa {
         this.eventType = eventType;
     }
 
+    /**
+     * Primary key of a row: its id and the run it belongs to.
+     */
+    public static class Key implements Serializable {
+        private Long id;
+        private String runId;
+
+        public Key() {
+        }
+
+        public Key(Long id, String runId) {
+            this.id = id;
+            this.runId = runId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && Objects.equals(id, key.id) && Objects.equals(runId, key.runId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, runId);
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package org.task2.jpa;
+
+import jakarta.persistence.*;
+
+/**
+ * Content fingerprint of the rows of one MATCH_ID as last written, used by delta ingestion to skip matches
+ * whose rows are unchanged. {@code run_id} is the run whose {@code match_data} rows hold that content.
+ */
+@Entity
+@Table(name = "match_fingerprint", indexes = @Index(name = "idx_match_fingerprint_run_id", columnList = "run_id"))
+public class MatchFingerprintJpa {
+
+    @Id
+    @Column(name = "match_id", nullable = false)
+    private String matchId;
+
+    @Column(name = "a_fingerprint", nullable = false)
+    private long aFingerprint;
+
+    @Column(name = "b_fingerprint", nullable = false)
+    private long bFingerprint;
+
+    @Column(name = "a_rows", nullable = false)
+    private int aRows;
+
+    @Column(name = "b_rows", nullable = false)
+    private int bRows;
+
+    @Column(name = "run_id", nullable = false)
+    private long runId;
+
+
+    public String getMatchId() {
+        return matchId;
+    }
+
+    public void setMatchId(String matchId) {
+        this.matchId = matchId;
+    }
+
+    public long getAFingerprint() {
+        return aFingerprint;
+    }
+
+    public void setAFingerprint(long aFingerprint) {
+        this.aFingerprint = aFingerprint;
+    }
+
+    public long getBFingerprint() {
+        return bFingerprint;
+    }
+
+    public void setBFingerprint(long bFingerprint) {
+        this.bFingerprint = bFingerprint;
+    }
+
+    public int getARows() {
+        return aRows;
+    }
+
+    public void setARows(int aRows) {
+        this.aRows = aRows;
+    }
+
+    public int getBRows() {
+        return bRows;
+    }
+
+    public void setBRows(int bRows) {
+        this.bRows = bRows;
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public void setRunId(long runId) {
+        this.runId = runId;
+    }
+}
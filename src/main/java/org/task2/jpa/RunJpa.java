@@ -0,0 +1,193 @@
+package org.task2.jpa;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One ingestion run. The id comes from {@code run_id_seq} and is the {@code run_id} of the run's
+ * {@code match_data} rows, so it is unique across restarts and across nodes sharing the database.
+ */
+@Entity
+@Table(name = "run")
+public class RunJpa {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "run_id_seq")
+    @SequenceGenerator(name = "run_id_seq", sequenceName = "run_id_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "status", nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "partition_count", nullable = false)
+    private int partitionCount;
+
+    @Column(name = "rows_parsed", nullable = false)
+    private long rowsParsed;
+
+    @Column(name = "rows_written", nullable = false)
+    private long rowsWritten;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "error", length = 2000)
+    private String error;
+
+    // The input was an HTTP request body, which cannot be read again to resume or join the run
+    @Column(name = "uploaded", nullable = false)
+    private boolean uploaded;
+
+    @Column(name = "a_rows", nullable = false)
+    private long aRows;
+
+    @Column(name = "b_rows", nullable = false)
+    private long bRows;
+
+    @Column(name = "match_ids", nullable = false)
+    private long matchIds;
+
+    @Column(name = "matches_unchanged", nullable = false)
+    private long matchesUnchanged;
+
+    @Column(name = "min_date_insert")
+    private LocalDateTime minDateInsert;
+
+    @Column(name = "max_date_insert")
+    private LocalDateTime maxDateInsert;
+
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public void setRowsParsed(long rowsParsed) {
+        this.rowsParsed = rowsParsed;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void setRowsWritten(long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public long getARows() {
+        return aRows;
+    }
+
+    public void setARows(long aRows) {
+        this.aRows = aRows;
+    }
+
+    public long getBRows() {
+        return bRows;
+    }
+
+    public void setBRows(long bRows) {
+        this.bRows = bRows;
+    }
+
+    public long getMatchIds() {
+        return matchIds;
+    }
+
+    public void setMatchIds(long matchIds) {
+        this.matchIds = matchIds;
+    }
+
+    public long getMatchesUnchanged() {
+        return matchesUnchanged;
+    }
+
+    public void setMatchesUnchanged(long matchesUnchanged) {
+        this.matchesUnchanged = matchesUnchanged;
+    }
+
+    public boolean isUploaded() {
+        return uploaded;
+    }
+
+    public void setUploaded(boolean uploaded) {
+        this.uploaded = uploaded;
+    }
+
+    public LocalDateTime getMinDateInsert() {
+        return minDateInsert;
+    }
+
+    public void setMinDateInsert(LocalDateTime minDateInsert) {
+        this.minDateInsert = minDateInsert;
+    }
+
+    public LocalDateTime getMaxDateInsert() {
+        return maxDateInsert;
+    }
+
+    public void setMaxDateInsert(LocalDateTime maxDateInsert) {
+        this.maxDateInsert = maxDateInsert;
+    }
+}
@@ -0,0 +1,204 @@
+package org.task2.jpa;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One MATCH_ID hash range of a {@link RunJpa run}, claimed and ingested by a single node.
+ */
+@Entity
+@Table(name = "run_partition",
+        uniqueConstraints = @UniqueConstraint(name = "uk_run_partition", columnNames = {"run_id", "partition_index"}))
+public class RunPartitionJpa {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "run_id", nullable = false)
+    private long runId;
+
+    @Column(name = "partition_index", nullable = false)
+    private int partitionIndex;
+
+    @Column(name = "node_id")
+    private String nodeId;
+
+    @Column(name = "status", nullable = false, length = 16)
+    private String status;
+
+    // Claims of the partition so far, including the current one
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "rows_parsed", nullable = false)
+    private long rowsParsed;
+
+    @Column(name = "rows_written", nullable = false)
+    private long rowsWritten;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "a_rows", nullable = false)
+    private long aRows;
+
+    @Column(name = "b_rows", nullable = false)
+    private long bRows;
+
+    @Column(name = "match_ids", nullable = false)
+    private long matchIds;
+
+    @Column(name = "matches_unchanged", nullable = false)
+    private long matchesUnchanged;
+
+    @Column(name = "min_date_insert")
+    private LocalDateTime minDateInsert;
+
+    @Column(name = "max_date_insert")
+    private LocalDateTime maxDateInsert;
+
+    // Data line of the file up to which every row of the partition has been written
+    @Column(name = "checkpoint_line", nullable = false)
+    private long checkpointLine;
+
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public void setRunId(long runId) {
+        this.runId = runId;
+    }
+
+    public int getPartitionIndex() {
+        return partitionIndex;
+    }
+
+    public void setPartitionIndex(int partitionIndex) {
+        this.partitionIndex = partitionIndex;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public void setRowsParsed(long rowsParsed) {
+        this.rowsParsed = rowsParsed;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void setRowsWritten(long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+    public LocalDateTime getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(LocalDateTime claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getARows() {
+        return aRows;
+    }
+
+    public void setARows(long aRows) {
+        this.aRows = aRows;
+    }
+
+    public long getBRows() {
+        return bRows;
+    }
+
+    public void setBRows(long bRows) {
+        this.bRows = bRows;
+    }
+
+    public long getMatchIds() {
+        return matchIds;
+    }
+
+    public void setMatchIds(long matchIds) {
+        this.matchIds = matchIds;
+    }
+
+    public long getMatchesUnchanged() {
+        return matchesUnchanged;
+    }
+
+    public void setMatchesUnchanged(long matchesUnchanged) {
+        this.matchesUnchanged = matchesUnchanged;
+    }
+
+    public LocalDateTime getMinDateInsert() {
+        return minDateInsert;
+    }
+
+    public void setMinDateInsert(LocalDateTime minDateInsert) {
+        this.minDateInsert = minDateInsert;
+    }
+
+    public LocalDateTime getMaxDateInsert() {
+        return maxDateInsert;
+    }
+
+    public void setMaxDateInsert(LocalDateTime maxDateInsert) {
+        this.maxDateInsert = maxDateInsert;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getCheckpointLine() {
+        return checkpointLine;
+    }
+
+    public void setCheckpointLine(long checkpointLine) {
+        this.checkpointLine = checkpointLine;
+    }
+}
@@ -0,0 +1,268 @@
+package org.task2.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Column-oriented store for the parsed rows of one run.
+ * <p>
+ * Each row is a position in a set of primitive arrays: dictionary codes for match id, outcome id and
+ * specifiers, the market id, the sequence number, the insert timestamp as microseconds and the event
+ * type as a byte. Compared to one {@link MatchDataDTO} per row this needs a few dozen bytes per row and
+ * no per-row objects. Rows are kept in insertion (file) order. Not thread-safe for writes.
+ * <p>
+ * A row's index is its arrival order, so sequence numbers are assigned as rows are added: the n-th row of a
+ * match id and event type gets sequence number n. Sequencing needs no sort and no pass of its own.
+ */
+public class MatchDataColumns {
+
+    public static final byte EVENT_A = 'A';
+    public static final byte EVENT_B = 'B';
+
+    private static final int NO_SPECIFIERS = -1;
+
+    private final String runId;
+    private final StringDictionary matchIds;
+    private final StringDictionary outcomeIds;
+    private final StringDictionary specifiers;
+
+    private int size;
+    private int[] matchIdCodes;
+    private int[] marketIds;
+    private int[] outcomeIdCodes;
+    private int[] specifierCodes;
+    private int[] sequenceNumbers;
+    private long[] dateInsertMicros;
+    private byte[] eventTypes;
+    // Rows added so far per match id code, i.e. the last sequence number assigned, for 'A' and 'B' events
+    private int[] aCounts = new int[0];
+    private int[] bCounts = new int[0];
+
+    public MatchDataColumns(String runId, int initialCapacity) {
+        this(runId, new StringDictionary(), new StringDictionary(), new StringDictionary(), initialCapacity);
+    }
+
+    /**
+     * Creates a store that shares its dictionaries with others, so stores filled in parallel can be
+     * concatenated with {@link #appendAll(MatchDataColumns)} without re-encoding.
+     */
+    public MatchDataColumns(String runId, StringDictionary matchIds, StringDictionary outcomeIds,
+                            StringDictionary specifiers, int initialCapacity) {
+        this.runId = runId;
+        this.matchIds = matchIds;
+        this.outcomeIds = outcomeIds;
+        this.specifiers = specifiers;
+        int capacity = Math.max(16, initialCapacity);
+        this.matchIdCodes = new int[capacity];
+        this.marketIds = new int[capacity];
+        this.outcomeIdCodes = new int[capacity];
+        this.specifierCodes = new int[capacity];
+        this.sequenceNumbers = new int[capacity];
+        this.dateInsertMicros = new long[capacity];
+        this.eventTypes = new byte[capacity];
+    }
+
+    /**
+     * Appends a row, numbering it after the rows of the same match id and event type already added.
+     *
+     * @return The row index.
+     */
+    public int add(String matchId, int marketId, String outcomeId, String specifiers, long dateInsertMicros, byte eventType) {
+        ensureCapacity(size + 1);
+        int matchIdCode = matchIds.encode(matchId);
+        matchIdCodes[size] = matchIdCode;
+        sequenceNumbers[size] = ++counts(eventType, matchIdCode)[matchIdCode];
+        marketIds[size] = marketId;
+        outcomeIdCodes[size] = outcomeIds.encode(outcomeId);
+        specifierCodes[size] = specifiers == null ? NO_SPECIFIERS : this.specifiers.encode(specifiers);
+        this.dateInsertMicros[size] = dateInsertMicros;
+        eventTypes[size] = eventType;
+        return size++;
+    }
+
+    /**
+     * Appends all rows of {@code other}, which must share this store's dictionaries. The appended rows are
+     * numbered after this store's rows of the same match id and event type.
+     */
+    public void appendAll(MatchDataColumns other) {
+        if (other.matchIds != matchIds || other.outcomeIds != outcomeIds || other.specifiers != specifiers) {
+            throw new IllegalArgumentException("Columns must share their dictionaries to be appended");
+        }
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.matchIdCodes, 0, matchIdCodes, size, other.size);
+        System.arraycopy(other.marketIds, 0, marketIds, size, other.size);
+        System.arraycopy(other.outcomeIdCodes, 0, outcomeIdCodes, size, other.size);
+        System.arraycopy(other.specifierCodes, 0, specifierCodes, size, other.size);
+        System.arraycopy(other.sequenceNumbers, 0, sequenceNumbers, size, other.size);
+        System.arraycopy(other.dateInsertMicros, 0, dateInsertMicros, size, other.size);
+        System.arraycopy(other.eventTypes, 0, eventTypes, size, other.size);
+        // Offset by the rows this store already had, then take over the other store's counts
+        for (int row = size; row < size + other.size; row++) {
+            int[] counts = counts(eventTypes[row], matchIdCodes[row]);
+            sequenceNumbers[row] += counts[matchIdCodes[row]];
+        }
+        addCounts(other.aCounts, EVENT_A);
+        addCounts(other.bCounts, EVENT_B);
+        size += other.size;
+    }
+
+    /**
+     * @return The per-match-id counts of {@code eventType}, large enough to hold {@code matchIdCode}.
+     */
+    private int[] counts(byte eventType, int matchIdCode) {
+        if (eventType == EVENT_A) {
+            if (matchIdCode >= aCounts.length) {
+                aCounts = grow(aCounts, matchIdCode);
+            }
+            return aCounts;
+        }
+        if (matchIdCode >= bCounts.length) {
+            bCounts = grow(bCounts, matchIdCode);
+        }
+        return bCounts;
+    }
+
+    private void addCounts(int[] otherCounts, byte eventType) {
+        if (otherCounts.length == 0) {
+            return;
+        }
+        int[] counts = counts(eventType, otherCounts.length - 1);
+        for (int code = 0; code < otherCounts.length; code++) {
+            counts[code] += otherCounts[code];
+        }
+    }
+
+    private static int[] grow(int[] counts, int matchIdCode) {
+        return Arrays.copyOf(counts, Math.max(matchIdCode + 1, Math.max(1024, counts.length * 2)));
+    }
+
+    /**
+     * Removes the rows of every match id whose code is not marked in {@code keepMatchCodes}, keeping the order
+     * and sequence numbers of the remaining rows.
+     */
+    public void retainMatches(boolean[] keepMatchCodes) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            int code = matchIdCodes[row];
+            if (code >= keepMatchCodes.length || !keepMatchCodes[code]) {
+                continue;
+            }
+            matchIdCodes[kept] = code;
+            marketIds[kept] = marketIds[row];
+            outcomeIdCodes[kept] = outcomeIdCodes[row];
+            specifierCodes[kept] = specifierCodes[row];
+            sequenceNumbers[kept] = sequenceNumbers[row];
+            dateInsertMicros[kept] = dateInsertMicros[row];
+            eventTypes[kept] = eventTypes[row];
+            kept++;
+        }
+        size = kept;
+        for (int code = 0; code < Math.max(aCounts.length, bCounts.length); code++) {
+            if (code >= keepMatchCodes.length || !keepMatchCodes[code]) {
+                if (code < aCounts.length) {
+                    aCounts[code] = 0;
+                }
+                if (code < bCounts.length) {
+                    bCounts[code] = 0;
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of match ids with at least one row, which {@link #retainMatches} may have lowered.
+     */
+    public int countMatchesWithRows() {
+        int count = 0;
+        for (int code = 0; code < Math.max(aCounts.length, bCounts.length); code++) {
+            if ((code < aCounts.length && aCounts[code] > 0) || (code < bCounts.length && bCounts[code] > 0)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * @return The number of distinct match ids, i.e. the exclusive upper bound of {@link #getMatchIdCode(int)}.
+     */
+    public int getMatchIdCount() {
+        return matchIds.size();
+    }
+
+    public int getMatchIdCode(int row) {
+        return matchIdCodes[row];
+    }
+
+    public String getMatchId(int row) {
+        return matchIds.get(matchIdCodes[row]);
+    }
+
+    public String getMatchIdForCode(int code) {
+        return matchIds.get(code);
+    }
+
+    public int getMarketId(int row) {
+        return marketIds[row];
+    }
+
+    public String getOutcomeId(int row) {
+        return outcomeIds.get(outcomeIdCodes[row]);
+    }
+
+    public String getSpecifiers(int row) {
+        int code = specifierCodes[row];
+        return code == NO_SPECIFIERS ? null : specifiers.get(code);
+    }
+
+    public long getDateInsertMicros(int row) {
+        return dateInsertMicros[row];
+    }
+
+    public LocalDateTime getDateInsert(int row) {
+        return fromMicros(dateInsertMicros[row]);
+    }
+
+    public byte getEventType(int row) {
+        return eventTypes[row];
+    }
+
+    public int getSequenceNumber(int row) {
+        return sequenceNumbers[row];
+    }
+
+    /**
+     * Encodes a timestamp as microseconds since the epoch, reading the local date-time as UTC so that
+     * {@link #fromMicros(long)} restores it exactly.
+     */
+    public static long toMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+
+    public static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= matchIdCodes.length) {
+            return;
+        }
+        int capacity = Math.max(required, matchIdCodes.length * 2);
+        matchIdCodes = Arrays.copyOf(matchIdCodes, capacity);
+        marketIds = Arrays.copyOf(marketIds, capacity);
+        outcomeIdCodes = Arrays.copyOf(outcomeIdCodes, capacity);
+        specifierCodes = Arrays.copyOf(specifierCodes, capacity);
+        sequenceNumbers = Arrays.copyOf(sequenceNumbers, capacity);
+        dateInsertMicros = Arrays.copyOf(dateInsertMicros, capacity);
+        eventTypes = Arrays.copyOf(eventTypes, capacity);
+    }
+}
@@ -11,6 +11,7 @@ public class MatchDataDTO {
     private String runId;
     private String eventType; // 'A' or 'B'
     private int sequenceNumber;
+    private long lineNumber; // data line of the source file, header excluded
 
 
     public String getMatchId() {
@@ -77,6 +78,14 @@ public class MatchDataDTO {
         this.sequenceNumber = sequenceNumber;
     }
 
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public void setLineNumber(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
     @Override
     public String toString() {
         return "MatchDataDTO{" +
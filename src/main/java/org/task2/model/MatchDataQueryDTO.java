@@ -0,0 +1,76 @@
+package org.task2.model;
+
+/**
+ * Selects the rows of a run to export, in natural key order (MATCH_ID, event type, sequence number).
+ * The optional cursor is the natural key of the last row already received; only rows after it are returned.
+ */
+public class MatchDataQueryDTO {
+    private String runId;
+    private String matchId; // optional filter
+    private String eventType; // optional filter, 'A' or 'B'
+    private String afterMatchId; // cursor, together with afterEventType and afterSequenceNumber
+    private String afterEventType;
+    private Integer afterSequenceNumber;
+    private Long limit; // null for all remaining rows
+
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public String getMatchId() {
+        return matchId;
+    }
+
+    public void setMatchId(String matchId) {
+        this.matchId = matchId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public String getAfterMatchId() {
+        return afterMatchId;
+    }
+
+    public void setAfterMatchId(String afterMatchId) {
+        this.afterMatchId = afterMatchId;
+    }
+
+    public String getAfterEventType() {
+        return afterEventType;
+    }
+
+    public void setAfterEventType(String afterEventType) {
+        this.afterEventType = afterEventType;
+    }
+
+    public Integer getAfterSequenceNumber() {
+        return afterSequenceNumber;
+    }
+
+    public void setAfterSequenceNumber(Integer afterSequenceNumber) {
+        this.afterSequenceNumber = afterSequenceNumber;
+    }
+
+    public Long getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Long limit) {
+        this.limit = limit;
+    }
+
+    public boolean hasCursor() {
+        return afterMatchId != null;
+    }
+}
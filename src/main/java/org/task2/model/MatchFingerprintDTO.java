@@ -0,0 +1,70 @@
+package org.task2.model;
+
+/**
+ * Rolling hashes and row counts of the 'A' and 'B' rows of one MATCH_ID, in sequence order.
+ */
+public class MatchFingerprintDTO {
+    private String matchId;
+    private long aFingerprint;
+    private long bFingerprint;
+    private int aRows;
+    private int bRows;
+    private long runId; // run whose rows hold this content
+
+
+    public String getMatchId() {
+        return matchId;
+    }
+
+    public void setMatchId(String matchId) {
+        this.matchId = matchId;
+    }
+
+    public long getAFingerprint() {
+        return aFingerprint;
+    }
+
+    public void setAFingerprint(long aFingerprint) {
+        this.aFingerprint = aFingerprint;
+    }
+
+    public long getBFingerprint() {
+        return bFingerprint;
+    }
+
+    public void setBFingerprint(long bFingerprint) {
+        this.bFingerprint = bFingerprint;
+    }
+
+    public int getARows() {
+        return aRows;
+    }
+
+    public void setARows(int aRows) {
+        this.aRows = aRows;
+    }
+
+    public int getBRows() {
+        return bRows;
+    }
+
+    public void setBRows(int bRows) {
+        this.bRows = bRows;
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public void setRunId(long runId) {
+        this.runId = runId;
+    }
+
+    /**
+     * @return Whether both fingerprints describe the same rows, whichever run wrote them.
+     */
+    public boolean sameContent(MatchFingerprintDTO other) {
+        return other != null && aFingerprint == other.aFingerprint && bFingerprint == other.bFingerprint
+                && aRows == other.aRows && bRows == other.bRows;
+    }
+}
@@ -0,0 +1,39 @@
+package org.task2.model;
+
+/**
+ * A run partition claimed by a node, with the statistics and checkpoint left by its previous attempts.
+ */
+public class PartitionClaimDTO {
+    private int partitionIndex;
+    private int attempt; // 1 for the first attempt
+    private RunStatsDTO previousStats;
+
+
+    public int getPartitionIndex() {
+        return partitionIndex;
+    }
+
+    public void setPartitionIndex(int partitionIndex) {
+        this.partitionIndex = partitionIndex;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
+
+    public RunStatsDTO getPreviousStats() {
+        return previousStats;
+    }
+
+    public void setPreviousStats(RunStatsDTO previousStats) {
+        this.previousStats = previousStats;
+    }
+
+    public boolean isResumed() {
+        return attempt > 1;
+    }
+}
@@ -0,0 +1,151 @@
+package org.task2.model;
+
+import java.time.LocalDateTime;
+
+public class RunDTO {
+    private long id;
+    private String fileName;
+    private RunStatus status;
+    private int partitionCount;
+    private long rowsParsed;
+    private long rowsWritten;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+    private String error;
+    private boolean uploaded; // the input cannot be read again
+    private long aRows;
+    private long bRows;
+    private long matchIds;
+    private long matchesUnchanged;
+    private LocalDateTime minDateInsert;
+    private LocalDateTime maxDateInsert;
+
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public RunStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(RunStatus status) {
+        this.status = status;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    public void setPartitionCount(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public void setRowsParsed(long rowsParsed) {
+        this.rowsParsed = rowsParsed;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void setRowsWritten(long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public long getARows() {
+        return aRows;
+    }
+
+    public void setARows(long aRows) {
+        this.aRows = aRows;
+    }
+
+    public long getBRows() {
+        return bRows;
+    }
+
+    public void setBRows(long bRows) {
+        this.bRows = bRows;
+    }
+
+    public long getMatchIds() {
+        return matchIds;
+    }
+
+    public void setMatchIds(long matchIds) {
+        this.matchIds = matchIds;
+    }
+
+    public long getMatchesUnchanged() {
+        return matchesUnchanged;
+    }
+
+    public void setMatchesUnchanged(long matchesUnchanged) {
+        this.matchesUnchanged = matchesUnchanged;
+    }
+
+    public boolean isUploaded() {
+        return uploaded;
+    }
+
+    public void setUploaded(boolean uploaded) {
+        this.uploaded = uploaded;
+    }
+
+    public LocalDateTime getMinDateInsert() {
+        return minDateInsert;
+    }
+
+    public void setMinDateInsert(LocalDateTime minDateInsert) {
+        this.minDateInsert = minDateInsert;
+    }
+
+    public LocalDateTime getMaxDateInsert() {
+        return maxDateInsert;
+    }
+
+    public void setMaxDateInsert(LocalDateTime maxDateInsert) {
+        this.maxDateInsert = maxDateInsert;
+    }
+}
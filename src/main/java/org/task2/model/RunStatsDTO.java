@@ -0,0 +1,92 @@
+package org.task2.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregates of the rows a node has written for one run partition: row counts, rows per event type,
+ * distinct MATCH_IDs written and skipped unchanged, and the range of {@code date_insert}, plus the line checkpoint to resume the partition from.
+ */
+public class RunStatsDTO {
+    private long rowsParsed;
+    private long rowsWritten;
+    private long aRows;
+    private long bRows;
+    private long matchIds;
+    private long matchesUnchanged; // skipped by delta ingestion, not counted in matchIds
+    private LocalDateTime minDateInsert;
+    private LocalDateTime maxDateInsert;
+    private long checkpointLine; // every data line before it has been written
+
+
+    public long getRowsParsed() {
+        return rowsParsed;
+    }
+
+    public void setRowsParsed(long rowsParsed) {
+        this.rowsParsed = rowsParsed;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public void setRowsWritten(long rowsWritten) {
+        this.rowsWritten = rowsWritten;
+    }
+
+    public long getARows() {
+        return aRows;
+    }
+
+    public void setARows(long aRows) {
+        this.aRows = aRows;
+    }
+
+    public long getBRows() {
+        return bRows;
+    }
+
+    public void setBRows(long bRows) {
+        this.bRows = bRows;
+    }
+
+    public long getMatchIds() {
+        return matchIds;
+    }
+
+    public void setMatchIds(long matchIds) {
+        this.matchIds = matchIds;
+    }
+
+    public long getMatchesUnchanged() {
+        return matchesUnchanged;
+    }
+
+    public void setMatchesUnchanged(long matchesUnchanged) {
+        this.matchesUnchanged = matchesUnchanged;
+    }
+
+    public LocalDateTime getMinDateInsert() {
+        return minDateInsert;
+    }
+
+    public void setMinDateInsert(LocalDateTime minDateInsert) {
+        this.minDateInsert = minDateInsert;
+    }
+
+    public LocalDateTime getMaxDateInsert() {
+        return maxDateInsert;
+    }
+
+    public void setMaxDateInsert(LocalDateTime maxDateInsert) {
+        this.maxDateInsert = maxDateInsert;
+    }
+
+    public long getCheckpointLine() {
+        return checkpointLine;
+    }
+
+    public void setCheckpointLine(long checkpointLine) {
+        this.checkpointLine = checkpointLine;
+    }
+}
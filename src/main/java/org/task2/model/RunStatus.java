@@ -0,0 +1,12 @@
+package org.task2.model;
+
+/**
+ * Status of a run and of each of its partitions in the run registry.
+ */
+public enum RunStatus {
+    /** Partition not yet claimed by any node. */
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
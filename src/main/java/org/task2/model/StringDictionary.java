@@ -0,0 +1,47 @@
+package org.task2.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary encoding of repeated strings to dense int codes {@code 0..size()-1}.
+ * <p>
+ * Codes may be requested from several threads at once; {@link #get(int)} is safe once the threads
+ * that added the strings have been joined (e.g. through {@code Future.get()}).
+ */
+public class StringDictionary {
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[1024];
+    private int size;
+
+    /**
+     * @return The code of {@code value}, assigning the next free code on first use.
+     */
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    public String get(int code) {
+        return values[code];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        codes.put(value, size);
+        return size++;
+    }
+}
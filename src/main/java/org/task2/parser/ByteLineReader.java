@@ -0,0 +1,98 @@
+package org.task2.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits an {@link InputStream} into lines without decoding them.
+ * <p>
+ * After {@link #next()} returns {@code true}, the current line is {@code buffer()[lineStart(), lineEnd())},
+ * excluding the line terminator ({@code \n} or {@code \r\n}). The range is only valid until the next call.
+ */
+public final class ByteLineReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private int lineStart;
+    private int lineEnd;
+    private boolean eof;
+
+    public ByteLineReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return {@code false} once the stream is exhausted.
+     */
+    public boolean next() throws IOException {
+        int scanFrom = position;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(position, i, i + 1);
+                    return true;
+                }
+            }
+            if (eof) {
+                if (position < limit) {
+                    setLine(position, limit, limit);
+                    return true;
+                }
+                return false;
+            }
+            scanFrom = limit - position;
+            fill();
+        }
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int lineStart() {
+        return lineStart;
+    }
+
+    public int lineEnd() {
+        return lineEnd;
+    }
+
+    private void setLine(int start, int end, int nextPosition) {
+        lineStart = start;
+        lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+        position = nextPosition;
+    }
+
+    /**
+     * Moves the unfinished line to the front of the buffer, growing it if the line fills the whole buffer,
+     * and reads more bytes behind it.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position = 0;
+        limit = remaining;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+}
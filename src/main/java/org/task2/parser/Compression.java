@@ -0,0 +1,85 @@
+package org.task2.parser;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression of an input file, detected from its extension or, failing that, from its magic bytes.
+ */
+public enum Compression {
+    NONE,
+    GZIP,
+    ZSTD;
+
+    private static final int MAGIC_LENGTH = 4;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Detects the compression of a file on the filesystem.
+     */
+    public static Compression detect(Path path) throws IOException {
+        Compression byName = fromFileName(path.getFileName().toString());
+        if (byName != NONE) {
+            return byName;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return fromMagic(in.readNBytes(MAGIC_LENGTH));
+        }
+    }
+
+    /**
+     * Detects the compression of a stream without consuming it.
+     *
+     * @param in A stream supporting {@link InputStream#mark(int)}.
+     */
+    public static Compression detect(String fileName, InputStream in) throws IOException {
+        Compression byName = fromFileName(fileName);
+        if (byName != NONE) {
+            return byName;
+        }
+        in.mark(MAGIC_LENGTH);
+        byte[] magic = in.readNBytes(MAGIC_LENGTH);
+        in.reset();
+        return fromMagic(magic);
+    }
+
+    private static Compression fromFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz") || name.endsWith(".gzip")) {
+            return GZIP;
+        }
+        if (name.endsWith(".zst") || name.endsWith(".zstd")) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    private static Compression fromMagic(byte[] magic) {
+        if (magic.length >= 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b) {
+            return GZIP;
+        }
+        // Little-endian 0xFD2FB528
+        if (magic.length >= 4 && magic[0] == (byte) 0x28 && magic[1] == (byte) 0xb5
+                && magic[2] == (byte) 0x2f && magic[3] == (byte) 0xfd) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    /**
+     * @return A stream of the decompressed bytes of {@code in}, which it closes when closed.
+     */
+    public InputStream decode(InputStream in) throws IOException {
+        return switch (this) {
+            case NONE -> in;
+            case GZIP -> new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+            case ZSTD -> new ZstdInputStream(in);
+        };
+    }
+}
@@ -0,0 +1,134 @@
+package org.task2.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a file through {@link FileChannel#map} in line-aligned chunks that are handled in parallel.
+ * <p>
+ * The file is cut into chunks of roughly {@code chunkSize} bytes, each boundary moved forward to the
+ * next line start, so no line is split between chunks. Every chunk is mapped separately (which also
+ * keeps files larger than 2 GB within the {@link MappedByteBuffer} size limit) and passed to the handler
+ * as a {@link ByteLineReader}. Results are returned in chunk order, i.e. in file order.
+ */
+public final class MappedFileReader {
+
+    @FunctionalInterface
+    public interface ChunkHandler<R> {
+        /**
+         * @param lines      The lines of one chunk.
+         * @param firstChunk {@code true} for the chunk starting at offset 0, which holds the header line.
+         */
+        R handle(ByteLineReader lines, boolean firstChunk) throws Exception;
+    }
+
+    private MappedFileReader() {
+    }
+
+    /**
+     * Maps {@code path} in line-aligned chunks and runs {@code handler} on each chunk using {@code executor}.
+     *
+     * @return The handler results in file order.
+     */
+    public static <R> List<R> readChunks(Path path, long chunkSize, ExecutorService executor, ChunkHandler<R> handler)
+            throws IOException, InterruptedException, ExecutionException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<Long> boundaries = findChunkBoundaries(channel, chunkSize);
+            List<Future<R>> futures = new ArrayList<>(boundaries.size() - 1);
+            for (int i = 0; i < boundaries.size() - 1; i++) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        boundaries.get(i), boundaries.get(i + 1) - boundaries.get(i));
+                boolean firstChunk = i == 0;
+                futures.add(executor.submit(() ->
+                        handler.handle(new ByteLineReader(new ByteBufferInputStream(chunk)), firstChunk)));
+            }
+
+            List<R> results = new ArrayList<>(futures.size());
+            try {
+                for (Future<R> future : futures) {
+                    results.add(future.get());
+                }
+            } finally {
+                for (Future<R> future : futures) {
+                    future.cancel(true);
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * @return Offsets {@code 0 = b0 < b1 < ... < bn = size} where every inner offset is the start of a line.
+     */
+    private static List<Long> findChunkBoundaries(FileChannel channel, long chunkSize) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = chunkSize;
+        while (position < size) {
+            long lineStart = nextLineStart(channel, position, size, probe);
+            if (lineStart >= size) {
+                break;
+            }
+            boundaries.add(lineStart);
+            position = lineStart + chunkSize;
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Exposes a mapped chunk to {@link ByteLineReader}, which copies it block-wise into its line buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
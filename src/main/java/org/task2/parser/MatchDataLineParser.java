@@ -0,0 +1,131 @@
+package org.task2.parser;
+
+import org.task2.model.MatchDataDTO;
+
+import java.util.Arrays;
+
+/**
+ * Parses MATCH_ID|MARKET_ID|OUTCOME_ID|SPECIFIERS lines directly from UTF-8 bytes.
+ * <p>
+ * Fields are scanned once, single quotes are dropped while copying into a scratch buffer, the market
+ * id is accumulated as an int without an intermediate String, and the string fields are resolved
+ * through a {@link StringInterner} so repeated values do not allocate. One instance per thread.
+ */
+public final class MatchDataLineParser {
+
+    private static final byte DELIMITER = '|';
+    private static final byte QUOTE = '\'';
+    private static final int DEFAULT_INTERNER_SIZE = 1 << 20;
+
+    private final StringInterner interner;
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+    private int scratchHash;
+
+    public MatchDataLineParser() {
+        this(new StringInterner(DEFAULT_INTERNER_SIZE));
+    }
+
+    public MatchDataLineParser(StringInterner interner) {
+        this.interner = interner;
+    }
+
+    /**
+     * Parses {@code line[from, to)} into {@code target}, setting match id, market id, outcome id and
+     * specifiers. Specifiers are {@code null} when the fourth field is missing or empty.
+     *
+     * @return {@code false} if the line has fewer than three fields or a non-numeric market id,
+     * in which case {@code target} is left partially filled and must not be used. As with
+     * {@code String.split}, trailing empty fields are not counted, so {@code a|1|} has two fields.
+     */
+    public boolean parse(byte[] line, int from, int to, MatchDataDTO target) {
+        // MATCH_ID
+        int end = scanField(line, from, to);
+        if (end >= to) {
+            return false;
+        }
+        String matchId = interner.intern(scratch, 0, scratchLength, scratchHash);
+
+        // MARKET_ID
+        int pos = end + 1;
+        long value = 0;
+        int digits = 0;
+        boolean negative = false;
+        for (; pos < to && line[pos] != DELIMITER; pos++) {
+            byte b = line[pos];
+            if (b == QUOTE) {
+                continue;
+            }
+            if (b == '-' && digits == 0 && !negative) {
+                negative = true;
+            } else if (b >= '0' && b <= '9' && digits < 10) {
+                value = value * 10 + (b - '0');
+                digits++;
+            } else {
+                return false;
+            }
+        }
+        if (digits == 0 || pos >= to || value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+            return false;
+        }
+
+        // OUTCOME_ID
+        end = scanField(line, pos + 1, to);
+        if (end == pos + 1 && onlyDelimiters(line, end, to)) {
+            return false;
+        }
+        String outcomeId = interner.intern(scratch, 0, scratchLength, scratchHash);
+
+        // SPECIFIERS (optional)
+        String specifiers = null;
+        if (end + 1 < to) {
+            int specifiersEnd = scanField(line, end + 1, to);
+            if (specifiersEnd > end + 1) {
+                specifiers = interner.intern(scratch, 0, scratchLength, scratchHash);
+            }
+        }
+
+        target.setMatchId(matchId);
+        target.setMarketId((int) (negative ? -value : value));
+        target.setOutcomeId(outcomeId);
+        target.setSpecifiers(specifiers);
+        return true;
+    }
+
+    private static boolean onlyDelimiters(byte[] line, int from, int to) {
+        for (int pos = from; pos < to; pos++) {
+            if (line[pos] != DELIMITER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the field starting at {@code from} into the scratch buffer without quotes and hashes it.
+     *
+     * @return The index of the terminating delimiter, or {@code to} if the field runs to the end of line.
+     */
+    private int scanField(byte[] line, int from, int to) {
+        int length = 0;
+        int hash = 0;
+        int pos = from;
+        for (; pos < to; pos++) {
+            byte b = line[pos];
+            if (b == DELIMITER) {
+                break;
+            }
+            if (b == QUOTE) {
+                continue;
+            }
+            if (length == scratch.length) {
+                scratch = Arrays.copyOf(scratch, length * 2);
+            }
+            scratch[length++] = b;
+            hash = 31 * hash + b;
+        }
+        scratchLength = length;
+        scratchHash = hash;
+        return pos;
+    }
+}
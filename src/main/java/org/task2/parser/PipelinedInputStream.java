@@ -0,0 +1,137 @@
+package org.task2.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads a source stream on its own thread, up to {@code readAhead} chunks ahead of the consumer, so that
+ * producing the bytes (e.g. decompressing them) overlaps with consuming them.
+ * <p>
+ * Chunk buffers are recycled between the two threads, so memory stays at {@code readAhead + 1} chunks.
+ * An exception of the source is rethrown to the consumer once the chunks read before it are consumed.
+ * The source is closed by the reading thread when it ends.
+ */
+public final class PipelinedInputStream extends InputStream {
+
+    private record Chunk(byte[] data, int length) {
+    }
+
+    private static final Chunk END = new Chunk(new byte[0], 0);
+
+    private final InputStream source;
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<byte[]> free;
+    private final Thread reader;
+    private volatile IOException failure;
+    private Chunk current;
+    private int position;
+
+    /**
+     * Starts reading {@code source} on a thread of {@code threadFactory}.
+     */
+    public PipelinedInputStream(InputStream source, ThreadFactory threadFactory, int chunkSize, int readAhead) {
+        this.source = source;
+        int buffers = readAhead + 1;
+        // Room for every buffer plus the end marker, so the reader never blocks on the end marker
+        this.filled = new ArrayBlockingQueue<>(buffers + 1);
+        this.free = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(new byte[chunkSize]);
+        }
+        this.reader = threadFactory.newThread(this::readSource);
+        reader.start();
+    }
+
+    private void readSource() {
+        try (InputStream in = source) {
+            byte[] buffer;
+            int length;
+            // readNBytes only returns a partial chunk at the end of the stream
+            do {
+                buffer = free.take();
+                length = in.readNBytes(buffer, 0, buffer.length);
+                if (length > 0) {
+                    filled.put(new Chunk(buffer, length));
+                }
+            } while (length == buffer.length);
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            return; // Closed by the consumer
+        }
+        filled.add(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current.data()[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length() - position);
+        System.arraycopy(current.data(), position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length() - position;
+    }
+
+    /**
+     * @return Whether unread bytes are available in the current chunk, taking the next chunk if needed.
+     */
+    private boolean ensureAvailable() throws IOException {
+        if (current != END && current != null && position < current.length()) {
+            return true;
+        }
+        if (current != END) {
+            if (current != null) {
+                free.add(current.data());
+            }
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for input");
+            }
+            position = 0;
+        }
+        if (current == END) {
+            if (failure != null) {
+                throw new IOException("Reading the input failed: " + failure.getMessage(), failure);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops the reading thread and waits for it to close the source.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the input");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.task2.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Open-addressing table that maps UTF-8 byte ranges to canonical {@link String} instances.
+ * <p>
+ * A lookup for bytes already seen returns the cached String without allocating, which removes the
+ * per-line String churn for highly repetitive values such as match ids. Once {@code maxEntries}
+ * distinct values are cached, new values are decoded but no longer added. Not thread-safe.
+ */
+public final class StringInterner {
+
+    private final int maxEntries;
+    private byte[][] keys;
+    private String[] values;
+    private int[] hashes;
+    private int size;
+
+    public StringInterner(int maxEntries) {
+        this.maxEntries = maxEntries;
+        int capacity = Integer.highestOneBit(Math.max(16, Math.min(maxEntries, 1 << 16)) * 2);
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+        this.hashes = new int[capacity];
+    }
+
+    /**
+     * Returns the canonical String for {@code bytes[offset, offset + length)}.
+     *
+     * @param hash The hash of the range, computed by the caller as {@code 31 * h + b} over its bytes.
+     */
+    public String intern(byte[] bytes, int offset, int length, int hash) {
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && Arrays.equals(keys[slot], 0, keys[slot].length, bytes, offset, offset + length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String value = new String(bytes, offset, length, StandardCharsets.UTF_8);
+        if (size < maxEntries) {
+            keys[slot] = Arrays.copyOfRange(bytes, offset, offset + length);
+            values[slot] = value;
+            hashes[slot] = hash;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        }
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,122 @@
+package org.task2.repository;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the strings of one dimension table ({@code match_dim}, {@code outcome_dim} or {@code specifier_dim}) to
+ * their integer surrogate keys, with a concurrent in-process cache in front of the table.
+ * <p>
+ * Keys are only ever created, never changed or deleted, so a cached key stays valid for the lifetime of the
+ * table. Strings missing from the cache are resolved in one round trip per call: the ones not stored yet are
+ * inserted, then the keys of all of them are read back, including keys another writer created concurrently.
+ * Missing strings are inserted in sorted order, so writers racing to create overlapping strings lock them in
+ * the same order and cannot deadlock.
+ */
+class DimensionDictionary {
+
+    private final String table;
+    private final String column;
+    private final String insertSql;
+    private final String selectSql;
+    private final int maxSize;
+    private final Map<String, Integer> keys = new ConcurrentHashMap<>();
+
+    /**
+     * @param table     The dimension table.
+     * @param keyColumn The surrogate key column, filled from the table's identity.
+     * @param column    The unique string column.
+     * @param maxSize   Strings cached before the cache is cleared and refilled on demand.
+     */
+    DimensionDictionary(String table, String keyColumn, String column, int maxSize) {
+        this.table = table;
+        this.column = column;
+        // NOT EXISTS filters strings already stored, so they do not draw (and waste) identity values
+        this.insertSql = "INSERT INTO " + table + " (" + column + ") " +
+                "SELECT v FROM unnest(?::varchar[]) AS v WHERE NOT EXISTS " +
+                "(SELECT 1 FROM " + table + " WHERE " + column + " = v) ON CONFLICT (" + column + ") DO NOTHING";
+        this.selectSql = "SELECT " + column + ", " + keyColumn + " FROM " + table + " WHERE " + column + " = ANY (?)";
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the keys of {@code values}, creating the keys of strings not stored yet.
+     *
+     * @param values Distinct strings, without {@code null}.
+     * @return The key of every string of {@code values}.
+     */
+    Map<String, Integer> getOrCreate(Connection conn, Iterable<String> values) throws SQLException {
+        Map<String, Integer> resolved = new HashMap<>();
+        TreeSet<String> missing = new TreeSet<>();
+        for (String value : values) {
+            Integer key = keys.get(value);
+            if (key != null) {
+                resolved.put(value, key);
+            } else {
+                missing.add(value);
+            }
+        }
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+
+        Array array = conn.createArrayOf("varchar", missing.toArray());
+        try (PreparedStatement insert = conn.prepareStatement(insertSql);
+             PreparedStatement select = conn.prepareStatement(selectSql)) {
+            insert.setArray(1, array);
+            insert.executeUpdate();
+            select.setArray(1, array);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    resolved.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        if (keys.size() + missing.size() > maxSize) {
+            keys.clear();
+        }
+        for (String value : missing) {
+            keys.put(value, resolved.get(value));
+        }
+        return resolved;
+    }
+
+    /**
+     * Creates the keys of the strings of {@code sourceTable} that are not stored yet, reading them from the
+     * source column of the same name as this dimension's string column. Bypasses the cache.
+     */
+    void createFrom(Connection conn, String sourceTable) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO " + table + " (" + column + ") " +
+                    "SELECT DISTINCT s." + column + " FROM " + sourceTable + " s WHERE s." + column + " IS NOT NULL " +
+                    "AND NOT EXISTS (SELECT 1 FROM " + table + " d WHERE d." + column + " = s." + column + ") " +
+                    "ORDER BY 1 ON CONFLICT (" + column + ") DO NOTHING");
+        }
+    }
+
+    /**
+     * Returns the key of {@code value} without creating it.
+     *
+     * @return The key, or {@code null} if {@code value} is not stored.
+     */
+    Integer find(Connection conn, String value) throws SQLException {
+        Integer key = keys.get(value);
+        if (key != null) {
+            return key;
+        }
+        try (PreparedStatement select = conn.prepareStatement(selectSql)) {
+            select.setArray(1, conn.createArrayOf("varchar", new Object[]{value}));
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getInt(2) : null;
+            }
+        }
+    }
+}
@@ -1,13 +1,104 @@
 package org.task2.repository;
 
+import org.task2.model.MatchDataColumns;
 import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
 
-import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
 
 public interface MatchDataRepository {
+
+    @FunctionalInterface
+    interface RowHandler {
+        /**
+         * @param row The current row. The same instance is refilled for every row, so it must not be kept.
+         */
+        void handle(MatchDataDTO row) throws Exception;
+    }
+
     void insertMatchData(List<MatchDataDTO> matchDataList) throws Exception;
 
-    Map<String, LocalDateTime> getTimestamps(String runId);
+    void copyMatchData(List<MatchDataDTO> matchDataList) throws Exception;
+
+    void insertMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception;
+
+    void copyMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception;
+
+    /**
+     * Inserts rows that are not stored yet, identified by their natural key (run, MATCH_ID, event type,
+     * sequence number), so a partition can be written again after a failed attempt without duplicates.
+     * Requires {@link #prepareUpsert(String)}.
+     *
+     * @return The update count of each row: 1 if inserted, 0 if already stored.
+     */
+    int[] upsertMatchData(List<MatchDataDTO> matchDataList) throws Exception;
+
+    /**
+     * Inserts rows {@code from} (inclusive) to {@code to} (exclusive) of {@code rows} that are not stored yet,
+     * like {@link #upsertMatchData(List)}.
+     *
+     * @return The update count of each row: 1 if inserted, 0 if already stored.
+     */
+    int[] upsertMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception;
+
+    /**
+     * Makes sure the natural key of a run's rows is enforced before rows are upserted. Only a partition
+     * with deferred indexes lacks it.
+     */
+    void prepareUpsert(String runId) throws Exception;
+
+    /**
+     * Creates the {@code match_data} partition of a new run. With deferred indexes the partition is created
+     * detached and without indexes until {@link #attachRunPartition(String)}.
+     */
+    void createRunPartition(String runId) throws Exception;
+
+    /**
+     * Attaches a run partition created with deferred indexes, building its indexes. Does nothing otherwise.
+     */
+    void attachRunPartition(String runId) throws Exception;
+
+    /**
+     * Creates an empty, unlogged and index-free staging table for one partition of a run, replacing a
+     * staging table left behind by an earlier attempt.
+     */
+    void createStagingTable(String runId, int partitionIndex) throws Exception;
+
+    /**
+     * Copies rows {@code from} (inclusive) to {@code to} (exclusive) of {@code columns} into the staging
+     * table, keeping each row's index as its file position.
+     */
+    void copyToStaging(String runId, int partitionIndex, MatchDataColumns columns, int from, int to) throws Exception;
+
+    /**
+     * Moves the staged rows into {@code match_data} in one transaction, numbering them per MATCH_ID and
+     * event type in file order, and drops the staging table.
+     *
+     * @param skipExisting Whether to skip rows already stored, see {@link #upsertMatchData(List)}.
+     * @return The number of rows moved.
+     */
+    long mergeStaging(String runId, int partitionIndex, boolean skipExisting) throws Exception;
+
+    void dropStagingTable(String runId, int partitionIndex) throws Exception;
+
+    /**
+     * Streams the rows selected by {@code query} to {@code handler} in natural key order, from a forward-only
+     * cursor that fetches a bounded number of rows at a time, so a whole run is never held in memory.
+     *
+     * @return The number of rows handled.
+     */
+    long exportMatchData(MatchDataQueryDTO query, RowHandler handler) throws Exception;
+
+    /**
+     * Reads the rows of one MATCH_ID, ordered by run, event type and sequence number.
+     *
+     * @param runId The run to read, or {@code null} for all runs.
+     * @return The rows, empty if the MATCH_ID has none.
+     */
+    List<MatchDataDTO> findMatchHistory(String matchId, String runId) throws Exception;
+
+    /**
+     * Removes all rows of a run, by dropping its partition when {@code match_data} is partitioned.
+     */
+    void dropRunData(String runId) throws Exception;
 }
@@ -1,79 +1,458 @@
 package org.task2.repository;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Typed;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.task2.jpa.MatchDataJpa;
+import org.task2.mapper.MatchDataMapper;
+import org.task2.model.MatchDataColumns;
 import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
 
 import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * {@link MatchDataRepository} on blocking JDBC, selected with {@code file-processing.repository=jdbc}.
+ * It also runs the DDL, staged loads and deletes for {@link ReactiveMatchDataRepository}.
+ */
 @ApplicationScoped
+@Typed(MatchDataRepositoryImpl.class) // Exposed as MatchDataRepository by MatchDataRepositoryProducer
 public class MatchDataRepositoryImpl implements MatchDataRepository {
     private static final Logger logger = LoggerFactory.getLogger(MatchDataRepositoryImpl.class);
 
+    static final String COLUMNS = "(match_id, market_id, outcome_id, specifiers, date_insert, run_id, sequence_number, event_type)";
+    // Identifies a row within a run, see uk_match_data_natural_key
+    private static final String NATURAL_KEY = "(run_id, match_id, event_type, sequence_number)";
+    static final String SKIP_EXISTING = " ON CONFLICT " + NATURAL_KEY + " DO NOTHING";
+
+    // Flush the COPY buffer to the server once it grows past this many chars
+    private static final int COPY_FLUSH_THRESHOLD = 64 * 1024;
+
     private final DataSource dataSource;
+    private final EntityManager entityManager;
+    private final MatchDataMapper matchDataMapper;
+    private final RunPartitions partitions;
+    private final int exportFetchSize;
 
     @Inject
-    public MatchDataRepositoryImpl(DataSource dataSource) {
+    public MatchDataRepositoryImpl(DataSource dataSource, EntityManager entityManager, MatchDataMapper matchDataMapper,
+                                   @ConfigProperty(name = "file-processing.partitioning.enabled", defaultValue = "false") boolean partitioned,
+                                   @ConfigProperty(name = "file-processing.partitioning.defer-indexes", defaultValue = "false") boolean deferIndexes,
+                                   @ConfigProperty(name = "file-processing.export.fetch-size", defaultValue = "1000") int exportFetchSize) {
         this.dataSource = dataSource;
+        this.entityManager = entityManager;
+        this.matchDataMapper = matchDataMapper;
+        this.partitions = new RunPartitions(dataSource, "match_data", NATURAL_KEY, false, partitioned, deferIndexes);
+        this.exportFetchSize = exportFetchSize;
     }
 
     @Override
     public void insertMatchData(List<MatchDataDTO> matchDataList) throws Exception {
-        String insertSql = "INSERT INTO match_data (match_id, market_id, outcome_id, specifiers, date_insert, run_id, sequence_number, event_type) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        if (matchDataList.isEmpty()) {
+            return;
+        }
+        insertRows(insertSql(tableFor(matchDataList.get(0).getRunId()), false), matchDataList.size(),
+                dtoBinder(matchDataList));
+    }
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
-
-            for (MatchDataDTO dto : matchDataList) {
-                pstmt.setString(1, dto.getMatchId());
-                pstmt.setInt(2, dto.getMarketId());
-                pstmt.setString(3, dto.getOutcomeId());
-                pstmt.setString(4, dto.getSpecifiers());
-                pstmt.setTimestamp(5, Timestamp.valueOf(dto.getDateInsert()));
-                pstmt.setString(6, dto.getRunId());
-                pstmt.setInt(7, dto.getSequenceNumber());
-                pstmt.setString(8, dto.getEventType());
+    @Override
+    public void insertMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception {
+        insertRows(insertSql(tableFor(columns.getRunId()), false), to - from, columnBinder(columns, rows, from));
+    }
+
+    @Override
+    public int[] upsertMatchData(List<MatchDataDTO> matchDataList) throws Exception {
+        if (matchDataList.isEmpty()) {
+            return new int[0];
+        }
+        return insertRows(insertSql(tableFor(matchDataList.get(0).getRunId()), true), matchDataList.size(),
+                dtoBinder(matchDataList));
+    }
+
+    @Override
+    public int[] upsertMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception {
+        return insertRows(insertSql(tableFor(columns.getRunId()), true), to - from, columnBinder(columns, rows, from));
+    }
+
+    private static RowBinder dtoBinder(List<MatchDataDTO> matchDataList) {
+        return (pstmt, i) -> {
+            MatchDataDTO dto = matchDataList.get(i);
+            pstmt.setString(1, dto.getMatchId());
+            pstmt.setInt(2, dto.getMarketId());
+            pstmt.setString(3, dto.getOutcomeId());
+            pstmt.setString(4, dto.getSpecifiers());
+            pstmt.setTimestamp(5, Timestamp.valueOf(dto.getDateInsert()));
+            pstmt.setString(6, dto.getRunId());
+            pstmt.setInt(7, dto.getSequenceNumber());
+            pstmt.setString(8, dto.getEventType());
+        };
+    }
+
+    private static RowBinder columnBinder(MatchDataColumns columns, int[] rows, int from) {
+        String eventA = String.valueOf((char) MatchDataColumns.EVENT_A);
+        String eventB = String.valueOf((char) MatchDataColumns.EVENT_B);
+        return (pstmt, i) -> {
+            int row = rows[from + i];
+            pstmt.setString(1, columns.getMatchId(row));
+            pstmt.setInt(2, columns.getMarketId(row));
+            pstmt.setString(3, columns.getOutcomeId(row));
+            pstmt.setString(4, columns.getSpecifiers(row));
+            pstmt.setTimestamp(5, Timestamp.valueOf(columns.getDateInsert(row)));
+            pstmt.setString(6, columns.getRunId());
+            pstmt.setInt(7, columns.getSequenceNumber(row));
+            pstmt.setString(8, columns.getEventType(row) == MatchDataColumns.EVENT_A ? eventA : eventB);
+        };
+    }
+
+    @Override
+    public void copyMatchData(List<MatchDataDTO> matchDataList) throws Exception {
+        if (matchDataList.isEmpty()) {
+            return;
+        }
+        copyRows(copySql(tableFor(matchDataList.get(0).getRunId())), matchDataList.size(),
+                (buffer, i) -> appendCopyRow(buffer, matchDataList.get(i)));
+    }
+
+    @Override
+    public void copyMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception {
+        copyRows(copySql(tableFor(columns.getRunId())), to - from, (buffer, i) -> appendCopyRow(buffer, columns, rows[from + i]));
+    }
+
+    @FunctionalInterface
+    interface RowBinder {
+        void bind(PreparedStatement pstmt, int index) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface CopyRowWriter {
+        void append(StringBuilder buffer, int index);
+    }
+
+    private static String insertSql(String table, boolean skipExisting) {
+        return "INSERT INTO " + table + " " + COLUMNS + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)" + (skipExisting ? SKIP_EXISTING : "");
+    }
+
+    private int[] insertRows(String insertSql, int count, RowBinder binder) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            return insertRows(conn, insertSql, count, binder);
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in insertMatchData: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends {@code count} rows bound by {@code binder} as one JDBC batch on {@code conn}.
+     *
+     * @return The update count of each row.
+     */
+    static int[] insertRows(Connection conn, String insertSql, int count, RowBinder binder) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(insertSql)) {
+            for (int i = 0; i < count; i++) {
+                binder.bind(pstmt, i);
                 pstmt.addBatch();
             }
+            return pstmt.executeBatch();
+        }
+    }
+
+    private static String copySql(String table) {
+        return "COPY " + table + " " + COLUMNS + " FROM STDIN WITH (FORMAT text)";
+    }
 
-            pstmt.executeBatch();
+    private void copyRows(String copySql, int count, CopyRowWriter writer) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            copyRows(conn, copySql, count, writer);
         } catch (SQLException e) {
-            logger.error("Unexpected exception in insertMatchData: {}", e.getMessage(), e);
+            logger.error("Unexpected exception in copyMatchData: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Streams {@code count} rows appended by {@code writer} through one {@code COPY FROM STDIN} on {@code conn}.
+     */
+    static void copyRows(Connection conn, String copySql, int count, CopyRowWriter writer) throws SQLException {
+        CopyIn copyIn = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+        try {
+            StringBuilder buffer = new StringBuilder(COPY_FLUSH_THRESHOLD + 256);
+            for (int i = 0; i < count; i++) {
+                writer.append(buffer, i);
+                if (buffer.length() >= COPY_FLUSH_THRESHOLD) {
+                    writeToCopy(copyIn, buffer);
+                }
+            }
+            if (buffer.length() > 0) {
+                writeToCopy(copyIn, buffer);
+            }
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    String tableFor(String runId) {
+        return partitions.tableFor(runId);
+    }
+
+    @Override
+    public void createRunPartition(String runId) throws SQLException {
+        partitions.create(runId);
+    }
+
+    @Override
+    public void attachRunPartition(String runId) throws SQLException {
+        partitions.attach(runId);
+    }
+
+    @Override
+    public void prepareUpsert(String runId) throws SQLException {
+        partitions.prepareUpsert(runId);
+    }
+
+    String stagingTableName(String runId, int partitionIndex) {
+        return partitions.partitionName(runId).replace("match_data_run_", "match_data_stage_") + "_" + partitionIndex;
+    }
+
+    @Override
+    public void createStagingTable(String runId, int partitionIndex) throws SQLException {
+        String stagingTable = stagingTableName(runId, partitionIndex);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + stagingTable);
+            // UNLOGGED skips the WAL; the rows are only kept until the merge
+            stmt.execute("CREATE UNLOGGED TABLE " + stagingTable + " (" +
+                    "line_no bigint NOT NULL, match_id varchar(255) NOT NULL, market_id integer NOT NULL, " +
+                    "outcome_id varchar(255) NOT NULL, specifiers varchar(255), date_insert timestamp(6) NOT NULL, " +
+                    "event_type varchar(1) NOT NULL)");
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in createStagingTable for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void copyToStaging(String runId, int partitionIndex, MatchDataColumns columns, int from, int to) throws SQLException {
+        String copySql = "COPY " + stagingTableName(runId, partitionIndex) +
+                " (line_no, match_id, market_id, outcome_id, specifiers, date_insert, event_type) FROM STDIN WITH (FORMAT text)";
+        copyRows(copySql, to - from, (buffer, i) -> {
+            int row = from + i;
+            buffer.append(row).append('\t');
+            appendCopyValue(buffer, columns.getMatchId(row)).append('\t');
+            buffer.append(columns.getMarketId(row)).append('\t');
+            appendCopyValue(buffer, columns.getOutcomeId(row)).append('\t');
+            appendCopyValue(buffer, columns.getSpecifiers(row)).append('\t');
+            buffer.append(columns.getDateInsert(row)).append('\t');
+            buffer.append((char) columns.getEventType(row)).append('\n');
+        });
+    }
+
+    @Override
+    public long mergeStaging(String runId, int partitionIndex, boolean skipExisting) throws SQLException {
+        String stagingTable = stagingTableName(runId, partitionIndex);
+        String mergeSql = "INSERT INTO " + tableFor(runId) + " " + COLUMNS + " " +
+                "SELECT match_id, market_id, outcome_id, specifiers, date_insert, ?, " +
+                "ROW_NUMBER() OVER (PARTITION BY match_id, event_type ORDER BY line_no), event_type " +
+                "FROM " + stagingTable + (skipExisting ? SKIP_EXISTING : "");
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(mergeSql);
+                 Statement stmt = conn.createStatement()) {
+                pstmt.setString(1, runId);
+                long rows = pstmt.executeLargeUpdate();
+                stmt.execute("DROP TABLE " + stagingTable);
+                conn.commit();
+                return rows;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in mergeStaging for runId {}: {}", runId, e.getMessage(), e);
             throw e;
         }
     }
 
     @Override
-    public Map<String, LocalDateTime> getTimestamps(String runId) {
-        String query = "SELECT MIN(date_insert) AS min_date, MAX(date_insert) AS max_date " +
-                "FROM match_data WHERE run_id = ?";
-        Map<String, LocalDateTime> result = new HashMap<>();
+    public void dropStagingTable(String runId, int partitionIndex) throws SQLException {
         try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, runId);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                if (rs.next()) {
-                    Timestamp minTimestamp = rs.getTimestamp("min_date");
-                    Timestamp maxTimestamp = rs.getTimestamp("max_date");
-                    if (minTimestamp != null) {
-                        result.put("min_date", minTimestamp.toLocalDateTime());
-                    }
-                    if (maxTimestamp != null) {
-                        result.put("max_date", maxTimestamp.toLocalDateTime());
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + stagingTableName(runId, partitionIndex));
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in dropStagingTable for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public long exportMatchData(MatchDataQueryDTO query, RowHandler handler) throws Exception {
+        // Step 1: Build the query. Rows come in natural key order, so uk_match_data_natural_key serves both
+        // the order and the cursor, and resuming after a row never scans the rows before it.
+        StringBuilder sql = new StringBuilder("SELECT match_id, market_id, outcome_id, specifiers, date_insert, " +
+                "sequence_number, event_type FROM " + tableFor(query.getRunId()) + " WHERE run_id = ?");
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(query.getRunId());
+        if (query.getMatchId() != null) {
+            sql.append(" AND match_id = ?");
+            parameters.add(query.getMatchId());
+        }
+        if (query.getEventType() != null) {
+            sql.append(" AND event_type = ?");
+            parameters.add(query.getEventType());
+        }
+        if (query.hasCursor()) {
+            // run_id is repeated so the comparison covers a prefix of the index
+            sql.append(" AND ").append(NATURAL_KEY).append(" > (?, ?, ?, ?)");
+            parameters.add(query.getRunId());
+            parameters.add(query.getAfterMatchId());
+            parameters.add(query.getAfterEventType());
+            parameters.add(query.getAfterSequenceNumber());
+        }
+        sql.append(" ORDER BY match_id, event_type, sequence_number");
+        if (query.getLimit() != null) {
+            sql.append(" LIMIT ?");
+            parameters.add(query.getLimit());
+        }
+
+        // Step 2: Stream the rows
+        return streamRows(sql.toString(), parameters, query.getRunId(), handler);
+    }
+
+    /**
+     * Runs an export query selecting match_id, market_id, outcome_id, specifiers, date_insert, sequence_number
+     * and event_type, and passes each row to {@code handler}. The PostgreSQL driver only fetches in chunks of
+     * the fetch size, instead of reading the whole result, inside a transaction.
+     *
+     * @return The number of rows handled.
+     */
+    long streamRows(String sql, List<Object> parameters, String runId, RowHandler handler) throws Exception {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                pstmt.setFetchSize(exportFetchSize);
+                for (int i = 0; i < parameters.size(); i++) {
+                    pstmt.setObject(i + 1, parameters.get(i));
+                }
+
+                long count = 0;
+                MatchDataDTO row = new MatchDataDTO();
+                row.setRunId(runId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        row.setMatchId(rs.getString(1));
+                        row.setMarketId(rs.getInt(2));
+                        row.setOutcomeId(rs.getString(3));
+                        row.setSpecifiers(rs.getString(4));
+                        row.setDateInsert(rs.getObject(5, LocalDateTime.class));
+                        row.setSequenceNumber(rs.getInt(6));
+                        row.setEventType(rs.getString(7));
+                        handler.handle(row);
+                        count++;
                     }
                 }
+                return count;
+            } finally {
+                // Read-only, so there is nothing to commit; ends the transaction holding the cursor
+                conn.rollback();
+                conn.setAutoCommit(true);
             }
         } catch (SQLException e) {
-            logger.error("Unexpected exception in getTimestamps for runId {}: {}", runId, e.getMessage(), e);
+            logger.error("Unexpected exception in exportMatchData for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<MatchDataDTO> findMatchHistory(String matchId, String runId) {
+        // Run ids are numeric strings, so shorter ones sort first; served by idx_match_id, or by
+        // uk_match_data_natural_key within the pruned partition of one run
+        TypedQuery<MatchDataJpa> query = entityManager.createQuery("SELECT m FROM MatchDataJpa m WHERE m.matchId = :matchId" +
+                        (runId != null ? " AND m.runId = :runId" : "") +
+                        " ORDER BY LENGTH(m.runId), m.runId, m.eventType, m.sequenceNumber", MatchDataJpa.class)
+                .setParameter("matchId", matchId)
+                // Nothing is modified, so Hibernate keeps no snapshots for dirty checking
+                .setHint("org.hibernate.readOnly", true);
+        if (runId != null) {
+            query.setParameter("runId", runId);
+        }
+        try {
+            List<MatchDataDTO> rows = new ArrayList<>();
+            for (MatchDataJpa entity : query.getResultList()) {
+                rows.add(matchDataMapper.toDTO(entity));
+            }
+            return rows;
+        } catch (RuntimeException e) {
+            logger.error("Unexpected exception in findMatchHistory for matchId {}: {}", matchId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void dropRunData(String runId) throws SQLException {
+        partitions.drop(runId);
+    }
+
+    private static void writeToCopy(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Appends one row in PostgreSQL COPY text format: tab separated columns, newline terminated,
+     * {@code \N} for NULL.
+     */
+    static void appendCopyRow(StringBuilder buffer, MatchDataDTO dto) {
+        appendCopyValue(buffer, dto.getMatchId()).append('\t');
+        buffer.append(dto.getMarketId()).append('\t');
+        appendCopyValue(buffer, dto.getOutcomeId()).append('\t');
+        appendCopyValue(buffer, dto.getSpecifiers()).append('\t');
+        buffer.append(dto.getDateInsert()).append('\t');
+        appendCopyValue(buffer, dto.getRunId()).append('\t');
+        buffer.append(dto.getSequenceNumber()).append('\t');
+        appendCopyValue(buffer, dto.getEventType()).append('\n');
+    }
+
+    private static void appendCopyRow(StringBuilder buffer, MatchDataColumns columns, int row) {
+        appendCopyValue(buffer, columns.getMatchId(row)).append('\t');
+        buffer.append(columns.getMarketId(row)).append('\t');
+        appendCopyValue(buffer, columns.getOutcomeId(row)).append('\t');
+        appendCopyValue(buffer, columns.getSpecifiers(row)).append('\t');
+        buffer.append(columns.getDateInsert(row)).append('\t');
+        appendCopyValue(buffer, columns.getRunId()).append('\t');
+        buffer.append(columns.getSequenceNumber(row)).append('\t');
+        buffer.append((char) columns.getEventType(row)).append('\n');
+    }
+
+    static StringBuilder appendCopyValue(StringBuilder buffer, String value) {
+        if (value == null) {
+            return buffer.append("\\N");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
         }
-        return result;
+        return buffer;
     }
 }
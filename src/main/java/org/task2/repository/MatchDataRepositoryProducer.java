@@ -0,0 +1,56 @@
+package org.task2.repository;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the {@link MatchDataRepository} of the configured {@link RepositoryBackend} and {@link StorageLayout},
+ * so all write paths ship in one build and can be compared on the same input.
+ */
+@ApplicationScoped
+public class MatchDataRepositoryProducer {
+    private static final Logger logger = LoggerFactory.getLogger(MatchDataRepositoryProducer.class);
+
+    @ConfigProperty(name = "file-processing.repository", defaultValue = "jdbc")
+    RepositoryBackend backend;
+
+    @ConfigProperty(name = "file-processing.storage", defaultValue = "wide")
+    StorageLayout layout;
+
+    // Looked up lazily: the reactive pool only needs to be configured when it is selected
+    @Inject
+    Instance<MatchDataRepositoryImpl> jdbcRepository;
+
+    @Inject
+    Instance<ReactiveMatchDataRepository> reactiveRepository;
+
+    @Inject
+    Instance<NormalizedMatchDataRepository> normalizedRepository;
+
+    /**
+     * @return The client the produced repository writes match data with, which is JDBC for the normalized layout
+     * whatever {@code backend} is configured.
+     */
+    public static RepositoryBackend writeBackend(RepositoryBackend backend, StorageLayout layout) {
+        return layout == StorageLayout.NORMALIZED ? RepositoryBackend.JDBC : backend;
+    }
+
+    @Produces
+    @ApplicationScoped
+    MatchDataRepository matchDataRepository() {
+        if (layout == StorageLayout.NORMALIZED) {
+            if (backend == RepositoryBackend.REACTIVE) {
+                logger.warn("The normalized storage layout is written through JDBC only; ignoring file-processing.repository=reactive");
+            }
+            logger.info("Writing match data to the normalized layout through the JDBC repository");
+            return normalizedRepository.get();
+        }
+        logger.info("Writing match data through the {} repository", backend);
+        return backend == RepositoryBackend.REACTIVE ? reactiveRepository.get() : jdbcRepository.get();
+    }
+}
@@ -0,0 +1,30 @@
+package org.task2.repository;
+
+import org.task2.model.MatchFingerprintDTO;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Stores the content fingerprint of every MATCH_ID written with delta ingestion, shared by all nodes.
+ */
+public interface MatchFingerprintRepository {
+
+    /**
+     * @return The stored fingerprints of those {@code matchIds} that have one, by MATCH_ID.
+     */
+    Map<String, MatchFingerprintDTO> findFingerprints(Collection<String> matchIds) throws Exception;
+
+    /**
+     * Inserts or replaces the fingerprints of their MATCH_IDs.
+     */
+    void saveFingerprints(Collection<MatchFingerprintDTO> fingerprints) throws Exception;
+
+    /**
+     * Removes the fingerprints whose content is held by {@code runId}, so the next feed writes those matches
+     * again once the run is dropped.
+     *
+     * @return The number of fingerprints removed.
+     */
+    int deleteFingerprintsOfRun(long runId) throws Exception;
+}
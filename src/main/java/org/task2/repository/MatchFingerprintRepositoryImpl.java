@@ -0,0 +1,130 @@
+package org.task2.repository;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.task2.model.MatchFingerprintDTO;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@ApplicationScoped
+public class MatchFingerprintRepositoryImpl implements MatchFingerprintRepository {
+    private static final Logger logger = LoggerFactory.getLogger(MatchFingerprintRepositoryImpl.class);
+
+    // MATCH_IDs per round trip; each round trip binds one array per column
+    private static final int CHUNK_SIZE = 10_000;
+
+    private static final String FIND_SQL = "SELECT match_id, a_fingerprint, b_fingerprint, a_rows, b_rows, run_id " +
+            "FROM match_fingerprint WHERE match_id = ANY (?)";
+
+    // One statement per chunk, with the rows passed as column arrays
+    private static final String SAVE_SQL = "INSERT INTO match_fingerprint " +
+            "(match_id, a_fingerprint, b_fingerprint, a_rows, b_rows, run_id) " +
+            "SELECT * FROM unnest(?::varchar[], ?::bigint[], ?::bigint[], ?::int[], ?::int[], ?::bigint[]) " +
+            "ON CONFLICT (match_id) DO UPDATE SET a_fingerprint = EXCLUDED.a_fingerprint, " +
+            "b_fingerprint = EXCLUDED.b_fingerprint, a_rows = EXCLUDED.a_rows, b_rows = EXCLUDED.b_rows, " +
+            "run_id = EXCLUDED.run_id";
+
+    private final DataSource dataSource;
+
+    @Inject
+    public MatchFingerprintRepositoryImpl(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Map<String, MatchFingerprintDTO> findFingerprints(Collection<String> matchIds) throws SQLException {
+        Map<String, MatchFingerprintDTO> fingerprints = new HashMap<>();
+        if (matchIds.isEmpty()) {
+            return fingerprints;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(FIND_SQL)) {
+            for (List<String> chunk : chunks(matchIds)) {
+                pstmt.setArray(1, conn.createArrayOf("varchar", chunk.toArray()));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        MatchFingerprintDTO fingerprint = new MatchFingerprintDTO();
+                        fingerprint.setMatchId(rs.getString(1));
+                        fingerprint.setAFingerprint(rs.getLong(2));
+                        fingerprint.setBFingerprint(rs.getLong(3));
+                        fingerprint.setARows(rs.getInt(4));
+                        fingerprint.setBRows(rs.getInt(5));
+                        fingerprint.setRunId(rs.getLong(6));
+                        fingerprints.put(fingerprint.getMatchId(), fingerprint);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in findFingerprints: {}", e.getMessage(), e);
+            throw e;
+        }
+        return fingerprints;
+    }
+
+    @Override
+    public void saveFingerprints(Collection<MatchFingerprintDTO> fingerprints) throws SQLException {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SAVE_SQL)) {
+            for (List<MatchFingerprintDTO> chunk : chunks(fingerprints)) {
+                int size = chunk.size();
+                Object[] matchIds = new Object[size];
+                Object[] aFingerprints = new Object[size];
+                Object[] bFingerprints = new Object[size];
+                Object[] aRows = new Object[size];
+                Object[] bRows = new Object[size];
+                Object[] runIds = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    MatchFingerprintDTO fingerprint = chunk.get(i);
+                    matchIds[i] = fingerprint.getMatchId();
+                    aFingerprints[i] = fingerprint.getAFingerprint();
+                    bFingerprints[i] = fingerprint.getBFingerprint();
+                    aRows[i] = fingerprint.getARows();
+                    bRows[i] = fingerprint.getBRows();
+                    runIds[i] = fingerprint.getRunId();
+                }
+                pstmt.setArray(1, conn.createArrayOf("varchar", matchIds));
+                pstmt.setArray(2, conn.createArrayOf("bigint", aFingerprints));
+                pstmt.setArray(3, conn.createArrayOf("bigint", bFingerprints));
+                pstmt.setArray(4, conn.createArrayOf("integer", aRows));
+                pstmt.setArray(5, conn.createArrayOf("integer", bRows));
+                pstmt.setArray(6, conn.createArrayOf("bigint", runIds));
+                pstmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in saveFingerprints: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public int deleteFingerprintsOfRun(long runId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM match_fingerprint WHERE run_id = ?")) {
+            pstmt.setLong(1, runId);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in deleteFingerprintsOfRun for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    private static <T> List<List<T>> chunks(Collection<T> values) {
+        List<T> list = values instanceof List<T> l ? l : new ArrayList<>(values);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += CHUNK_SIZE) {
+            chunks.add(list.subList(from, Math.min(list.size(), from + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+}
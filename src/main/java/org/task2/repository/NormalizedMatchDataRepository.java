@@ -0,0 +1,408 @@
+package org.task2.repository;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Typed;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.task2.model.MatchDataColumns;
+import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * {@link MatchDataRepository} on the normalized layout, selected with {@code file-processing.storage=normalized}.
+ * <p>
+ * Rows go to {@code match_fact}, partitioned by a bigint {@code run_id} like {@code match_data}. A fact row holds
+ * integer surrogate keys instead of the MATCH_ID, OUTCOME_ID and SPECIFIERS strings, which are stored once in
+ * {@code match_dim}, {@code outcome_dim} and {@code specifier_dim}. The row is a fixed-width tuple of a few dozen
+ * bytes, so writes, the natural key index and scans touch a fraction of the pages of the wide layout.
+ * <p>
+ * Before a batch is written, the distinct strings of the batch are resolved through a {@link DimensionDictionary}
+ * per dimension on the same connection, creating the keys of strings seen for the first time. Staged loads copy
+ * the wide rows into the staging table of {@link MatchDataRepositoryImpl} and resolve the keys in SQL when merging.
+ * Writes always use JDBC.
+ */
+@ApplicationScoped
+@Typed(NormalizedMatchDataRepository.class) // Exposed as MatchDataRepository by MatchDataRepositoryProducer
+public class NormalizedMatchDataRepository implements MatchDataRepository {
+    private static final Logger logger = LoggerFactory.getLogger(NormalizedMatchDataRepository.class);
+
+    // Columns in descending alignment, so the tuple has no padding; the nullable specifier_key comes last
+    private static final String COLUMNS = "(run_id, date_insert, match_key, outcome_key, market_id, sequence_number, " +
+            "specifier_key, event_type)";
+    // Identifies a row within a run, see uk_match_fact_natural_key
+    private static final String NATURAL_KEY = "(run_id, match_key, event_type, sequence_number)";
+    private static final String SKIP_EXISTING = " ON CONFLICT " + NATURAL_KEY + " DO NOTHING";
+
+    private final DataSource dataSource;
+    private final MatchDataRepositoryImpl jdbcRepository;
+    private final RunPartitions partitions;
+    private final DimensionDictionary matches;
+    private final DimensionDictionary outcomes;
+    private final DimensionDictionary specifiers;
+
+    @Inject
+    public NormalizedMatchDataRepository(DataSource dataSource, MatchDataRepositoryImpl jdbcRepository,
+                                         @ConfigProperty(name = "file-processing.partitioning.enabled", defaultValue = "false") boolean partitioned,
+                                         @ConfigProperty(name = "file-processing.partitioning.defer-indexes", defaultValue = "false") boolean deferIndexes,
+                                         @ConfigProperty(name = "file-processing.normalized.cache-size", defaultValue = "200000") int cacheSize) {
+        this.dataSource = dataSource;
+        this.jdbcRepository = jdbcRepository;
+        this.partitions = new RunPartitions(dataSource, "match_fact", NATURAL_KEY, true, partitioned, deferIndexes);
+        this.matches = new DimensionDictionary("match_dim", "match_key", "match_id", cacheSize);
+        this.outcomes = new DimensionDictionary("outcome_dim", "outcome_key", "outcome_id", cacheSize);
+        this.specifiers = new DimensionDictionary("specifier_dim", "specifier_key", "specifiers", cacheSize);
+    }
+
+    /**
+     * The surrogate keys of the strings of one batch.
+     */
+    private record Keys(Map<String, Integer> matches, Map<String, Integer> outcomes, Map<String, Integer> specifiers) {
+
+        Integer specifier(String value) {
+            return value == null ? null : specifiers.get(value);
+        }
+    }
+
+    private Keys resolveKeys(Connection conn, int count, IntFunction<String> matchId, IntFunction<String> outcomeId,
+                             IntFunction<String> specifier) throws SQLException {
+        Set<String> matchIds = new HashSet<>();
+        Set<String> outcomeIds = new HashSet<>();
+        Set<String> specifierValues = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            matchIds.add(matchId.apply(i));
+            outcomeIds.add(outcomeId.apply(i));
+            String value = specifier.apply(i);
+            if (value != null) {
+                specifierValues.add(value);
+            }
+        }
+        return new Keys(matches.getOrCreate(conn, matchIds), outcomes.getOrCreate(conn, outcomeIds),
+                specifiers.getOrCreate(conn, specifierValues));
+    }
+
+    @Override
+    public void insertMatchData(List<MatchDataDTO> matchDataList) throws Exception {
+        writeRows(matchDataList, false, false);
+    }
+
+    @Override
+    public void copyMatchData(List<MatchDataDTO> matchDataList) throws Exception {
+        writeRows(matchDataList, true, false);
+    }
+
+    @Override
+    public int[] upsertMatchData(List<MatchDataDTO> matchDataList) throws Exception {
+        return writeRows(matchDataList, false, true);
+    }
+
+    @Override
+    public void insertMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception {
+        writeRows(columns, rows, from, to, false, false);
+    }
+
+    @Override
+    public void copyMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception {
+        writeRows(columns, rows, from, to, true, false);
+    }
+
+    @Override
+    public int[] upsertMatchData(MatchDataColumns columns, int[] rows, int from, int to) throws Exception {
+        return writeRows(columns, rows, from, to, false, true);
+    }
+
+    /**
+     * @return The update count of each row for an insert, {@code null} for a copy.
+     */
+    private int[] writeRows(List<MatchDataDTO> matchDataList, boolean copy, boolean skipExisting) throws SQLException {
+        if (matchDataList.isEmpty()) {
+            return new int[0];
+        }
+        String runId = matchDataList.get(0).getRunId();
+        long run = Long.parseLong(runId);
+        int count = matchDataList.size();
+        try (Connection conn = dataSource.getConnection()) {
+            Keys keys = resolveKeys(conn, count, i -> matchDataList.get(i).getMatchId(),
+                    i -> matchDataList.get(i).getOutcomeId(), i -> matchDataList.get(i).getSpecifiers());
+            if (copy) {
+                MatchDataRepositoryImpl.copyRows(conn, copySql(partitions.tableFor(runId)), count, (buffer, i) -> {
+                    MatchDataDTO dto = matchDataList.get(i);
+                    appendCopyRow(buffer, run, dto.getDateInsert().toString(), keys.matches().get(dto.getMatchId()),
+                            keys.outcomes().get(dto.getOutcomeId()), dto.getMarketId(), dto.getSequenceNumber(),
+                            keys.specifier(dto.getSpecifiers()), dto.getEventType().charAt(0));
+                });
+                return null;
+            }
+            return MatchDataRepositoryImpl.insertRows(conn, insertSql(partitions.tableFor(runId), skipExisting), count,
+                    (pstmt, i) -> {
+                        MatchDataDTO dto = matchDataList.get(i);
+                        bindRow(pstmt, run, Timestamp.valueOf(dto.getDateInsert()), keys.matches().get(dto.getMatchId()),
+                                keys.outcomes().get(dto.getOutcomeId()), dto.getMarketId(), dto.getSequenceNumber(),
+                                keys.specifier(dto.getSpecifiers()), dto.getEventType());
+                    });
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in writeRows for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The update count of each row for an insert, {@code null} for a copy.
+     */
+    private int[] writeRows(MatchDataColumns columns, int[] rows, int from, int to, boolean copy,
+                            boolean skipExisting) throws SQLException {
+        if (from == to) {
+            return new int[0];
+        }
+        String runId = columns.getRunId();
+        long run = Long.parseLong(runId);
+        String eventA = String.valueOf((char) MatchDataColumns.EVENT_A);
+        String eventB = String.valueOf((char) MatchDataColumns.EVENT_B);
+        try (Connection conn = dataSource.getConnection()) {
+            Keys keys = resolveKeys(conn, to - from, i -> columns.getMatchId(rows[from + i]),
+                    i -> columns.getOutcomeId(rows[from + i]), i -> columns.getSpecifiers(rows[from + i]));
+            if (copy) {
+                MatchDataRepositoryImpl.copyRows(conn, copySql(partitions.tableFor(runId)), to - from, (buffer, i) -> {
+                    int row = rows[from + i];
+                    appendCopyRow(buffer, run, columns.getDateInsert(row).toString(),
+                            keys.matches().get(columns.getMatchId(row)), keys.outcomes().get(columns.getOutcomeId(row)),
+                            columns.getMarketId(row), columns.getSequenceNumber(row),
+                            keys.specifier(columns.getSpecifiers(row)), (char) columns.getEventType(row));
+                });
+                return null;
+            }
+            return MatchDataRepositoryImpl.insertRows(conn, insertSql(partitions.tableFor(runId), skipExisting), to - from,
+                    (pstmt, i) -> {
+                        int row = rows[from + i];
+                        bindRow(pstmt, run, Timestamp.valueOf(columns.getDateInsert(row)),
+                                keys.matches().get(columns.getMatchId(row)), keys.outcomes().get(columns.getOutcomeId(row)),
+                                columns.getMarketId(row), columns.getSequenceNumber(row),
+                                keys.specifier(columns.getSpecifiers(row)),
+                                columns.getEventType(row) == MatchDataColumns.EVENT_A ? eventA : eventB);
+                    });
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in writeRows for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    private static String insertSql(String table, boolean skipExisting) {
+        return "INSERT INTO " + table + " " + COLUMNS + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)" + (skipExisting ? SKIP_EXISTING : "");
+    }
+
+    private static String copySql(String table) {
+        return "COPY " + table + " " + COLUMNS + " FROM STDIN WITH (FORMAT text)";
+    }
+
+    private static void bindRow(PreparedStatement pstmt, long runId, Timestamp dateInsert, int matchKey, int outcomeKey,
+                                int marketId, int sequenceNumber, Integer specifierKey, String eventType) throws SQLException {
+        pstmt.setLong(1, runId);
+        pstmt.setTimestamp(2, dateInsert);
+        pstmt.setInt(3, matchKey);
+        pstmt.setInt(4, outcomeKey);
+        pstmt.setInt(5, marketId);
+        pstmt.setInt(6, sequenceNumber);
+        if (specifierKey == null) {
+            pstmt.setNull(7, Types.INTEGER);
+        } else {
+            pstmt.setInt(7, specifierKey);
+        }
+        pstmt.setString(8, eventType);
+    }
+
+    /**
+     * Appends one row in PostgreSQL COPY text format. Apart from the timestamp, every column is a number.
+     */
+    private static void appendCopyRow(StringBuilder buffer, long runId, String dateInsert, int matchKey, int outcomeKey,
+                                      int marketId, int sequenceNumber, Integer specifierKey, char eventType) {
+        buffer.append(runId).append('\t');
+        buffer.append(dateInsert).append('\t');
+        buffer.append(matchKey).append('\t');
+        buffer.append(outcomeKey).append('\t');
+        buffer.append(marketId).append('\t');
+        buffer.append(sequenceNumber).append('\t');
+        if (specifierKey == null) {
+            buffer.append("\\N");
+        } else {
+            buffer.append(specifierKey.intValue());
+        }
+        buffer.append('\t').append(eventType).append('\n');
+    }
+
+    @Override
+    public void prepareUpsert(String runId) throws SQLException {
+        partitions.prepareUpsert(runId);
+    }
+
+    @Override
+    public void createRunPartition(String runId) throws SQLException {
+        partitions.create(runId);
+    }
+
+    @Override
+    public void attachRunPartition(String runId) throws SQLException {
+        partitions.attach(runId);
+    }
+
+    @Override
+    public void createStagingTable(String runId, int partitionIndex) throws Exception {
+        jdbcRepository.createStagingTable(runId, partitionIndex);
+    }
+
+    @Override
+    public void copyToStaging(String runId, int partitionIndex, MatchDataColumns columns, int from, int to) throws Exception {
+        jdbcRepository.copyToStaging(runId, partitionIndex, columns, from, to);
+    }
+
+    @Override
+    public long mergeStaging(String runId, int partitionIndex, boolean skipExisting) throws SQLException {
+        String stagingTable = jdbcRepository.stagingTableName(runId, partitionIndex);
+        String mergeSql = "INSERT INTO " + partitions.tableFor(runId) + " " + COLUMNS + " " +
+                "SELECT ?, s.date_insert, m.match_key, o.outcome_key, s.market_id, " +
+                "ROW_NUMBER() OVER (PARTITION BY s.match_id, s.event_type ORDER BY s.line_no), sp.specifier_key, s.event_type " +
+                "FROM " + stagingTable + " s " +
+                "JOIN match_dim m ON m.match_id = s.match_id " +
+                "JOIN outcome_dim o ON o.outcome_id = s.outcome_id " +
+                "LEFT JOIN specifier_dim sp ON sp.specifiers = s.specifiers" + (skipExisting ? SKIP_EXISTING : "");
+        try (Connection conn = dataSource.getConnection()) {
+            // Step 1: Create the keys of strings seen for the first time, each dimension in its own short
+            // transaction, so the merge below does not hold their locks
+            matches.createFrom(conn, stagingTable);
+            outcomes.createFrom(conn, stagingTable);
+            specifiers.createFrom(conn, stagingTable);
+
+            // Step 2: Move the rows, like MatchDataRepositoryImpl#mergeStaging
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(mergeSql);
+                 Statement stmt = conn.createStatement()) {
+                pstmt.setLong(1, Long.parseLong(runId));
+                long rows = pstmt.executeLargeUpdate();
+                stmt.execute("DROP TABLE " + stagingTable);
+                conn.commit();
+                return rows;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in mergeStaging for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void dropStagingTable(String runId, int partitionIndex) throws Exception {
+        jdbcRepository.dropStagingTable(runId, partitionIndex);
+    }
+
+    @Override
+    public long exportMatchData(MatchDataQueryDTO query, RowHandler handler) throws Exception {
+        // Step 1: Translate the MATCH_IDs of the filter and the cursor to keys. A MATCH_ID without a key has no rows.
+        Integer matchKey = null;
+        Integer afterMatchKey = null;
+        try (Connection conn = dataSource.getConnection()) {
+            if (query.getMatchId() != null && (matchKey = matches.find(conn, query.getMatchId())) == null) {
+                return 0;
+            }
+            if (query.hasCursor() && (afterMatchKey = matches.find(conn, query.getAfterMatchId())) == null) {
+                return 0;
+            }
+        }
+
+        // Step 2: Build the query. Rows come in the order of uk_match_fact_natural_key, i.e. by match key (the
+        // order in which MATCH_IDs were first stored) rather than by MATCH_ID, and the strings are joined back in.
+        long runId = Long.parseLong(query.getRunId());
+        StringBuilder sql = new StringBuilder("SELECT m.match_id, f.market_id, o.outcome_id, sp.specifiers, " +
+                "f.date_insert, f.sequence_number, f.event_type FROM " + partitions.tableFor(query.getRunId()) + " f " +
+                "JOIN match_dim m ON m.match_key = f.match_key " +
+                "JOIN outcome_dim o ON o.outcome_key = f.outcome_key " +
+                "LEFT JOIN specifier_dim sp ON sp.specifier_key = f.specifier_key WHERE f.run_id = ?");
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(runId);
+        if (matchKey != null) {
+            sql.append(" AND f.match_key = ?");
+            parameters.add(matchKey);
+        }
+        if (query.getEventType() != null) {
+            sql.append(" AND f.event_type = ?::\"char\"");
+            parameters.add(query.getEventType());
+        }
+        if (afterMatchKey != null) {
+            // Typed like the index columns, so the comparison covers a prefix of the index
+            sql.append(" AND (f.run_id, f.match_key, f.event_type, f.sequence_number) > (?, ?, ?::\"char\", ?)");
+            parameters.add(runId);
+            parameters.add(afterMatchKey);
+            parameters.add(query.getAfterEventType());
+            parameters.add(query.getAfterSequenceNumber());
+        }
+        sql.append(" ORDER BY f.match_key, f.event_type, f.sequence_number");
+        if (query.getLimit() != null) {
+            sql.append(" LIMIT ?");
+            parameters.add(query.getLimit());
+        }
+
+        // Step 3: Stream the rows
+        return jdbcRepository.streamRows(sql.toString(), parameters, query.getRunId(), handler);
+    }
+
+    @Override
+    public List<MatchDataDTO> findMatchHistory(String matchId, String runId) throws SQLException {
+        String sql = "SELECT m.match_id, f.market_id, o.outcome_id, sp.specifiers, f.date_insert, f.sequence_number, " +
+                "f.event_type, f.run_id FROM " + (runId != null ? partitions.tableFor(runId) : "match_fact") + " f " +
+                "JOIN match_dim m ON m.match_key = f.match_key " +
+                "JOIN outcome_dim o ON o.outcome_key = f.outcome_key " +
+                "LEFT JOIN specifier_dim sp ON sp.specifier_key = f.specifier_key " +
+                "WHERE f.match_key = ?" + (runId != null ? " AND f.run_id = ?" : "") +
+                " ORDER BY f.run_id, f.event_type, f.sequence_number";
+        List<MatchDataDTO> rows = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            Integer matchKey = matches.find(conn, matchId);
+            if (matchKey == null) {
+                return rows;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, matchKey);
+                if (runId != null) {
+                    pstmt.setLong(2, Long.parseLong(runId));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        MatchDataDTO row = new MatchDataDTO();
+                        row.setMatchId(rs.getString(1));
+                        row.setMarketId(rs.getInt(2));
+                        row.setOutcomeId(rs.getString(3));
+                        row.setSpecifiers(rs.getString(4));
+                        row.setDateInsert(rs.getObject(5, LocalDateTime.class));
+                        row.setSequenceNumber(rs.getInt(6));
+                        row.setEventType(rs.getString(7));
+                        row.setRunId(String.valueOf(rs.getLong(8)));
+                        rows.add(row);
+                    }
+                }
+            }
+            return rows;
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in findMatchHistory for matchId {}: {}", matchId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void dropRunData(String runId) throws SQLException {
+        // Dimension rows are shared by all runs and stay
+        partitions.drop(runId);
+    }
+}
@@ -0,0 +1,216 @@
+package org.task2.repository;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Pool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.enterprise.inject.Typed;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.task2.model.MatchDataColumns;
+import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link MatchDataRepository} on the Vert.x reactive PostgreSQL client, selected with
+ * {@code file-processing.repository=reactive}.
+ * <p>
+ * A batch is sent as one pipelined {@code executeBatch}: its rows go out without waiting for each other's
+ * results, and a connection carries up to {@code quarkus.datasource.reactive.postgresql.pipelining-limit}
+ * statements of concurrent batches.
+ * <p>
+ * {@link #writeAsync} returns the pending result of a batch without blocking, so the caller can keep many
+ * batches in flight from a single thread; the grouped ingestion uses it to write a whole partition with
+ * Mutiny backpressure. The {@link MatchDataRepository} methods wait for their batch's result and serve the
+ * streaming ingestion, whose writer lanes call them from writer threads. The client has no COPY support, so
+ * copies are written as pipelined inserts as well. DDL, staged loads, reads and deletes go through
+ * {@link MatchDataRepositoryImpl}.
+ */
+@ApplicationScoped
+@Typed(ReactiveMatchDataRepository.class) // Exposed as MatchDataRepository by MatchDataRepositoryProducer
+public class ReactiveMatchDataRepository implements MatchDataRepository {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveMatchDataRepository.class);
+
+    private final Instance<Pool> pool;
+    private final MatchDataRepositoryImpl jdbcRepository;
+
+    @Inject
+    public ReactiveMatchDataRepository(Instance<Pool> pool, MatchDataRepositoryImpl jdbcRepository) {
+        this.pool = pool;
+        this.jdbcRepository = jdbcRepository;
+    }
+
+    @Override
+    public void insertMatchData(List<MatchDataDTO> matchDataList) {
+        upsertMatchData(matchDataList, false);
+    }
+
+    @Override
+    public void copyMatchData(List<MatchDataDTO> matchDataList) {
+        upsertMatchData(matchDataList, false);
+    }
+
+    @Override
+    public void insertMatchData(MatchDataColumns columns, int[] rows, int from, int to) {
+        upsertMatchData(columns, rows, from, to, false);
+    }
+
+    @Override
+    public void copyMatchData(MatchDataColumns columns, int[] rows, int from, int to) {
+        upsertMatchData(columns, rows, from, to, false);
+    }
+
+    @Override
+    public int[] upsertMatchData(List<MatchDataDTO> matchDataList) {
+        return upsertMatchData(matchDataList, true);
+    }
+
+    @Override
+    public int[] upsertMatchData(MatchDataColumns columns, int[] rows, int from, int to) {
+        return upsertMatchData(columns, rows, from, to, true);
+    }
+
+    private int[] upsertMatchData(List<MatchDataDTO> matchDataList, boolean skipExisting) {
+        if (matchDataList.isEmpty()) {
+            return new int[0];
+        }
+        List<Tuple> tuples = new ArrayList<>(matchDataList.size());
+        for (MatchDataDTO dto : matchDataList) {
+            tuples.add(Tuple.tuple()
+                    .addString(dto.getMatchId())
+                    .addInteger(dto.getMarketId())
+                    .addString(dto.getOutcomeId())
+                    .addString(dto.getSpecifiers())
+                    .addLocalDateTime(dto.getDateInsert())
+                    .addString(dto.getRunId())
+                    .addInteger(dto.getSequenceNumber())
+                    .addString(dto.getEventType()));
+        }
+        return await(executeBatch(insertSql(matchDataList.get(0).getRunId(), skipExisting), tuples));
+    }
+
+    private int[] upsertMatchData(MatchDataColumns columns, int[] rows, int from, int to, boolean skipExisting) {
+        return await(writeAsync(columns, rows, from, to, skipExisting));
+    }
+
+    /**
+     * Sends rows {@code from} (inclusive) to {@code to} (exclusive) of {@code rows} as one pipelined batch without
+     * waiting for the result. The rows are read before this method returns, so {@code rows} may be reused.
+     *
+     * @param skipExisting Whether to skip rows already stored, see {@link #upsertMatchData(List)}.
+     * @return The update count of each row, emitted on an event loop thread.
+     */
+    public Uni<int[]> writeAsync(MatchDataColumns columns, int[] rows, int from, int to, boolean skipExisting) {
+        if (from == to) {
+            return Uni.createFrom().item(new int[0]);
+        }
+        String eventA = String.valueOf((char) MatchDataColumns.EVENT_A);
+        String eventB = String.valueOf((char) MatchDataColumns.EVENT_B);
+        List<Tuple> tuples = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int row = rows[i];
+            tuples.add(Tuple.tuple()
+                    .addString(columns.getMatchId(row))
+                    .addInteger(columns.getMarketId(row))
+                    .addString(columns.getOutcomeId(row))
+                    .addString(columns.getSpecifiers(row))
+                    .addLocalDateTime(columns.getDateInsert(row))
+                    .addString(columns.getRunId())
+                    .addInteger(columns.getSequenceNumber(row))
+                    .addString(columns.getEventType(row) == MatchDataColumns.EVENT_A ? eventA : eventB));
+        }
+        return executeBatch(insertSql(columns.getRunId(), skipExisting), tuples);
+    }
+
+    private String insertSql(String runId, boolean skipExisting) {
+        return "INSERT INTO " + jdbcRepository.tableFor(runId) + " " + MatchDataRepositoryImpl.COLUMNS +
+                " VALUES ($1, $2, $3, $4, $5, $6, $7, $8)" + (skipExisting ? MatchDataRepositoryImpl.SKIP_EXISTING : "");
+    }
+
+    /**
+     * Sends the rows as one pipelined batch.
+     *
+     * @return The update count of each row.
+     */
+    private Uni<int[]> executeBatch(String sql, List<Tuple> tuples) {
+        return pool.get().preparedQuery(sql).executeBatch(tuples)
+                .map(result -> {
+                    // One row set per statement of the batch, chained in batch order
+                    int[] updateCounts = new int[tuples.size()];
+                    int i = 0;
+                    for (RowSet<Row> rowSet = result; rowSet != null && i < updateCounts.length; rowSet = rowSet.next()) {
+                        updateCounts[i++] = rowSet.rowCount();
+                    }
+                    return updateCounts;
+                });
+    }
+
+    /**
+     * Waits for a batch sent by {@link #executeBatch}. Must not be called on an event loop thread.
+     */
+    private static int[] await(Uni<int[]> batch) {
+        try {
+            return batch.await().indefinitely();
+        } catch (RuntimeException e) {
+            logger.error("Unexpected exception in executeBatch: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void prepareUpsert(String runId) throws Exception {
+        jdbcRepository.prepareUpsert(runId);
+    }
+
+    @Override
+    public void createRunPartition(String runId) throws Exception {
+        jdbcRepository.createRunPartition(runId);
+    }
+
+    @Override
+    public void attachRunPartition(String runId) throws Exception {
+        jdbcRepository.attachRunPartition(runId);
+    }
+
+    @Override
+    public void createStagingTable(String runId, int partitionIndex) throws Exception {
+        jdbcRepository.createStagingTable(runId, partitionIndex);
+    }
+
+    @Override
+    public void copyToStaging(String runId, int partitionIndex, MatchDataColumns columns, int from, int to) throws Exception {
+        jdbcRepository.copyToStaging(runId, partitionIndex, columns, from, to);
+    }
+
+    @Override
+    public long mergeStaging(String runId, int partitionIndex, boolean skipExisting) throws Exception {
+        return jdbcRepository.mergeStaging(runId, partitionIndex, skipExisting);
+    }
+
+    @Override
+    public void dropStagingTable(String runId, int partitionIndex) throws Exception {
+        jdbcRepository.dropStagingTable(runId, partitionIndex);
+    }
+
+    @Override
+    public long exportMatchData(MatchDataQueryDTO query, RowHandler handler) throws Exception {
+        return jdbcRepository.exportMatchData(query, handler);
+    }
+
+    @Override
+    public List<MatchDataDTO> findMatchHistory(String matchId, String runId) throws Exception {
+        return jdbcRepository.findMatchHistory(matchId, runId);
+    }
+
+    @Override
+    public void dropRunData(String runId) throws Exception {
+        jdbcRepository.dropRunData(runId);
+    }
+}
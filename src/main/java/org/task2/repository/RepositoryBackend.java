@@ -0,0 +1,11 @@
+package org.task2.repository;
+
+/**
+ * Selects the client {@link MatchDataRepository} writes rows with.
+ */
+public enum RepositoryBackend {
+    /** Blocking JDBC through the Agroal connection pool; each write holds a connection until it completes. */
+    JDBC,
+    /** The Vert.x reactive PostgreSQL client; writes are pipelined, many per connection. */
+    REACTIVE
+}
@@ -0,0 +1,162 @@
+package org.task2.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * DDL for the per-run partitions of a table that is LIST-partitioned by {@code run_id}: one partition per run,
+ * named {@code <table>_run_<run id>}, optionally created detached and without indexes until the run completes.
+ */
+class RunPartitions {
+    private static final Logger logger = LoggerFactory.getLogger(RunPartitions.class);
+
+    private final DataSource dataSource;
+    private final String table;
+    private final String naturalKey;
+    private final boolean bigintRunId;
+    private final boolean partitioned;
+    private final boolean deferIndexes;
+    // Set once the parent table was found partitioned
+    private volatile boolean parentChecked;
+
+    /**
+     * @param table       The partitioned parent table.
+     * @param naturalKey  The columns of the table's unique natural key, in parentheses.
+     * @param bigintRunId Whether {@code run_id} is a bigint rather than a varchar column.
+     */
+    RunPartitions(DataSource dataSource, String table, String naturalKey, boolean bigintRunId,
+                  boolean partitioned, boolean deferIndexes) {
+        this.dataSource = dataSource;
+        this.table = table;
+        this.naturalKey = naturalKey;
+        this.bigintRunId = bigintRunId;
+        this.partitioned = partitioned;
+        this.deferIndexes = partitioned && deferIndexes;
+    }
+
+    /**
+     * Rows of a run are written straight into the run's partition, which skips partition routing and works
+     * while a partition with deferred indexes is not attached yet.
+     */
+    String tableFor(String runId) {
+        return partitioned ? partitionName(runId) : table;
+    }
+
+    String partitionName(String runId) {
+        // Run ids come from run_id_seq; anything else must not end up in an identifier
+        for (int i = 0; i < runId.length(); i++) {
+            if (!Character.isDigit(runId.charAt(i))) {
+                throw new IllegalArgumentException("Invalid run id for a partition name: " + runId);
+            }
+        }
+        return table + "_run_" + runId;
+    }
+
+    void create(String runId) throws SQLException {
+        if (!partitioned) {
+            return;
+        }
+        // The quoted run id is a valid literal for a varchar and a bigint run_id alike
+        String partition = partitionName(runId);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            checkParentPartitioned(conn);
+            if (deferIndexes) {
+                // A standalone table without indexes, attached once the run completes. The CHECK constraint
+                // matches the partition bound, so attaching does not need to scan the rows.
+                stmt.execute("CREATE TABLE " + partition + " (LIKE " + table + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+                stmt.execute("ALTER TABLE " + partition + " ADD CONSTRAINT " + partition + "_run_id " +
+                        "CHECK (run_id IS NOT NULL AND run_id = '" + runId + "')");
+            } else {
+                stmt.execute("CREATE TABLE " + partition + " PARTITION OF " + table + " FOR VALUES IN ('" + runId + "')");
+            }
+            logger.info("Created partition {}{}", partition, deferIndexes ? " with deferred indexes" : "");
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in createRunPartition for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fails with a clear message, rather than with the error of the partition DDL, while the parent is still
+     * the flat table Hibernate generates.
+     */
+    private void checkParentPartitioned(Connection conn) throws SQLException {
+        if (parentChecked) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?)")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("Table " + table + " is not partitioned by run_id. Create it with " +
+                            "db/partitioned-schema.sql, or set file-processing.partitioning.enabled=false");
+                }
+            }
+        }
+        parentChecked = true;
+    }
+
+    void attach(String runId) throws SQLException {
+        if (!deferIndexes) {
+            return;
+        }
+        String partition = partitionName(runId);
+        long start = System.nanoTime();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            // Builds the partition's copies of the parent's indexes
+            stmt.execute("ALTER TABLE " + table + " ATTACH PARTITION " + partition + " FOR VALUES IN ('" + runId + "')");
+            logger.info("Attached partition {} in {} ms", partition, (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in attachRunPartition for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    void prepareUpsert(String runId) throws SQLException {
+        if (!deferIndexes) {
+            return;
+        }
+        // A detached partition has no indexes yet. Attaching it later adopts this index instead of building
+        // another copy of the parent's natural key index.
+        String partition = partitionName(runId);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + partition + "_natural_key ON " + partition + " " + naturalKey);
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in prepareUpsert for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    void drop(String runId) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            if (partitioned) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP TABLE IF EXISTS " + partitionName(runId));
+                }
+            } else {
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + table + " WHERE run_id = ?")) {
+                    if (bigintRunId) {
+                        pstmt.setLong(1, Long.parseLong(runId));
+                    } else {
+                        pstmt.setString(1, runId);
+                    }
+                    pstmt.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in dropRunData for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.task2.repository;
+
+import org.task2.model.PartitionClaimDTO;
+import org.task2.model.RunDTO;
+import org.task2.model.RunStatsDTO;
+import org.task2.model.RunStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Database-backed registry of ingestion runs, shared by every node writing to the same database.
+ */
+public interface RunRepository {
+
+    /**
+     * Allocates a run id from {@code run_id_seq} and registers the run with {@code partitionCount}
+     * pending partitions.
+     *
+     * @param uploaded Whether the input is an upload, which cannot be read again to resume or join the run.
+     * @return The new run id.
+     */
+    long createRun(String fileName, int partitionCount, boolean uploaded) throws Exception;
+
+    /**
+     * Claims the lowest pending partition of a run for {@code nodeId}, or a running partition whose lease
+     * has not been renewed for {@code leaseMillis}, because the node holding it stopped. Concurrent callers
+     * never claim the same partition.
+     *
+     * @return The claimed partition with the statistics and checkpoint of its previous attempts, or empty
+     * if no partition is pending or expired.
+     */
+    Optional<PartitionClaimDTO> claimPartition(long runId, String nodeId, long leaseMillis) throws Exception;
+
+    /**
+     * Renews the lease of a claimed partition, while {@code attempt} still holds it.
+     *
+     * @return Whether the lease was renewed, {@code false} if the partition has been claimed again or finished.
+     */
+    boolean renewLease(long runId, int partitionIndex, int attempt) throws Exception;
+
+    /**
+     * Makes the failed partitions of a run pending again, and the running ones whose lease has not been
+     * renewed for {@code leaseMillis}, keeping their statistics and checkpoints, and puts the run back to
+     * {@link RunStatus#RUNNING}.
+     *
+     * @return The number of partitions to resume, 0 if the run has no failed or abandoned partition.
+     */
+    int resumeRun(long runId, long leaseMillis) throws Exception;
+
+    /**
+     * Records the progress or outcome of a claimed partition and rolls the statistics and statuses of all
+     * partitions up into the run. A {@link RunStatus#RUNNING} status records progress only.
+     *
+     * @param attempt The attempt that claimed the partition; once the partition is claimed again, the
+     *                updates of earlier attempts are rejected.
+     * @return The status of the run after the roll-up.
+     * @throws IllegalStateException If a later attempt has claimed the partition.
+     */
+    RunStatus updatePartition(long runId, int partitionIndex, int attempt, RunStatus status, RunStatsDTO stats,
+                              String error) throws Exception;
+
+    Optional<RunDTO> findRun(long runId);
+
+    /**
+     * @return The ids of completed or failed runs that finished before {@code cutoff}, oldest first.
+     */
+    List<Long> findRunsFinishedBefore(LocalDateTime cutoff);
+
+    /**
+     * Removes a run and its partitions from the registry.
+     */
+    void deleteRun(long runId) throws Exception;
+}
@@ -0,0 +1,355 @@
+package org.task2.repository;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.task2.model.PartitionClaimDTO;
+import org.task2.model.RunDTO;
+import org.task2.model.RunStatsDTO;
+import org.task2.model.RunStatus;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+@ApplicationScoped
+public class RunRepositoryImpl implements RunRepository {
+    private static final Logger logger = LoggerFactory.getLogger(RunRepositoryImpl.class);
+
+    // Takes a pending partition, or a running one whose lease expired because its node stopped renewing it.
+    // Lease times come from the database clock, so the clocks of the nodes do not need to agree.
+    private static final String CLAIM_SQL = "UPDATE run_partition SET status = ?, node_id = ?, " +
+            "claimed_at = LOCALTIMESTAMP, attempts = attempts + 1 " +
+            "WHERE id = (SELECT id FROM run_partition WHERE run_id = ? AND (status = ? OR " +
+            "(status = ? AND claimed_at < LOCALTIMESTAMP - ? * INTERVAL '1 millisecond')) " +
+            "ORDER BY partition_index LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+            "RETURNING partition_index, attempts, rows_parsed, rows_written, a_rows, b_rows, match_ids, " +
+            "matches_unchanged, min_date_insert, max_date_insert, checkpoint_line";
+
+    // Rolls the partitions up into the run: FAILED as soon as one partition failed, COMPLETED once all completed.
+    // Partitions never share a MATCH_ID, so distinct MATCH_IDs add up across partitions.
+    private static final String ROLL_UP_SQL = "UPDATE run r SET rows_parsed = p.parsed, rows_written = p.written, " +
+            "a_rows = p.a_rows, b_rows = p.b_rows, match_ids = p.match_ids, " +
+            "matches_unchanged = p.matches_unchanged, " +
+            "min_date_insert = p.min_date_insert, max_date_insert = p.max_date_insert, " +
+            "status = CASE WHEN p.failed > 0 THEN 'FAILED' WHEN p.completed = r.partition_count THEN 'COMPLETED' ELSE 'RUNNING' END, " +
+            "finished_at = CASE WHEN p.failed > 0 OR p.completed = r.partition_count THEN CAST(? AS timestamp) END, " +
+            "error = COALESCE(r.error, ?) " +
+            "FROM (SELECT SUM(rows_parsed) AS parsed, SUM(rows_written) AS written, " +
+            "SUM(a_rows) AS a_rows, SUM(b_rows) AS b_rows, SUM(match_ids) AS match_ids, " +
+            "SUM(matches_unchanged) AS matches_unchanged, " +
+            "MIN(min_date_insert) AS min_date_insert, MAX(max_date_insert) AS max_date_insert, " +
+            "COUNT(*) FILTER (WHERE status = 'FAILED') AS failed, " +
+            "COUNT(*) FILTER (WHERE status = 'COMPLETED') AS completed " +
+            "FROM run_partition WHERE run_id = ?) p " +
+            "WHERE r.id = ? " +
+            "RETURNING r.status";
+
+    private final DataSource dataSource;
+
+    @Inject
+    public RunRepositoryImpl(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public long createRun(String fileName, int partitionCount, boolean uploaded) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long runId;
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT nextval('run_id_seq')")) {
+                    rs.next();
+                    runId = rs.getLong(1);
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO run " +
+                        "(id, file_name, status, partition_count, rows_parsed, rows_written, a_rows, b_rows, match_ids, matches_unchanged, uploaded, created_at) " +
+                        "VALUES (?, ?, ?, ?, 0, 0, 0, 0, 0, 0, ?, ?)")) {
+                    pstmt.setLong(1, runId);
+                    pstmt.setString(2, fileName);
+                    pstmt.setString(3, RunStatus.RUNNING.name());
+                    pstmt.setInt(4, partitionCount);
+                    pstmt.setBoolean(5, uploaded);
+                    pstmt.setTimestamp(6, Timestamp.valueOf(LocalDateTime.now()));
+                    pstmt.executeUpdate();
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO run_partition " +
+                        "(run_id, partition_index, status, attempts, rows_parsed, rows_written, a_rows, b_rows, match_ids, matches_unchanged, checkpoint_line) " +
+                        "VALUES (?, ?, ?, 0, 0, 0, 0, 0, 0, 0, 0)")) {
+                    for (int i = 0; i < partitionCount; i++) {
+                        pstmt.setLong(1, runId);
+                        pstmt.setInt(2, i);
+                        pstmt.setString(3, RunStatus.PENDING.name());
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+
+                conn.commit();
+                return runId;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in createRun for file {}: {}", fileName, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<PartitionClaimDTO> claimPartition(long runId, String nodeId, long leaseMillis) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(CLAIM_SQL)) {
+            pstmt.setString(1, RunStatus.RUNNING.name());
+            pstmt.setString(2, nodeId);
+            pstmt.setLong(3, runId);
+            pstmt.setString(4, RunStatus.PENDING.name());
+            pstmt.setString(5, RunStatus.RUNNING.name());
+            pstmt.setLong(6, leaseMillis);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                RunStatsDTO previous = new RunStatsDTO();
+                previous.setRowsParsed(rs.getLong("rows_parsed"));
+                previous.setRowsWritten(rs.getLong("rows_written"));
+                previous.setARows(rs.getLong("a_rows"));
+                previous.setBRows(rs.getLong("b_rows"));
+                previous.setMatchIds(rs.getLong("match_ids"));
+                previous.setMatchesUnchanged(rs.getLong("matches_unchanged"));
+                previous.setMinDateInsert(toLocalDateTime(rs.getTimestamp("min_date_insert")));
+                previous.setMaxDateInsert(toLocalDateTime(rs.getTimestamp("max_date_insert")));
+                previous.setCheckpointLine(rs.getLong("checkpoint_line"));
+
+                PartitionClaimDTO claim = new PartitionClaimDTO();
+                claim.setPartitionIndex(rs.getInt("partition_index"));
+                claim.setAttempt(rs.getInt("attempts"));
+                claim.setPreviousStats(previous);
+                return Optional.of(claim);
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in claimPartition for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean renewLease(long runId, int partitionIndex, int attempt) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE run_partition SET claimed_at = LOCALTIMESTAMP " +
+                     "WHERE run_id = ? AND partition_index = ? AND attempts = ? AND status = ?")) {
+            pstmt.setLong(1, runId);
+            pstmt.setInt(2, partitionIndex);
+            pstmt.setInt(3, attempt);
+            pstmt.setString(4, RunStatus.RUNNING.name());
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in renewLease for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public int resumeRun(long runId, long leaseMillis) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Same lock as the roll-up, so a partition finishing concurrently cannot overwrite the status
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM run WHERE id = ? FOR UPDATE")) {
+                    pstmt.setLong(1, runId);
+                    pstmt.executeQuery().close();
+                }
+
+                // Partitions abandoned while RUNNING are reset too, with the lease the claim uses. Attempts are
+                // kept, so the next claim still fences the node that abandoned the partition.
+                int resumed;
+                try (PreparedStatement pstmt = conn.prepareStatement("UPDATE run_partition " +
+                        "SET status = ?, node_id = NULL, finished_at = NULL WHERE run_id = ? AND (status = ? OR " +
+                        "(status = ? AND claimed_at < LOCALTIMESTAMP - ? * INTERVAL '1 millisecond'))")) {
+                    pstmt.setString(1, RunStatus.PENDING.name());
+                    pstmt.setLong(2, runId);
+                    pstmt.setString(3, RunStatus.FAILED.name());
+                    pstmt.setString(4, RunStatus.RUNNING.name());
+                    pstmt.setLong(5, leaseMillis);
+                    resumed = pstmt.executeUpdate();
+                }
+
+                if (resumed > 0) {
+                    try (PreparedStatement pstmt = conn.prepareStatement("UPDATE run " +
+                            "SET status = ?, finished_at = NULL, error = NULL WHERE id = ?")) {
+                        pstmt.setString(1, RunStatus.RUNNING.name());
+                        pstmt.setLong(2, runId);
+                        pstmt.executeUpdate();
+                    }
+                }
+
+                conn.commit();
+                return resumed;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in resumeRun for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public RunStatus updatePartition(long runId, int partitionIndex, int attempt, RunStatus status,
+                                     RunStatsDTO stats, String error) throws SQLException {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Lock the run row first, so partitions finishing at the same time roll up one after the other
+                // and each roll-up sees the partitions committed before it
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM run WHERE id = ? FOR UPDATE")) {
+                    pstmt.setLong(1, runId);
+                    pstmt.executeQuery().close();
+                }
+
+                try (PreparedStatement pstmt = conn.prepareStatement("UPDATE run_partition " +
+                        "SET status = ?, rows_parsed = ?, rows_written = ?, a_rows = ?, b_rows = ?, match_ids = ?, " +
+                        "matches_unchanged = ?, min_date_insert = ?, max_date_insert = ?, checkpoint_line = ?, finished_at = ? " +
+                        "WHERE run_id = ? AND partition_index = ? AND attempts = ?")) {
+                    pstmt.setString(1, status.name());
+                    pstmt.setLong(2, stats.getRowsParsed());
+                    pstmt.setLong(3, stats.getRowsWritten());
+                    pstmt.setLong(4, stats.getARows());
+                    pstmt.setLong(5, stats.getBRows());
+                    pstmt.setLong(6, stats.getMatchIds());
+                    pstmt.setLong(7, stats.getMatchesUnchanged());
+                    pstmt.setTimestamp(8, toTimestamp(stats.getMinDateInsert()));
+                    pstmt.setTimestamp(9, toTimestamp(stats.getMaxDateInsert()));
+                    pstmt.setLong(10, stats.getCheckpointLine());
+                    pstmt.setTimestamp(11, status == RunStatus.RUNNING ? null : now);
+                    pstmt.setLong(12, runId);
+                    pstmt.setInt(13, partitionIndex);
+                    pstmt.setInt(14, attempt);
+                    if (pstmt.executeUpdate() == 0) {
+                        // The lease expired and a later attempt, maybe on another node, owns the partition now
+                        conn.rollback();
+                        throw new IllegalStateException("Partition " + partitionIndex + " of run " + runId +
+                                " was claimed again after attempt " + attempt + " lost its lease");
+                    }
+                }
+
+                RunStatus runStatus;
+                try (PreparedStatement pstmt = conn.prepareStatement(ROLL_UP_SQL)) {
+                    pstmt.setTimestamp(1, now);
+                    pstmt.setString(2, error);
+                    pstmt.setLong(3, runId);
+                    pstmt.setLong(4, runId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        rs.next();
+                        runStatus = RunStatus.valueOf(rs.getString(1));
+                    }
+                }
+
+                conn.commit();
+                return runStatus;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in updatePartition for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<RunDTO> findRun(long runId) {
+        String query = "SELECT id, file_name, status, partition_count, rows_parsed, rows_written, a_rows, b_rows, " +
+                "match_ids, matches_unchanged, min_date_insert, max_date_insert, created_at, finished_at, error, uploaded " +
+                "FROM run WHERE id = ?";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setLong(1, runId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                RunDTO run = new RunDTO();
+                run.setId(rs.getLong("id"));
+                run.setFileName(rs.getString("file_name"));
+                run.setStatus(RunStatus.valueOf(rs.getString("status")));
+                run.setPartitionCount(rs.getInt("partition_count"));
+                run.setRowsParsed(rs.getLong("rows_parsed"));
+                run.setRowsWritten(rs.getLong("rows_written"));
+                run.setARows(rs.getLong("a_rows"));
+                run.setBRows(rs.getLong("b_rows"));
+                run.setMatchIds(rs.getLong("match_ids"));
+                run.setMatchesUnchanged(rs.getLong("matches_unchanged"));
+                run.setMinDateInsert(toLocalDateTime(rs.getTimestamp("min_date_insert")));
+                run.setMaxDateInsert(toLocalDateTime(rs.getTimestamp("max_date_insert")));
+                run.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+                run.setFinishedAt(toLocalDateTime(rs.getTimestamp("finished_at")));
+                run.setError(rs.getString("error"));
+                run.setUploaded(rs.getBoolean("uploaded"));
+                return Optional.of(run);
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in findRun for runId {}: {}", runId, e.getMessage(), e);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public List<Long> findRunsFinishedBefore(LocalDateTime cutoff) {
+        String query = "SELECT id FROM run WHERE status IN (?, ?) AND finished_at < ? ORDER BY finished_at";
+        List<Long> runIds = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setString(1, RunStatus.COMPLETED.name());
+            pstmt.setString(2, RunStatus.FAILED.name());
+            pstmt.setTimestamp(3, Timestamp.valueOf(cutoff));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    runIds.add(rs.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in findRunsFinishedBefore {}: {}", cutoff, e.getMessage(), e);
+        }
+        return runIds;
+    }
+
+    @Override
+    public void deleteRun(long runId) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement partitions = conn.prepareStatement("DELETE FROM run_partition WHERE run_id = ?");
+                 PreparedStatement run = conn.prepareStatement("DELETE FROM run WHERE id = ?")) {
+                partitions.setLong(1, runId);
+                partitions.executeUpdate();
+                run.setLong(1, runId);
+                run.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.error("Unexpected exception in deleteRun for runId {}: {}", runId, e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime dateTime) {
+        return dateTime == null ? null : Timestamp.valueOf(dateTime);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
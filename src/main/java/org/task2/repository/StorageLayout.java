@@ -0,0 +1,11 @@
+package org.task2.repository;
+
+/**
+ * Selects the tables {@link MatchDataRepository} stores rows in.
+ */
+public enum StorageLayout {
+    /** One {@code match_data} row per record, holding the MATCH_ID, OUTCOME_ID and SPECIFIERS strings. */
+    WIDE,
+    /** Narrow {@code match_fact} rows with integer keys into the {@code match_dim}, {@code outcome_dim} and {@code specifier_dim} tables. */
+    NORMALIZED
+}
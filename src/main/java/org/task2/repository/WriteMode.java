@@ -0,0 +1,11 @@
+package org.task2.repository;
+
+/**
+ * Selects how {@link MatchDataRepository} writes rows to {@code match_data}.
+ */
+public enum WriteMode {
+    /** Streams rows through PostgreSQL {@code COPY ... FROM STDIN} in text format. */
+    COPY,
+    /** Sends rows as a JDBC batch of {@code INSERT ... VALUES} statements. */
+    INSERT
+}
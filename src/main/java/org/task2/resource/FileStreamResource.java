@@ -4,16 +4,31 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponses;
+import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
+import org.task2.model.RunDTO;
+import org.task2.services.ExportFormat;
 import org.task2.services.FileProcessingService;
+import org.task2.services.IngestionJob;
+import org.task2.services.IngestionJobService;
+import org.task2.services.MatchDataExportService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @Path("/file-processing")
 @Produces(MediaType.APPLICATION_JSON)
@@ -23,32 +38,355 @@ public class FileStreamResource {
     @Inject
     FileProcessingService fileProcessingService;
 
+    @Inject
+    IngestionJobService ingestionJobService;
+
+    @Inject
+    MatchDataExportService matchDataExportService;
+
     @POST
-    @Operation(summary = "Process a file", description = "Processes the specified file for match data insertion.")
+    @Operation(summary = "Process a file", description = "Queues the specified file for match data insertion and returns the ingestion job ID. " +
+            "With runId, the job instead claims the pending MATCH_ID partitions of an existing run.")
     @APIResponses(value = {
-            @APIResponse(responseCode = "200", description = "File processed successfully"),
-            @APIResponse(responseCode = "400", description = "File name must be provided"),
-            @APIResponse(responseCode = "500", description = "Error while processing file")
+            @APIResponse(responseCode = "202", description = "File accepted for processing"),
+            @APIResponse(responseCode = "400", description = "File name or run ID must be provided, the file must be inside the input directory, and partitions must be positive"),
+            @APIResponse(responseCode = "404", description = "Not Found - No run with the given run ID"),
+            @APIResponse(responseCode = "409", description = "Conflict - The run was uploaded, so its input cannot be read again"),
+            @APIResponse(responseCode = "429", description = "Too many ingestion jobs in progress")
     })
     @Path("/process")
     public Response processFile(
-            @Parameter(description = "Name of the file to process", required = true)
-            @QueryParam("fileName") String fileName) {
-        if (fileName == null || fileName.isEmpty()) {
+            @Parameter(description = "Name of the file to process")
+            @QueryParam("fileName") String fileName,
+            @Parameter(description = "Number of MATCH_ID partitions to split a new run into, so several nodes can share it")
+            @QueryParam("partitions") @DefaultValue("1") int partitions,
+            @Parameter(description = "Existing run whose pending partitions this node should claim")
+            @QueryParam("runId") Long runId) throws IOException {
+        if (runId == null && (fileName == null || fileName.isEmpty())) {
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity("File name must be provided")
                     .build();
         }
+        if (partitions < 1) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Partitions must be at least 1")
+                    .build();
+        }
         try {
-            fileProcessingService.processFileStreamUsingCopy(fileName);
-            return Response.ok("File processed successfully").build();
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity("Error while processing file: " + e.getMessage())
+            if (runId != null) {
+                Optional<RunDTO> run = fileProcessingService.findRun(runId);
+                if (run.isEmpty()) {
+                    return Response.status(Response.Status.NOT_FOUND)
+                            .entity("No run found for ID " + runId)
+                            .build();
+                }
+                if (run.get().isUploaded()) {
+                    return uploadedRunConflict(runId);
+                }
+                return Response.accepted(toJobResponse(ingestionJobService.join(run.get()))).build();
+            }
+            fileProcessingService.resolveInput(fileName);
+            IngestionJob job = ingestionJobService.submit(fileName, partitions);
+            return Response.accepted(toJobResponse(job)).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(e.getMessage())
+                    .build();
+        } catch (RejectedExecutionException e) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .entity("Too many ingestion jobs in progress, retry later")
                     .build();
         }
     }
 
+    @POST
+    @Operation(summary = "Upload a file", description = "Ingests the request body as a new run while it arrives, without a temporary file or " +
+            "buffering the whole body, and returns the run statistics once the run has finished. Send the file as a raw, optionally chunked, " +
+            "body; gzip and zstd content is decompressed.")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "File ingested"),
+            @APIResponse(responseCode = "429", description = "Too many uploads in progress"),
+            @APIResponse(responseCode = "500", description = "Ingestion failed; the body holds the run statistics and the error")
+    })
+    @Path("/upload")
+    @Consumes({MediaType.APPLICATION_OCTET_STREAM, MediaType.TEXT_PLAIN})
+    public Response uploadFile(
+            @Parameter(description = "Name recorded for the run; a .gz or .zst extension marks compressed content")
+            @QueryParam("fileName") @DefaultValue("upload") String fileName,
+            InputStream body) {
+        IngestionJob job;
+        try {
+            job = ingestionJobService.upload(fileName, body);
+        } catch (RejectedExecutionException e) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .entity("Too many uploads in progress, retry later")
+                    .build();
+        }
+
+        Map<String, Object> response = Optional.ofNullable(job.getRunId())
+                .flatMap(runId -> fileProcessingService.findRun(Long.parseLong(runId)))
+                .map(this::toRunResponse)
+                .orElseGet(() -> toJobResponse(job));
+        response.put("job_id", job.getId());
+        response.put("rows_per_second", job.getRowsPerSecond());
+        if (job.getError() != null) {
+            response.putIfAbsent("error", job.getError());
+        }
+        Response.Status status = job.getState() == IngestionJob.State.COMPLETED
+                ? Response.Status.OK
+                : Response.Status.INTERNAL_SERVER_ERROR;
+        return Response.status(status).entity(response).build();
+    }
+
+    @GET
+    @Operation(summary = "Retrieve ingestion job status", description = "Retrieves the state, row counts and throughput of an ingestion job.")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Job status retrieved successfully"),
+            @APIResponse(responseCode = "404", description = "Not Found - No job with the given ID")
+    })
+    @Path("/jobs/{id}")
+    public Response getJob(
+            @Parameter(description = "Job ID returned by the process endpoint", required = true)
+            @PathParam("id") String id) {
+        return ingestionJobService.getJob(id)
+                .map(job -> Response.ok(toJobResponse(job)).build())
+                .orElseGet(() -> Response.status(Response.Status.NOT_FOUND)
+                        .entity("No job found for ID " + id)
+                        .build());
+    }
+
+    private Map<String, Object> toJobResponse(IngestionJob job) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("job_id", job.getId());
+        response.put("file_name", job.getFileName());
+        response.put("state", job.getState());
+        response.put("run_id", job.getRunId());
+        response.put("partition_count", job.getPartitionCount());
+        response.put("partitions", job.getPartitions());
+        response.put("submitted_at", job.getSubmittedAt());
+        response.put("started_at", job.getStartedAt());
+        response.put("finished_at", job.getFinishedAt());
+        response.put("rows_parsed", job.getRowsParsed());
+        response.put("rows_written", job.getRowsWritten());
+        response.put("rows_per_second", job.getRowsPerSecond());
+        if (job.getError() != null) {
+            response.put("error", job.getError());
+        }
+        return response;
+    }
+
+    @GET
+    @Operation(summary = "Retrieve run status", description = "Retrieves the status and row counts of a run, summed over all nodes ingesting its partitions.")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Run status retrieved successfully"),
+            @APIResponse(responseCode = "404", description = "Not Found - No run with the given run ID")
+    })
+    @Path("/runs/{runId}")
+    public Response getRun(
+            @Parameter(description = "Run ID returned in the job status", required = true)
+            @PathParam("runId") long runId) {
+        return fileProcessingService.findRun(runId)
+                .map(run -> Response.ok(toRunResponse(run)).build())
+                .orElseGet(() -> Response.status(Response.Status.NOT_FOUND)
+                        .entity("No run found for ID " + runId)
+                        .build());
+    }
+
+    @POST
+    @Operation(summary = "Resume a run", description = "Makes the failed MATCH_ID partitions of a run pending again, and those whose node stopped renewing " +
+            "their lease, and queues a job that claims them. " +
+            "Resumed partitions continue from their checkpoint and skip rows that are already stored.")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "202", description = "Run resumed"),
+            @APIResponse(responseCode = "404", description = "Not Found - No run with the given run ID"),
+            @APIResponse(responseCode = "409", description = "Conflict - The run has no failed or abandoned partitions, or was uploaded"),
+            @APIResponse(responseCode = "429", description = "Too many ingestion jobs in progress")
+    })
+    @Path("/runs/{runId}/resume")
+    public Response resumeRun(
+            @Parameter(description = "Run ID returned in the job status", required = true)
+            @PathParam("runId") long runId) throws Exception {
+        Optional<RunDTO> run = fileProcessingService.findRun(runId);
+        if (run.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("No run found for ID " + runId)
+                    .build();
+        }
+        // Checked before the partitions are reset, so the run keeps its status
+        if (run.get().isUploaded()) {
+            return uploadedRunConflict(runId);
+        }
+        if (fileProcessingService.resumeRun(runId) == 0) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("Run " + runId + " has no failed or abandoned partitions")
+                    .build();
+        }
+        try {
+            return Response.accepted(toJobResponse(ingestionJobService.join(run.get()))).build();
+        } catch (RejectedExecutionException e) {
+            // The partitions stay pending until a job joins the run
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .entity("Too many ingestion jobs in progress, retry later")
+                    .build();
+        }
+    }
+
+    @GET
+    @Operation(summary = "Export run data", description = "Streams the rows of a run in (MATCH_ID, event type, sequence number) order, " +
+            "as NDJSON or CSV, straight from a database cursor. To continue an interrupted export, pass the MATCH_ID, event type and " +
+            "sequence number of the last row received as afterMatchId, afterEventType and afterSequence.")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Rows streamed"),
+            @APIResponse(responseCode = "400", description = "Bad Request - Unknown format or event type, incomplete cursor, or limit not positive"),
+            @APIResponse(responseCode = "404", description = "Not Found - No run with the given run ID")
+    })
+    @Path("/runs/{runId}/data")
+    @Produces({"application/x-ndjson", "text/csv"})
+    public Response exportRunData(
+            @Parameter(description = "Run ID returned in the job status", required = true)
+            @PathParam("runId") long runId,
+            @Parameter(description = "Output format: ndjson or csv")
+            @QueryParam("format") @DefaultValue("ndjson") String format,
+            @Parameter(description = "Only rows of this MATCH_ID")
+            @QueryParam("matchId") String matchId,
+            @Parameter(description = "Only rows of this event type, A or B")
+            @QueryParam("eventType") String eventType,
+            @Parameter(description = "Cursor: MATCH_ID of the last row received")
+            @QueryParam("afterMatchId") String afterMatchId,
+            @Parameter(description = "Cursor: event type of the last row received")
+            @QueryParam("afterEventType") String afterEventType,
+            @Parameter(description = "Cursor: sequence number of the last row received")
+            @QueryParam("afterSequence") Integer afterSequence,
+            @Parameter(description = "Maximum number of rows to return; all remaining rows by default")
+            @QueryParam("limit") Long limit) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return badRequest("Format must be ndjson or csv");
+        }
+        if (eventType != null && !eventType.equals("A") && !eventType.equals("B")) {
+            return badRequest("Event type must be A or B");
+        }
+        boolean hasCursor = afterMatchId != null;
+        if (hasCursor != (afterEventType != null) || hasCursor != (afterSequence != null)) {
+            return badRequest("afterMatchId, afterEventType and afterSequence must be given together");
+        }
+        if (limit != null && limit < 1) {
+            return badRequest("Limit must be at least 1");
+        }
+        if (fileProcessingService.findRun(runId).isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("No run found for ID " + runId)
+                    .type(MediaType.TEXT_PLAIN)
+                    .build();
+        }
+
+        MatchDataQueryDTO query = new MatchDataQueryDTO();
+        query.setRunId(String.valueOf(runId));
+        query.setMatchId(matchId);
+        query.setEventType(eventType);
+        query.setAfterMatchId(afterMatchId);
+        query.setAfterEventType(afterEventType);
+        query.setAfterSequenceNumber(afterSequence);
+        query.setLimit(limit);
+        StreamingOutput body = out -> {
+            try {
+                matchDataExportService.export(query, exportFormat, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                // Once rows have been sent, the client only sees a truncated body
+                throw new IOException("Export of run " + runId + " failed: " + e.getMessage(), e);
+            }
+        };
+        return Response.ok(body, exportFormat.getMediaType()).build();
+    }
+
+    @GET
+    @Operation(summary = "Retrieve match history", description = "Retrieves the A and B events of one MATCH_ID, ordered by run, event type " +
+            "and sequence number, in all runs or in one. Recently requested MATCH_IDs are served from an in-process cache that is " +
+            "refreshed whenever a run writes rows of them.")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Match history retrieved successfully"),
+            @APIResponse(responseCode = "404", description = "Not Found - No rows of the MATCH_ID, or no run with the given run ID")
+    })
+    @Path("/matches/{matchId}")
+    public Response getMatchHistory(
+            @Parameter(description = "MATCH_ID, without quotes", required = true)
+            @PathParam("matchId") String matchId,
+            @Parameter(description = "Only events of this run")
+            @QueryParam("runId") Long runId) throws Exception {
+        if (runId != null && fileProcessingService.findRun(runId).isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("No run found for ID " + runId)
+                    .build();
+        }
+        List<MatchDataDTO> rows = fileProcessingService.getMatchHistory(matchId, runId);
+        if (rows.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("No events found for MATCH_ID " + matchId)
+                    .build();
+        }
+
+        List<Map<String, Object>> events = new ArrayList<>(rows.size());
+        for (MatchDataDTO row : rows) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("run_id", row.getRunId());
+            event.put("event_type", row.getEventType());
+            event.put("sequence_number", row.getSequenceNumber());
+            event.put("market_id", row.getMarketId());
+            event.put("outcome_id", row.getOutcomeId());
+            event.put("specifiers", row.getSpecifiers());
+            event.put("date_insert", row.getDateInsert());
+            events.add(event);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("match_id", matchId);
+        if (runId != null) {
+            response.put("run_id", runId);
+        }
+        response.put("event_count", events.size());
+        response.put("events", events);
+        return Response.ok(response).build();
+    }
+
+    private static Response badRequest(String message) {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(message)
+                .type(MediaType.TEXT_PLAIN)
+                .build();
+    }
+
+    private static Response uploadedRunConflict(long runId) {
+        return Response.status(Response.Status.CONFLICT)
+                .entity("Run " + runId + " was uploaded and its input cannot be read again; upload the file as a new run")
+                .build();
+    }
+
+    private Map<String, Object> toRunResponse(RunDTO run) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("run_id", run.getId());
+        response.put("file_name", run.getFileName());
+        response.put("status", run.getStatus());
+        response.put("partition_count", run.getPartitionCount());
+        response.put("rows_parsed", run.getRowsParsed());
+        response.put("rows_written", run.getRowsWritten());
+        response.put("a_rows", run.getARows());
+        response.put("b_rows", run.getBRows());
+        response.put("match_ids", run.getMatchIds());
+        response.put("matches_unchanged", run.getMatchesUnchanged());
+        response.put("uploaded", run.isUploaded());
+        response.put("min_date", run.getMinDateInsert());
+        response.put("max_date", run.getMaxDateInsert());
+        response.put("created_at", run.getCreatedAt());
+        response.put("finished_at", run.getFinishedAt());
+        if (run.getError() != null) {
+            response.put("error", run.getError());
+        }
+        return response;
+    }
+
     @GET
     @Operation(summary = "Retrieve Timestamps", description = "Retrieves the minimum and maximum insertion timestamps for a given run ID.")
     @APIResponses(value = {
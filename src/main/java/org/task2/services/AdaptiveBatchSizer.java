@@ -0,0 +1,100 @@
+package org.task2.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes write batches from the latency observed on completed writes.
+ * <p>
+ * Every write reports how long it waited for a write permit and how long the database took to commit it.
+ * Both are smoothed with an exponentially weighted moving average, and every few writes the batch size is
+ * adjusted: it shrinks by a quarter while writes take longer than the target latency, and grows while they
+ * are faster, by an eighth, or by a quarter when writers wait longer for a permit than a write takes. Waiting
+ * for a permit means the connections are saturated, so fewer, larger round trips are cheaper.
+ * <p>
+ * The flush interval is the time a partially filled batch may wait for more rows. It follows the same
+ * averages: a batch held back for the permit wait plus half a write would rarely have committed earlier.
+ */
+class AdaptiveBatchSizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveBatchSizer.class);
+
+    // Weight of the newest write in the moving averages
+    private static final double SMOOTHING = 0.2;
+    // Writes between two adjustments, so that the averages reflect the current size
+    private static final int ADJUST_EVERY = 8;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long targetLatencyNanos;
+    private final long maxFlushIntervalNanos;
+
+    private boolean sampled;
+    private double latencyNanos;
+    private double waitNanos;
+    private int writesSinceAdjustment;
+    private volatile int batchSize;
+    private volatile long flushIntervalNanos;
+
+    /**
+     * @param targetLatencyNanos Write latency the batch size is tuned towards.
+     * @param maxFlushIntervalNanos Upper bound of the flush interval.
+     */
+    AdaptiveBatchSizer(int initialSize, int minSize, int maxSize, long targetLatencyNanos, long maxFlushIntervalNanos) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.maxFlushIntervalNanos = maxFlushIntervalNanos;
+        this.batchSize = Math.max(this.minSize, Math.min(this.maxSize, initialSize));
+    }
+
+    /**
+     * @return The number of rows a batch should hold.
+     */
+    int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return The nanoseconds a partially filled batch may wait for more rows before it is written.
+     */
+    long flushIntervalNanos() {
+        return flushIntervalNanos;
+    }
+
+    /**
+     * Records one completed write.
+     *
+     * @param permitWaitNanos Time the writer waited for a write permit.
+     * @param writeNanos      Time the repository took to write the batch.
+     */
+    synchronized void record(long permitWaitNanos, long writeNanos) {
+        if (!sampled) {
+            sampled = true;
+            latencyNanos = writeNanos;
+            waitNanos = permitWaitNanos;
+        } else {
+            latencyNanos += SMOOTHING * (writeNanos - latencyNanos);
+            waitNanos += SMOOTHING * (permitWaitNanos - waitNanos);
+        }
+        flushIntervalNanos = Math.min(maxFlushIntervalNanos, (long) (waitNanos + latencyNanos / 2));
+
+        if (++writesSinceAdjustment < ADJUST_EVERY) {
+            return;
+        }
+        writesSinceAdjustment = 0;
+        int size = batchSize;
+        int adjusted;
+        if (latencyNanos > targetLatencyNanos) {
+            adjusted = Math.max(minSize, size - size / 4);
+        } else {
+            int step = waitNanos > latencyNanos ? size / 4 : size / 8;
+            adjusted = Math.min(maxSize, size + Math.max(1, step));
+        }
+        if (adjusted != size) {
+            batchSize = adjusted;
+            logger.debug("Batch size {} -> {} (write {} ms, permit wait {} ms)", size, adjusted,
+                    String.format("%.1f", latencyNanos / 1_000_000), String.format("%.1f", waitNanos / 1_000_000));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.task2.services;
+
+/**
+ * Output format of a run export.
+ */
+public enum ExportFormat {
+    /** One JSON object per line. */
+    NDJSON("application/x-ndjson"),
+    /** RFC 4180 CSV with a header line. */
+    CSV("text/csv");
+
+    private final String mediaType;
+
+    ExportFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+}
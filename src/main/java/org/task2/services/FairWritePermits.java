@@ -0,0 +1,112 @@
+package org.task2.services;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the repository writes in flight across all runs, and shares them fairly between runs.
+ * <p>
+ * A plain semaphore hands a freed permit to whichever writer asked first, so a run with more writers waiting
+ * (more lanes, more partitions, or simply an earlier start) gets a proportionally larger share of the
+ * connections. Here waiting writers queue per owner, normally their job, and freed permits go to the owners
+ * in round-robin order: while several runs are waiting, each gets one write in turn, whatever the number of
+ * its writers. Within an owner, writers are served in arrival order.
+ */
+class FairWritePermits {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Owners with waiting writers, in the order their turn comes; an owner that is served moves to the back
+    private final Map<Object, ArrayDeque<Waiter>> waiting = new LinkedHashMap<>();
+    private int available;
+
+    private static final class Waiter {
+        private final Condition granted;
+        private boolean isGranted;
+
+        private Waiter(Condition granted) {
+            this.granted = granted;
+        }
+    }
+
+    FairWritePermits(int permits) {
+        this.available = permits;
+    }
+
+    /**
+     * Blocks until a permit is granted to a writer of {@code owner}.
+     *
+     * @param owner Identifies the run the write belongs to; compared by {@code equals}.
+     */
+    void acquire(Object owner) throws InterruptedException {
+        lock.lock();
+        try {
+            if (available > 0 && waiting.isEmpty()) {
+                available--;
+                return;
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            waiting.computeIfAbsent(owner, o -> new ArrayDeque<>()).add(waiter);
+            try {
+                while (!waiter.isGranted) {
+                    waiter.granted.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.isGranted) {
+                    // Granted while being interrupted: hand the permit on
+                    available++;
+                    grantNext();
+                } else {
+                    ArrayDeque<Waiter> queue = waiting.get(owner);
+                    queue.remove(waiter);
+                    if (queue.isEmpty()) {
+                        waiting.remove(owner);
+                    }
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            available++;
+            grantNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of owners with writers waiting for a permit.
+     */
+    int waitingOwners() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void grantNext() {
+        while (available > 0 && !waiting.isEmpty()) {
+            Iterator<Map.Entry<Object, ArrayDeque<Waiter>>> iterator = waiting.entrySet().iterator();
+            Map.Entry<Object, ArrayDeque<Waiter>> next = iterator.next();
+            iterator.remove();
+            Waiter waiter = next.getValue().poll();
+            if (!next.getValue().isEmpty()) {
+                waiting.put(next.getKey(), next.getValue());
+            }
+            available--;
+            waiter.isGranted = true;
+            waiter.granted.signal();
+        }
+    }
+}
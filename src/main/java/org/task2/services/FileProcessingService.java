@@ -1,264 +1,1309 @@
 package org.task2.services;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.task2.model.MatchDataColumns;
 import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchFingerprintDTO;
+import org.task2.model.PartitionClaimDTO;
+import org.task2.model.RunDTO;
+import org.task2.model.RunStatus;
+import org.task2.model.StringDictionary;
+import org.task2.parser.ByteLineReader;
+import org.task2.parser.Compression;
+import org.task2.parser.MappedFileReader;
+import org.task2.parser.MatchDataLineParser;
+import org.task2.parser.PipelinedInputStream;
 import org.task2.repository.MatchDataRepository;
+import org.task2.repository.MatchDataRepositoryProducer;
+import org.task2.repository.MatchFingerprintRepository;
+import org.task2.repository.ReactiveMatchDataRepository;
+import org.task2.repository.RepositoryBackend;
+import org.task2.repository.RunRepository;
+import org.task2.repository.StorageLayout;
+import org.task2.repository.WriteMode;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class FileProcessingService {
 
     private static final Logger logger = LoggerFactory.getLogger(FileProcessingService.class);
 
-    private static final int BATCH_SIZE = 1000;
+    // Lines parsed between two progress updates
+    private static final int PROGRESS_LINES = 1000;
+    private static final int INITIAL_COLUMN_CAPACITY = 1 << 16;
+    // Rows per COPY stream into a staging table; slices are copied in parallel
+    private static final int STAGING_SLICE_ROWS = 100_000;
     private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
-    private static int runCounter = 0;
+    // Connections kept free for read queries such as /timestamps while writers are busy
+    private static final int RESERVED_CONNECTIONS = 2;
 
     @Inject
     MatchDataRepository matchDataRepository;
 
-    // Map to track the next expected sequence number per match_id
-    private final ConcurrentMap<String, MatchIdSequence> matchIdSequenceMap = new ConcurrentHashMap<>();
+    @Inject
+    RunRepository runRepository;
+
+    @Inject
+    MatchFingerprintRepository matchFingerprintRepository;
+
+    @Inject
+    IngestionMetrics ingestionMetrics;
+
+    // Looked up only when writes go through the reactive client, see writeGroupsReactive
+    @Inject
+    Instance<ReactiveMatchDataRepository> reactiveRepository;
+
+    @ConfigProperty(name = "file-processing.write-mode", defaultValue = "copy")
+    WriteMode writeMode;
+
+    @ConfigProperty(name = "file-processing.ingest-mode", defaultValue = "grouped")
+    IngestMode ingestMode;
+
+    @ConfigProperty(name = "file-processing.delta.enabled", defaultValue = "false")
+    boolean deltaEnabled;
+
+    @ConfigProperty(name = "file-processing.delta.cache-size", defaultValue = "100000")
+    int deltaCacheSize;
+
+    @ConfigProperty(name = "file-processing.delta.cache-ttl-ms", defaultValue = "60000")
+    long deltaCacheTtlMs;
+
+    @ConfigProperty(name = "file-processing.streaming.lanes", defaultValue = "8")
+    int streamingLanes;
+
+    @ConfigProperty(name = "file-processing.streaming.lane-capacity", defaultValue = "10000")
+    int streamingLaneCapacity;
+
+    @ConfigProperty(name = "file-processing.batch.initial-size", defaultValue = "1000")
+    int batchInitialSize;
+
+    @ConfigProperty(name = "file-processing.batch.min-size", defaultValue = "100")
+    int batchMinSize;
+
+    @ConfigProperty(name = "file-processing.batch.max-size", defaultValue = "10000")
+    int batchMaxSize;
+
+    @ConfigProperty(name = "file-processing.batch.target-latency-ms", defaultValue = "100")
+    long batchTargetLatencyMs;
+
+    @ConfigProperty(name = "file-processing.batch.max-flush-interval-ms", defaultValue = "50")
+    long batchMaxFlushIntervalMs;
+
+    @ConfigProperty(name = "file-processing.mapped.chunk-size-mb", defaultValue = "64")
+    int mappedChunkSizeMb;
+
+    @ConfigProperty(name = "file-processing.input.base-dir", defaultValue = ".")
+    String inputBaseDir;
+
+    @ConfigProperty(name = "file-processing.decode.chunk-size-kb", defaultValue = "256")
+    int decodeChunkSizeKb;
 
-    // Inner class to manage sequencing per match_id
-    private static class MatchIdSequence {
-        private int expectedSequence;
-        private final ReentrantLock lock = new ReentrantLock();
-        private final Condition condition = lock.newCondition();
+    @ConfigProperty(name = "file-processing.decode.read-ahead-chunks", defaultValue = "4")
+    int decodeReadAheadChunks;
 
-        public MatchIdSequence() {
-            this.expectedSequence = 1;
+    @ConfigProperty(name = "file-processing.writer-threads", defaultValue = "platform")
+    WriterThreads writerThreads;
+
+    @ConfigProperty(name = "quarkus.datasource.jdbc.max-size", defaultValue = "20")
+    int maxPoolSize;
+
+    @ConfigProperty(name = "file-processing.repository", defaultValue = "jdbc")
+    RepositoryBackend repositoryBackend;
+
+    @ConfigProperty(name = "file-processing.storage", defaultValue = "wide")
+    StorageLayout storageLayout;
+
+    @ConfigProperty(name = "file-processing.reactive.max-in-flight", defaultValue = "64")
+    int reactiveMaxInFlight;
+
+    @ConfigProperty(name = "file-processing.node-id")
+    Optional<String> configuredNodeId;
+
+    @ConfigProperty(name = "file-processing.partition.lease-ms", defaultValue = "60000")
+    long partitionLeaseMs;
+
+    @ConfigProperty(name = "file-processing.staging.attempts", defaultValue = "3")
+    int stagingAttempts;
+
+    @ConfigProperty(name = "file-processing.stats.flush-interval-ms", defaultValue = "1000")
+    long statsFlushIntervalMs;
+
+    @ConfigProperty(name = "file-processing.stats.cache-size", defaultValue = "1000")
+    int statsCacheSize;
+
+    @ConfigProperty(name = "file-processing.stats.cache-ttl-ms", defaultValue = "1000")
+    long statsCacheTtlMs;
+
+    @ConfigProperty(name = "file-processing.match-history.cache-size", defaultValue = "10000")
+    int matchHistoryCacheSize;
+
+    @ConfigProperty(name = "file-processing.match-history.cache-ttl-ms", defaultValue = "60000")
+    long matchHistoryCacheTtlMs;
+
+    // Recorded on the run partitions this node claims
+    private String nodeId;
+    // Absolute and normalized input.base-dir, which every input file must lie in
+    private Path inputBase;
+    private RunSummaryCache runSummaryCache;
+    private MatchFingerprintCache fingerprintCache;
+    private MatchHistoryCache matchHistoryCache;
+
+    // Long-lived pools shared by all runs. Writer pools are sized so that all writers together
+    // never need more connections than the datasource pool provides.
+    private ExecutorService parseExecutor;
+    // One decoder thread per compressed input, started and stopped by PipelinedInputStream
+    private final ThreadFactory decoderThreads = new NamedThreadFactory("file-decoder");
+    private ExecutorService aExecutor;
+    private ExecutorService bExecutor;
+    private int writerLanes;
+    // Shared by all runs, since the write latency it adapts to is that of the database
+    private AdaptiveBatchSizer batchSizer;
+    // Re-submits streaming lanes whose partial batch has waited for the flush interval
+    private ScheduledExecutorService flushTimer;
+    // Renews the leases of the run partitions this node is ingesting
+    private ScheduledExecutorService leaseTimer;
+
+    // Bounds concurrent repository writes to the connections available to writers, or to the batches
+    // pipelined over the reactive pool, and shares them round-robin between the jobs writing at the same time
+    private FairWritePermits writePermits;
+    // The client writes actually go through, which the storage layout may override
+    private RepositoryBackend writeBackend;
+
+    @PostConstruct
+    void init() {
+        writeBackend = MatchDataRepositoryProducer.writeBackend(repositoryBackend, storageLayout);
+        // Sized for the pool the writes draw from: the reactive pool pipelines, JDBC writes each hold a connection
+        int concurrentWrites = writeBackend == RepositoryBackend.REACTIVE
+                ? reactiveMaxInFlight
+                : Math.max(2, maxPoolSize - RESERVED_CONNECTIONS);
+        writePermits = new FairWritePermits(concurrentWrites);
+        nodeId = configuredNodeId.orElseGet(FileProcessingService::defaultNodeId);
+        runSummaryCache = new RunSummaryCache(statsCacheSize, statsCacheTtlMs);
+        fingerprintCache = new MatchFingerprintCache(deltaCacheSize, deltaCacheTtlMs);
+        inputBase = Path.of(inputBaseDir).toAbsolutePath().normalize();
+        matchHistoryCache = new MatchHistoryCache(matchHistoryCacheSize, matchHistoryCacheTtlMs);
+        if (deltaEnabled && ingestMode == IngestMode.STREAMING) {
+            logger.warn("Delta ingestion needs whole matches before writing; streamed input is written in full");
         }
+        parseExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new NamedThreadFactory("file-parser"));
+        batchSizer = new AdaptiveBatchSizer(batchInitialSize, batchMinSize, batchMaxSize,
+                batchTargetLatencyMs * 1_000_000L, batchMaxFlushIntervalMs * 1_000_000L);
+        flushTimer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("batch-flush"));
+        leaseTimer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("partition-lease"));
 
-        public void waitForTurn(int sequenceNumber) throws InterruptedException {
-            lock.lock();
-            try {
-                while (sequenceNumber != expectedSequence) {
-                    condition.await();
+        if (writerThreads == WriterThreads.VIRTUAL) {
+            aExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("a-writer-", 1).factory());
+            bExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("b-writer-", 1).factory());
+            writerLanes = concurrentWrites;
+            logger.info("Writers run on virtual threads, limited to {} concurrent writes", concurrentWrites);
+        } else {
+            int aThreads = Math.max(1, Math.min(THREAD_COUNT / 2, concurrentWrites / 3));
+            int bThreads = Math.max(1, Math.min(THREAD_COUNT * 2, concurrentWrites - aThreads));
+            aExecutor = Executors.newFixedThreadPool(aThreads, new NamedThreadFactory("a-writer"));
+            bExecutor = Executors.newFixedThreadPool(bThreads, new NamedThreadFactory("b-writer"));
+            writerLanes = THREAD_COUNT * 2;
+            logger.info("Writer pools sized to {} A threads and {} B threads for {} concurrent {} writes",
+                    aThreads, bThreads, concurrentWrites, writeBackend);
+        }
+
+        ingestionMetrics.registerExecutor("file-parser", parseExecutor);
+        ingestionMetrics.registerExecutor("a-writer", aExecutor);
+        ingestionMetrics.registerExecutor("b-writer", bExecutor);
+        ingestionMetrics.registerBatchSizer(batchSizer);
+        ingestionMetrics.registerWritePermits(writePermits);
+        ingestionMetrics.registerMatchHistoryCache(matchHistoryCache);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        parseExecutor.shutdownNow();
+        aExecutor.shutdownNow();
+        bExecutor.shutdownNow();
+        flushTimer.shutdownNow();
+        leaseTimer.shutdownNow();
+    }
+
+    /**
+     * Processes the data file, ensuring that records are inserted in order per MATCH_ID.
+     *
+     * @param fileName A path inside {@code file-processing.input.base-dir}, or the name of a data file located in the
+     *                 classpath (e.g., src/main/resources).
+     */
+    public void processFileStreamUsingCopy(String fileName) {
+        processFileStreamUsingCopy(fileName, new IngestionJob(UUID.randomUUID().toString(), fileName));
+    }
+
+    /**
+     * Processes the data file, ensuring that records are inserted in order per MATCH_ID, and reports
+     * progress on {@code job}.
+     * <p>
+     * The run id is allocated by the database-backed run registry, or taken from {@code job} when it joins
+     * an existing run. The job then claims the run's pending MATCH_ID partitions one at a time and ingests
+     * the records of each, so several nodes can split one file between them. While a partition is ingested its
+     * lease is renewed; a partition whose node stopped renewing it for {@code file-processing.partition.lease-ms}
+     * can be claimed by any job of the run. A partition claimed again after a failed or abandoned attempt is
+     * written idempotently, from its checkpoint where one was recorded.
+     *
+     * @param fileName A path inside {@code file-processing.input.base-dir}, or the name of a data file located in the
+     *                 classpath (e.g., src/main/resources).
+     * @param job      The job to start, update and finish for this run.
+     */
+    public void processFileStreamUsingCopy(String fileName, IngestionJob job) {
+        processRun(fileName, false, job, partition -> ingest(fileName, partition, job));
+    }
+
+    /**
+     * Processes a data file read from {@code body}, such as an HTTP request body, as it arrives. The body is
+     * read once, so the job's run must have a single partition.
+     *
+     * @param fileName A name for the run; its extension selects the decompression, like for files.
+     * @param job      The job to start, update and finish for this run.
+     */
+    public void processUpload(String fileName, InputStream body, IngestionJob job) {
+        processRun(fileName, true, job, partition -> ingestStream(fileName, body, partition, job));
+    }
+
+    @FunctionalInterface
+    private interface PartitionSource {
+        /**
+         * @return The number of records of {@code partition}.
+         */
+        long ingest(MatchPartition partition) throws Exception;
+    }
+
+    private void processRun(String fileName, boolean uploaded, IngestionJob job, PartitionSource source) {
+        long runId;
+        try {
+            if (job.getJoinRunId() != null) {
+                runId = job.getJoinRunId();
+            } else {
+                runId = runRepository.createRun(fileName, job.getPartitionCount(), uploaded);
+                matchDataRepository.createRunPartition(String.valueOf(runId));
+            }
+        } catch (Exception e) {
+            logger.error("Error registering the run for {}: {}", fileName, e.getMessage(), e);
+            job.fail(e.getMessage());
+            return;
+        }
+        job.start(String.valueOf(runId), ingestionMetrics.forRun(String.valueOf(runId)));
+        long startNanos = System.nanoTime();
+
+        try {
+            // Claim partitions until every partition of the run has been taken by this or another node
+            long rows = 0;
+            Optional<PartitionClaimDTO> claimed;
+            while ((claimed = runRepository.claimPartition(runId, nodeId, partitionLeaseMs)).isPresent()) {
+                PartitionClaimDTO claim = claimed.get();
+                MatchPartition partition = new MatchPartition(claim.getPartitionIndex(), job.getPartitionCount());
+                job.beginPartition(claim);
+                if (claim.isResumed()) {
+                    logger.info("Resuming partition {} of run {} (attempt {}) from line {}", partition, runId,
+                            claim.getAttempt(), claim.getPreviousStats().getCheckpointLine());
+                    matchDataRepository.prepareUpsert(String.valueOf(runId));
+                }
+                // Renewed well before it expires, so only a stopped node loses its partitions
+                long renewInterval = Math.max(1, partitionLeaseMs / 3);
+                ScheduledFuture<?> heartbeat = leaseTimer.scheduleWithFixedDelay(() -> renewLease(runId, claim),
+                        renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+                try {
+                    rows += ingestPartition(source, partition, runId, job);
+                } finally {
+                    heartbeat.cancel(false);
                 }
-            } finally {
-                lock.unlock();
             }
+            logThroughput(job.getRunId(), rows, startNanos);
+            job.complete();
+        } catch (Exception e) {
+            logger.error("Error reading the file: {}", e.getMessage(), e);
+            job.fail(e.getMessage());
+        } finally {
+            ingestionMetrics.release(String.valueOf(runId));
         }
+    }
 
-        public void signalNext() {
-            lock.lock();
-            try {
-                expectedSequence++;
-                condition.signalAll();
-            } finally {
-                lock.unlock();
+    /**
+     * Ingests the records of one MATCH_ID partition and records the outcome in the run registry.
+     *
+     * @return The number of records of the partition.
+     */
+    private long ingestPartition(PartitionSource source, MatchPartition partition, long runId, IngestionJob job)
+            throws Exception {
+        logger.info("Node {} ingesting partition {} of run {}", nodeId, partition, runId);
+        try {
+            long rows = source.ingest(partition);
+            finishPartition(job, RunStatus.COMPLETED, null);
+            return rows;
+        } catch (Exception e) {
+            finishPartition(job, RunStatus.FAILED, e.getMessage());
+            throw e;
+        }
+    }
+
+    private void renewLease(long runId, PartitionClaimDTO claim) {
+        try {
+            if (!runRepository.renewLease(runId, claim.getPartitionIndex(), claim.getAttempt())) {
+                logger.warn("Node {} lost the lease on partition {} of run {}; its statistics are no longer recorded",
+                        nodeId, claim.getPartitionIndex(), runId);
             }
+        } catch (Exception e) {
+            logger.warn("Could not renew the lease on partition {} of run {}: {}", claim.getPartitionIndex(), runId,
+                    e.getMessage());
+        }
+    }
+
+    private void finishPartition(IngestionJob job, RunStatus status, String error) throws Exception {
+        PartitionStats stats = job.partitionStats();
+        RunStatus runStatus;
+        stats.beginFinalFlush();
+        try {
+            runStatus = runRepository.updatePartition(stats.getRunId(), stats.getPartitionIndex(), stats.getAttempt(),
+                    status, stats.snapshot(job), error);
+        } finally {
+            stats.endFlush();
+            runSummaryCache.invalidate(stats.getRunId());
+        }
+
+        // The node finishing the last partition attaches a partition loaded with deferred indexes
+        if (runStatus == RunStatus.COMPLETED) {
+            matchDataRepository.attachRunPartition(String.valueOf(stats.getRunId()));
         }
     }
 
     /**
-     * Processes the data file, ensuring that records are inserted in order per MATCH_ID.
+     * Writes the statistics of the job's partition to the run registry if the last flush is older than
+     * {@code file-processing.stats.flush-interval-ms}, so the run summary follows the committed batches.
+     */
+    private void flushPartitionStats(IngestionJob job) {
+        PartitionStats stats = job.partitionStats();
+        if (stats == null || !stats.tryBeginFlush(statsFlushIntervalMs * 1_000_000L)) {
+            return;
+        }
+        try {
+            runRepository.updatePartition(stats.getRunId(), stats.getPartitionIndex(), stats.getAttempt(),
+                    RunStatus.RUNNING, stats.snapshot(job), null);
+            runSummaryCache.invalidate(stats.getRunId());
+        } catch (Exception e) {
+            logger.warn("Could not flush statistics of run {}: {}", stats.getRunId(), e.getMessage());
+        } finally {
+            stats.endFlush();
+        }
+    }
+
+    /**
+     * Resolves {@code fileName} against {@code file-processing.input.base-dir}. Names leading outside that
+     * directory, directly or through a symbolic link, are rejected, so callers cannot read other server files.
      *
-     * @param fileName The name of the data file located in the classpath (e.g., src/main/resources).
+     * @return The file to read, or empty if there is no such file and {@code fileName} may name a classpath resource.
+     * @throws IllegalArgumentException If {@code fileName} is outside the input directory.
      */
-    public void processFileStreamUsingCopy(String fileName) {
-        // Separate collections for 'A' and 'B' events
-        Map<String, List<MatchDataDTO>> matchIdToAEvents = new ConcurrentHashMap<>();
-        Map<String, List<MatchDataDTO>> matchIdToBEvents = new ConcurrentHashMap<>();
-        int runId = getNextRunId();
+    public Optional<Path> resolveInput(String fileName) throws IOException {
+        Path path = inputBase.resolve(fileName).normalize();
+        if (!path.startsWith(inputBase)) {
+            throw new IllegalArgumentException("File " + fileName + " is outside the input directory " + inputBase);
+        }
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        if (!path.toRealPath().startsWith(inputBase.toRealPath())) {
+            throw new IllegalArgumentException("File " + fileName + " links outside the input directory " + inputBase);
+        }
+        return Optional.of(path);
+    }
+
+    /**
+     * Reads {@code fileName} from the input directory or, failing that, the classpath. With
+     * {@link IngestMode#MAPPED}, an uncompressed file is memory-mapped and parsed in parallel chunks. Any other
+     * input is streamed using the configured {@link IngestMode}; gzip and zstd input is decompressed on a
+     * separate thread while it is parsed.
+     *
+     * @return The number of records of {@code partition}.
+     */
+    private long ingest(String fileName, MatchPartition partition, IngestionJob job) throws Exception {
+        Optional<Path> file = resolveInput(fileName);
+        if (ingestMode == IngestMode.MAPPED && file.isPresent() && Compression.detect(file.get()) == Compression.NONE) {
+            return ingestMapped(file.get(), partition, job);
+        }
+
+        try (InputStream inputStream = file.isPresent()
+                ? Files.newInputStream(file.get())
+                : getClass().getClassLoader().getResourceAsStream(fileName)) {
+            if (inputStream == null) {
+                throw new IOException("File not found: " + fileName);
+            }
+            return ingestStream(fileName, inputStream, partition, job);
+        }
+    }
 
+    /**
+     * Parses and writes the records of {@code partition} from a stream using the configured {@link IngestMode};
+     * {@link IngestMode#MAPPED} falls back to {@link IngestMode#GROUPED}.
+     *
+     * @return The number of records of {@code partition}.
+     */
+    private long ingestStream(String fileName, InputStream inputStream, MatchPartition partition, IngestionJob job)
+            throws Exception {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream);
+        try (InputStream decoded = decode(fileName, buffered)) {
+            ByteLineReader reader = new ByteLineReader(decoded);
+            return ingestMode == IngestMode.STREAMING
+                    ? ingestStreaming(reader, partition, job)
+                    : ingestGrouped(reader, partition, job);
+        }
+    }
+
+    /**
+     * Decompresses {@code in} on a decoder thread, a few chunks ahead of the parser, if it is compressed.
+     * Lines are split and parsed from the raw bytes and fields are decoded as UTF-8, so no platform
+     * charset is involved either way.
+     */
+    private InputStream decode(String fileName, BufferedInputStream in) throws IOException {
+        Compression compression = Compression.detect(fileName, in);
+        if (compression == Compression.NONE) {
+            return in;
+        }
+        logger.info("Decompressing {} input {}", compression, fileName);
+        return new PipelinedInputStream(compression.decode(in), decoderThreads, decodeChunkSizeKb * 1024,
+                decodeReadAheadChunks);
+    }
+
+    /**
+     * Reads the whole file into a columnar store before writing anything.
+     *
+     * @return The number of records parsed.
+     */
+    private long ingestGrouped(ByteLineReader reader, MatchPartition partition, IngestionJob job) throws Exception {
         // Step 1: Read and parse the file
-        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(fileName);
-             BufferedReader br = new BufferedReader(new InputStreamReader(inputStream))) {
+        MatchDataColumns columns = new MatchDataColumns(job.getRunId(), INITIAL_COLUMN_CAPACITY);
+        parseColumns(reader, true, new MatchDataLineParser(), partition, columns, job);
+        // Steps 2 and 3: Group and write the rows
+        writeColumns(columns, job);
+        return columns.size();
+    }
+
+    /**
+     * Maps the file, parses line-aligned chunks on all cores and concatenates the chunks in file order,
+     * so each MATCH_ID keeps its original line order.
+     *
+     * @return The number of records parsed.
+     */
+    private long ingestMapped(Path path, MatchPartition partition, IngestionJob job) throws Exception {
+        // Chunks share their dictionaries so they can be concatenated without re-encoding
+        StringDictionary matchIds = new StringDictionary();
+        StringDictionary outcomeIds = new StringDictionary();
+        StringDictionary specifiers = new StringDictionary();
+
+        // Step 1: Parse chunks in parallel
+        List<MatchDataColumns> chunks = MappedFileReader.readChunks(path, mappedChunkSizeMb * 1024L * 1024L, parseExecutor,
+                (lines, firstChunk) -> {
+                    MatchDataColumns chunk = new MatchDataColumns(job.getRunId(), matchIds, outcomeIds, specifiers,
+                            INITIAL_COLUMN_CAPACITY);
+                    parseColumns(lines, firstChunk, new MatchDataLineParser(), partition, chunk, job);
+                    return chunk;
+                });
+
+        int rowCount = 0;
+        for (MatchDataColumns chunk : chunks) {
+            rowCount += chunk.size();
+        }
+        MatchDataColumns columns = new MatchDataColumns(job.getRunId(), matchIds, outcomeIds, specifiers, rowCount);
+        for (MatchDataColumns chunk : chunks) {
+            columns.appendAll(chunk);
+        }
+        // Steps 2 and 3: Group and write the rows
+        writeColumns(columns, job);
+        return columns.size();
+    }
+
+    void parseColumns(ByteLineReader reader, boolean skipHeader, MatchDataLineParser parser, MatchPartition partition,
+                      MatchDataColumns columns, IngestionJob job) throws IOException {
+        // Reused for every line; the parsed fields are copied into the columns
+        MatchDataDTO fields = new MatchDataDTO();
+        boolean isHeader = skipHeader;
+        long lines = 0;
+        long malformed = 0;
+        long skipped = 0;
+        // The clock is read once per progress block rather than per line
+        long dateInsertMicros = MatchDataColumns.toMicros(LocalDateTime.now());
+
+        while (reader.next()) {
+            if (isHeader) {
+                isHeader = false;
+                continue; // Skip header
+            }
+
+            if (!parseFields(reader, parser, fields)) {
+                malformed++;
+            } else if (!partition.contains(fields.getMatchId())) {
+                skipped++;
+            } else {
+                // Sequence numbers are assigned as rows are added, in file order
+                columns.add(fields.getMatchId(), fields.getMarketId(), fields.getOutcomeId(), fields.getSpecifiers(),
+                        dateInsertMicros,
+                        isAEvent(fields.getSpecifiers()) ? MatchDataColumns.EVENT_A : MatchDataColumns.EVENT_B);
+            }
+            if (++lines == PROGRESS_LINES) {
+                recordParseProgress(job, lines, malformed, skipped);
+                lines = 0;
+                malformed = 0;
+                skipped = 0;
+                dateInsertMicros = MatchDataColumns.toMicros(LocalDateTime.now());
+            }
+        }
+        recordParseProgress(job, lines, malformed, skipped);
+    }
+
+    /**
+     * @param skipped Lines of MATCH_IDs outside the partition being ingested.
+     */
+    private static void recordParseProgress(IngestionJob job, long lines, long malformed, long skipped) {
+        job.recordParsed(lines - malformed - skipped);
+        job.metrics().linesRead(lines);
+        job.metrics().malformedLines(malformed);
+    }
+
+    void writeColumns(MatchDataColumns columns, IngestionJob job) throws Exception {
+        // With delta ingestion, matches whose rows are unchanged since they were last written are dropped first
+        List<MatchFingerprintDTO> changed = deltaEnabled ? retainChangedMatches(columns, job) : List.of();
+        // Counted after delta ingestion, so the run reports only the MATCH_IDs it writes
+        job.partitionStats().recordMatchIds(columns.countMatchesWithRows());
+
+        if (ingestMode == IngestMode.STAGED) {
+            stageAndMerge(columns, job);
+        } else {
+            // Step 2: Group by MATCH_ID and Event Type; sequence numbers were assigned while parsing
+            MatchGroups aGroups = MatchGroups.build(columns, MatchDataColumns.EVENT_A);
+            MatchGroups bGroups = MatchGroups.build(columns, MatchDataColumns.EVENT_B);
+
+            // Step 3: Process 'A' and 'B' events separately, or pipeline both over the reactive client
+            long failedMatches = writeBackend == RepositoryBackend.REACTIVE
+                    ? writeGroupsReactive(columns, job, aGroups, bGroups)
+                    : processAEvents(columns, aGroups, job) + processBEvents(columns, bGroups, job);
+            if (failedMatches > 0) {
+                // Fails the partition, so the run can be resumed
+                throw new IllegalStateException("Failed to write the rows of " + failedMatches + " MATCH_IDs");
+            }
+        }
+
+        // Only once the rows are stored, so a failed partition writes its changed matches again
+        if (!changed.isEmpty()) {
+            matchFingerprintRepository.saveFingerprints(changed);
+            fingerprintCache.putAll(changed);
+        }
+    }
+
+    /**
+     * Fingerprints the rows of every MATCH_ID and removes from {@code columns} the matches whose fingerprint
+     * equals the stored one: their rows are already held by an earlier run.
+     *
+     * @return The fingerprints of the matches left to write, to be stored once they are written.
+     */
+    private List<MatchFingerprintDTO> retainChangedMatches(MatchDataColumns columns, IngestionJob job) throws Exception {
+        long startNanos = System.nanoTime();
+        MatchFingerprints fingerprints = MatchFingerprints.build(columns);
+        List<String> matchIds = new ArrayList<>();
+        for (int m = 0; m < fingerprints.matchCount(); m++) {
+            if (fingerprints.rows(m) > 0) {
+                matchIds.add(columns.getMatchIdForCode(m));
+            }
+        }
+        // A run with several partitions is spread over nodes, so the cached fingerprints may be older than ones
+        // another node wrote since. Skipping a match on a stale fingerprint would point it at outdated rows, so
+        // those runs read the fingerprints from the database; single-partition runs rely on the cache TTL.
+        Map<String, MatchFingerprintDTO> stored = fingerprintCache.getAll(matchIds, job.getPartitionCount() > 1,
+                matchFingerprintRepository::findFingerprints);
+
+        long runId = Long.parseLong(job.getRunId());
+        boolean[] keep = new boolean[fingerprints.matchCount()];
+        List<MatchFingerprintDTO> changed = new ArrayList<>();
+        long unchangedMatches = 0;
+        long unchangedRows = 0;
+        for (int m = 0; m < fingerprints.matchCount(); m++) {
+            if (fingerprints.rows(m) == 0) {
+                continue;
+            }
+            String matchId = columns.getMatchIdForCode(m);
+            MatchFingerprintDTO fingerprint = fingerprints.toDTO(m, matchId, runId);
+            if (fingerprint.sameContent(stored.get(matchId))) {
+                unchangedMatches++;
+                unchangedRows += fingerprints.rows(m);
+            } else {
+                keep[m] = true;
+                changed.add(fingerprint);
+            }
+        }
+        if (unchangedMatches > 0) {
+            columns.retainMatches(keep);
+        }
+        job.metrics().unchanged(unchangedMatches, unchangedRows);
+        job.partitionStats().recordMatchesUnchanged(unchangedMatches);
+        logger.info("Run {}: {} of {} MATCH_IDs unchanged, skipping {} rows ({} ms)", runId, unchangedMatches,
+                matchIds.size(), unchangedRows, (System.nanoTime() - startNanos) / 1_000_000);
+        return changed;
+    }
+
+    /**
+     * Copies all rows into the partition's unlogged staging table in parallel slices, then moves them into
+     * match_data with one statement that assigns the sequence numbers. Nothing reaches match_data before that
+     * statement commits, so a failed attempt is simply repeated from an empty staging table.
+     */
+    private void stageAndMerge(MatchDataColumns columns, IngestionJob job) throws Exception {
+        String runId = job.getRunId();
+        int partitionIndex = job.partitionStats().getPartitionIndex();
+        // A failed attempt of the partition may have failed after its merge committed
+        boolean skipExisting = job.partitionStats().isResumed();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                long startNanos = System.nanoTime();
+                matchDataRepository.createStagingTable(runId, partitionIndex);
+                stageRows(columns, runId, partitionIndex, job);
+                long stagedNanos = System.nanoTime();
+                long merged = matchDataRepository.mergeStaging(runId, partitionIndex, skipExisting);
+                logger.info("Run {} partition {}: staged {} rows in {} ms, merged {} rows in {} ms", runId,
+                        partitionIndex, columns.size(), (stagedNanos - startNanos) / 1_000_000, merged,
+                        (System.nanoTime() - stagedNanos) / 1_000_000);
+                recordMerged(columns, merged, job);
+                invalidateMatchHistory(columns::getMatchIdForCode, columns.getMatchIdCount());
+                return;
+            } catch (Exception e) {
+                if (attempt >= stagingAttempts) {
+                    matchDataRepository.dropStagingTable(runId, partitionIndex);
+                    throw e;
+                }
+                logger.warn("Staged load of run {} partition {} failed on attempt {} of {}, retrying: {}",
+                        runId, partitionIndex, attempt, stagingAttempts, e.getMessage());
+            }
+        }
+    }
+
+    private void stageRows(MatchDataColumns columns, String runId, int partitionIndex, IngestionJob job) throws Exception {
+        List<Callable<Void>> slices = new ArrayList<>();
+        for (int from = 0; from < columns.size(); from += STAGING_SLICE_ROWS) {
+            int start = from;
+            int end = Math.min(columns.size(), from + STAGING_SLICE_ROWS);
+            slices.add(() -> {
+                long waitStart = System.nanoTime();
+                writePermits.acquire(job);
+                long writeStart = System.nanoTime();
+                job.metrics().permitWait(writeStart - waitStart);
+                try {
+                    matchDataRepository.copyToStaging(runId, partitionIndex, columns, start, end);
+                    job.metrics().batchLatency(System.nanoTime() - writeStart);
+                } finally {
+                    writePermits.release();
+                }
+                return null;
+            });
+        }
+
+        for (Future<Void> future : aExecutor.invokeAll(slices)) {
+            future.get();
+        }
+    }
+
+    /**
+     * Records the merged rows of a staged load, which become visible all at once.
+     */
+    private void recordMerged(MatchDataColumns columns, long merged, IngestionJob job) {
+        if (merged < columns.size()) {
+            // Merges are all or nothing, so a shortfall means an earlier attempt merged and counted the rows
+            logger.info("Run {} partition {}: {} of {} rows were already merged", job.getRunId(),
+                    job.partitionStats().getPartitionIndex(), columns.size() - merged, columns.size());
+            return;
+        }
+        long aRows = 0;
+        long minMicros = Long.MAX_VALUE;
+        long maxMicros = Long.MIN_VALUE;
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.getEventType(row) == MatchDataColumns.EVENT_A) {
+                aRows++;
+            }
+            long micros = columns.getDateInsertMicros(row);
+            minMicros = Math.min(minMicros, micros);
+            maxMicros = Math.max(maxMicros, micros);
+        }
+        job.metrics().rowsWritten(aRows, merged - aRows);
+        job.recordWritten(merged);
+        job.partitionStats().recordBatch(aRows, merged - aRows, minMicros, maxMicros);
+    }
+
+    /**
+     * Streams records to the writers as they are read. Sequence numbers follow file order per
+     * MATCH_ID and event type, and the pipeline keeps all records of a MATCH_ID on one writer lane.
+     * <p>
+     * The partition's checkpoint is the lowest data line not yet written. A resumed partition re-reads the
+     * file to rebuild the sequence numbers but only writes the lines from its checkpoint on.
+     *
+     * @return The number of records written.
+     */
+    private long ingestStreaming(ByteLineReader reader, MatchPartition partition, IngestionJob job) throws Exception {
+        // Next sequence number per MATCH_ID, kept separately for 'A' and 'B' events
+        Map<String, int[]> aSequences = new HashMap<>();
+        Map<String, int[]> bSequences = new HashMap<>();
+
+        // Rows of all MATCH_IDs of a lane are coalesced into batches, waiting up to the flush interval to fill them
+        KeyedOrderedExecutor<MatchDataDTO> lanes = new KeyedOrderedExecutor<>(bExecutor, streamingLanes,
+                streamingLaneCapacity, batchSizer, flushTimer, batch -> insertBatch(batch, job),
+                job.metrics()::laneWait, MatchDataDTO::getLineNumber);
+        job.metrics().registerLanes("streaming", lanes);
+        PartitionStats stats = job.partitionStats();
+        long resumeLine = stats.isResumed() ? stats.getPreviousCheckpoint() : 0;
+        // Every data line before this one has been submitted or needs no write
+        AtomicLong submittedLines = new AtomicLong();
+        stats.trackCheckpoint(() -> lanes.lowWatermark(submittedLines.get()));
 
-            String line;
-            boolean isHeader = true;
+        MatchDataLineParser parser = new MatchDataLineParser();
+        boolean isHeader = true;
+        long nextLine = 0;
+        long lines = 0;
+        long malformed = 0;
+        long skipped = 0;
+        // The clock is read once per progress block rather than per line
+        LocalDateTime dateInsert = LocalDateTime.now();
 
-            while ((line = br.readLine()) != null) {
+        try {
+            while (reader.next()) {
                 if (isHeader) {
                     isHeader = false;
                     continue; // Skip header
                 }
+                long line = nextLine++;
+                submittedLines.set(line);
 
-                String[] parts = line.split("\\|");
-                if (parts.length < 3) {
-                    logger.warn("Skipping malformed line: {}", line);
+                if (++lines == PROGRESS_LINES) {
+                    recordParseProgress(job, lines, malformed, skipped);
+                    lines = 0;
+                    malformed = 0;
+                    skipped = 0;
+                    dateInsert = LocalDateTime.now();
+                }
+                MatchDataDTO matchData = parseLine(reader, parser, job.getRunId(), dateInsert);
+                if (matchData == null) {
+                    malformed++;
+                    continue;
+                }
+                if (!partition.contains(matchData.getMatchId())) {
+                    skipped++;
                     continue;
                 }
 
-                MatchDataDTO matchData = new MatchDataDTO();
-                matchData.setMatchId(parts[0].replaceAll("'", ""));
-                matchData.setMarketId(Integer.parseInt(parts[1].replaceAll("'", "")));
-                matchData.setOutcomeId(parts[2].replaceAll("'", ""));
-                matchData.setSpecifiers(parts.length > 3 ? parts[3].replaceAll("'", "") : null);
-                matchData.setDateInsert(LocalDateTime.now());
-                matchData.setRunId(String.valueOf(runId));
-
-                // Assign Event Type based on SPECIFIERS
-                char eventType = (matchData.getSpecifiers() != null && !matchData.getSpecifiers().isEmpty()) ? 'A' : 'B';
-                matchData.setEventType(String.valueOf(eventType));
-
-                // Group by MATCH_ID and Event Type
-                if (eventType == 'A') {
-                    matchIdToAEvents.computeIfAbsent(matchData.getMatchId(), k -> Collections.synchronizedList(new ArrayList<>()))
-                            .add(matchData);
-                } else {
-                    matchIdToBEvents.computeIfAbsent(matchData.getMatchId(), k -> Collections.synchronizedList(new ArrayList<>()))
-                            .add(matchData);
+                Map<String, int[]> sequences = "A".equals(matchData.getEventType()) ? aSequences : bSequences;
+                matchData.setSequenceNumber(++sequences.computeIfAbsent(matchData.getMatchId(), k -> new int[1])[0]);
+                matchData.setLineNumber(line);
+                if (line < resumeLine) {
+                    continue; // Written by an earlier attempt
                 }
+                lanes.submit(matchData.getMatchId(), matchData);
+            }
+            submittedLines.set(nextLine);
+        } finally {
+            try {
+                // Let submitted rows settle, so the final checkpoint and statistics are exact
+                lanes.awaitCompletion();
+            } finally {
+                lanes.shutdown();
+                job.metrics().unregisterLanes("streaming", lanes);
+            }
+        }
+        recordParseProgress(job, lines, malformed, skipped);
+        long matchIds = aSequences.size();
+        for (String matchId : bSequences.keySet()) {
+            if (!aSequences.containsKey(matchId)) {
+                matchIds++;
             }
+        }
+        stats.recordMatchIds(matchIds);
 
-        } catch (Exception e) {
-            logger.error("Error reading the file: {}", e.getMessage(), e);
-            return;
+        if (lanes.getItemsFailed() > 0) {
+            // Fails the partition, so the run can be resumed from the checkpoint
+            throw new IllegalStateException("Failed to write " + lanes.getItemsFailed() + " streamed rows of run "
+                    + job.getRunId());
         }
+        return lanes.getItemsHandled();
+    }
 
-        // Step 2: Assign Sequence Numbers within each MATCH_ID
-        assignSequenceNumbers(matchIdToAEvents);
-        assignSequenceNumbers(matchIdToBEvents);
+    /**
+     * Parses the current MATCH_ID|MARKET_ID|OUTCOME_ID|SPECIFIERS line of {@code reader} into a new record.
+     *
+     * @param dateInsert The time the line was read, shared by the lines of a block.
+     * @return The parsed record, or {@code null} if the line is malformed.
+     */
+    MatchDataDTO parseLine(ByteLineReader reader, MatchDataLineParser parser, String runId, LocalDateTime dateInsert) {
+        MatchDataDTO matchData = new MatchDataDTO();
+        if (!parseFields(reader, parser, matchData)) {
+            return null;
+        }
+        matchData.setDateInsert(dateInsert);
+        matchData.setRunId(runId);
 
-        // Step 3: Process 'A' and 'B' events separately
-        processAEvents(matchIdToAEvents);
-        processBEvents(matchIdToBEvents);
+        // Assign Event Type based on SPECIFIERS
+        matchData.setEventType(isAEvent(matchData.getSpecifiers()) ? "A" : "B");
+        return matchData;
     }
 
-    private void assignSequenceNumbers(Map<String, List<MatchDataDTO>> matchIdToEvents) {
-        for (Map.Entry<String, List<MatchDataDTO>> entry : matchIdToEvents.entrySet()) {
-            List<MatchDataDTO> events = entry.getValue();
-            // Sort events by dateInsert to maintain sequence
-            events.sort(Comparator.comparing(MatchDataDTO::getDateInsert));
-            for (int i = 0; i < events.size(); i++) {
-                events.get(i).setSequenceNumber(i + 1);
-            }
+    /**
+     * Parses the line fields into {@code target}, logging the line if it is malformed.
+     */
+    private boolean parseFields(ByteLineReader reader, MatchDataLineParser parser, MatchDataDTO target) {
+        if (parser.parse(reader.buffer(), reader.lineStart(), reader.lineEnd(), target)) {
+            return true;
         }
+        logger.warn("Skipping malformed line: {}", new String(reader.buffer(), reader.lineStart(),
+                reader.lineEnd() - reader.lineStart(), StandardCharsets.UTF_8));
+        return false;
     }
 
-    private void insertBatch(List<MatchDataDTO> batch) throws Exception {
-        matchDataRepository.insertMatchData(batch);
-        logger.info("Inserted batch of size {} for run_id {}", batch.size(), batch.get(0).getRunId());
+    /**
+     * Lines with SPECIFIERS are 'A' events, lines without are 'B' events.
+     */
+    private static boolean isAEvent(String specifiers) {
+        return specifiers != null && !specifiers.isEmpty();
     }
 
-    private void processAEvents(Map<String, List<MatchDataDTO>> matchIdToAEvents) {
-        // Single-threaded executor or limited concurrency
-        ExecutorService aExecutor = Executors.newFixedThreadPool(THREAD_COUNT / 2);
-
-        List<Callable<Void>> aTasks = new ArrayList<>();
+    private void logThroughput(String runId, long rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        double rowsPerSecond = seconds > 0 ? rows / seconds : rows;
+        logger.info("Run {} processed {} rows in {} s using {} over {} ({} rows/sec)", runId, rows,
+                String.format("%.3f", seconds), writeMode, writeBackend, String.format("%.0f", rowsPerSecond));
+    }
 
-        for (Map.Entry<String, List<MatchDataDTO>> entry : matchIdToAEvents.entrySet()) {
-            String matchId = entry.getKey();
-            List<MatchDataDTO> dataList = entry.getValue();
+    private void insertBatch(List<MatchDataDTO> batch, IngestionJob job) throws Exception {
+        long minMicros = Long.MAX_VALUE;
+        long maxMicros = Long.MIN_VALUE;
+        for (MatchDataDTO dto : batch) {
+            long micros = MatchDataColumns.toMicros(dto.getDateInsert());
+            minMicros = Math.min(minMicros, micros);
+            maxMicros = Math.max(maxMicros, micros);
+        }
+        try {
+            write(job, batch.size(), i -> "A".equals(batch.get(i).getEventType()), minMicros, maxMicros, () -> {
+                if (isResumed(job)) {
+                    return matchDataRepository.upsertMatchData(batch);
+                }
+                if (writeMode == WriteMode.COPY) {
+                    matchDataRepository.copyMatchData(batch);
+                } else {
+                    matchDataRepository.insertMatchData(batch);
+                }
+                return null;
+            });
+        } finally {
+            // Also after a failure: a batched insert may have stored part of the rows
+            invalidateMatchHistory(i -> batch.get(i).getMatchId(), batch.size());
+        }
+        logger.debug("Inserted batch of size {} for run_id {}", batch.size(), job.getRunId());
+    }
 
-            Callable<Void> task = () -> {
-                try {
-                    List<MatchDataDTO> batch = new ArrayList<>();
-                    for (MatchDataDTO dto : dataList) {
-                        batch.add(dto);
-                        if (batch.size() >= BATCH_SIZE) {
-                            insertBatch(batch);
-                            batch.clear();
-                        }
-                    }
-                    if (!batch.isEmpty()) {
-                        insertBatch(batch);
-                    }
-                } catch (Exception e) {
-                    logger.error("Error inserting A events for MATCH_ID {}: {}", matchId, e.getMessage(), e);
+    private void insertRows(MatchDataColumns columns, int[] rows, int from, int to, IngestionJob job) throws Exception {
+        long minMicros = Long.MAX_VALUE;
+        long maxMicros = Long.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            long micros = columns.getDateInsertMicros(rows[i]);
+            minMicros = Math.min(minMicros, micros);
+            maxMicros = Math.max(maxMicros, micros);
+        }
+        try {
+            write(job, to - from, i -> columns.getEventType(rows[from + i]) == MatchDataColumns.EVENT_A, minMicros, maxMicros, () -> {
+                if (isResumed(job)) {
+                    return matchDataRepository.upsertMatchData(columns, rows, from, to);
+                }
+                if (writeMode == WriteMode.COPY) {
+                    matchDataRepository.copyMatchData(columns, rows, from, to);
+                } else {
+                    matchDataRepository.insertMatchData(columns, rows, from, to);
                 }
                 return null;
-            };
+            });
+        } finally {
+            // Also after a failure: a batched insert may have stored part of the rows
+            invalidateMatchHistory(i -> columns.getMatchId(rows[from + i]), to - from);
+        }
+        logger.debug("Inserted batch of size {} for run_id {}", to - from, job.getRunId());
+    }
 
-            aTasks.add(task);
+    /**
+     * Drops the cached histories of the MATCH_IDs of written rows. Rows of a MATCH_ID are mostly adjacent, so
+     * repeats of the previous MATCH_ID are skipped before the cache is locked.
+     *
+     * @param matchIdAt The MATCH_ID of the row at an index of the batch.
+     */
+    private void invalidateMatchHistory(IntFunction<String> matchIdAt, int rowCount) {
+        List<String> matchIds = new ArrayList<>();
+        String previous = null;
+        for (int i = 0; i < rowCount; i++) {
+            String matchId = matchIdAt.apply(i);
+            if (!matchId.equals(previous)) {
+                matchIds.add(matchId);
+                previous = matchId;
+            }
         }
+        matchHistoryCache.invalidateAll(matchIds);
+    }
 
+    /**
+     * Rows of a resumed partition may already be stored, so they are upserted instead of copied or inserted.
+     */
+    private static boolean isResumed(IngestionJob job) {
+        PartitionStats stats = job.partitionStats();
+        return stats != null && stats.isResumed();
+    }
+
+    @FunctionalInterface
+    private interface RepositoryWrite {
+        /**
+         * @return The update count of each row, 0 for a row that was already stored, or {@code null} if
+         * every row was inserted.
+         */
+        int[] run() throws Exception;
+    }
+
+    /**
+     * Runs one repository write while holding a write permit, and records its latency, the rows it
+     * inserted and their {@code date_insert} range.
+     *
+     * @param isARow Whether the row at an index of the batch is an 'A' event.
+     */
+    private void write(IngestionJob job, int rowCount, IntPredicate isARow, long minMicros, long maxMicros,
+                       RepositoryWrite repositoryWrite) throws Exception {
+        RunMetrics metrics = job.metrics();
+        long waitStart = System.nanoTime();
+        writePermits.acquire(job);
+        long writeStart = System.nanoTime();
+        metrics.permitWait(writeStart - waitStart);
+        int[] updateCounts;
         try {
-            List<Future<Void>> futures = aExecutor.invokeAll(aTasks);
-            for (Future<Void> future : futures) {
-                future.get();
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            logger.error("Error processing A events: {}", e.getMessage(), e);
-            Thread.currentThread().interrupt();
+            updateCounts = repositoryWrite.run();
+            long writeNanos = System.nanoTime() - writeStart;
+            metrics.batchLatency(writeNanos);
+            metrics.batchRows(rowCount);
+            batchSizer.record(writeStart - waitStart, writeNanos);
+        } catch (Exception e) {
+            metrics.rowsFailed(rowCount);
+            throw e;
         } finally {
-            aExecutor.shutdown();
+            writePermits.release();
         }
+        recordWritten(job, rowCount, isARow, minMicros, maxMicros, updateCounts);
     }
 
-    private void processBEvents(Map<String, List<MatchDataDTO>> matchIdToBEvents) {
-        ExecutorService bExecutor = Executors.newFixedThreadPool(THREAD_COUNT * 2);
-        List<Callable<Void>> bTasks = new ArrayList<>();
+    /**
+     * Records the rows a committed write inserted and their {@code date_insert} range.
+     *
+     * @param updateCounts The update count of each row, or {@code null} if every row was inserted.
+     */
+    private void recordWritten(IngestionJob job, int rowCount, IntPredicate isARow, long minMicros, long maxMicros,
+                               int[] updateCounts) {
+        RunMetrics metrics = job.metrics();
+        long inserted = 0;
+        long aRows = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (updateCounts == null || updateCounts[i] != 0) {
+                inserted++;
+                if (isARow.test(i)) {
+                    aRows++;
+                }
+            }
+        }
+        metrics.rowsWritten(aRows, inserted - aRows);
+        job.recordWritten(inserted);
 
-        for (Map.Entry<String, List<MatchDataDTO>> entry : matchIdToBEvents.entrySet()) {
-            String matchId = entry.getKey();
-            List<MatchDataDTO> dataList = entry.getValue();
+        PartitionStats stats = job.partitionStats();
+        if (stats != null) {
+            stats.recordBatch(aRows, inserted - aRows, minMicros, maxMicros);
+            flushPartitionStats(job);
+        }
+    }
 
-            Callable<Void> task = () -> {
-                try {
-                    for (MatchDataDTO dto : dataList) {
-                        MatchIdSequence seq = matchIdSequenceMap.get(dto.getMatchId());
-                        if (seq != null) {
-                            seq.waitForTurn(dto.getSequenceNumber());
-                            insertBatch(Collections.singletonList(dto));
-                            seq.signalNext();
+    /**
+     * Writes 'A' events through per-MATCH_ID ordered lanes on the A writer pool.
+     *
+     * @return The number of MATCH_IDs whose rows could not all be written.
+     */
+    long processAEvents(MatchDataColumns columns, MatchGroups groups, IngestionJob job) {
+        return writeGroups(columns, groups, aExecutor, "a-events", job);
+    }
+
+    /**
+     * Writes 'B' events through per-MATCH_ID ordered lanes on the B writer pool.
+     *
+     * @return The number of MATCH_IDs whose rows could not all be written.
+     */
+    long processBEvents(MatchDataColumns columns, MatchGroups groups, IngestionJob job) {
+        return writeGroups(columns, groups, bExecutor, "b-events", job);
+    }
+
+    /**
+     * Writes the grouped rows through per-MATCH_ID ordered lanes. Each MATCH_ID's rows are written in
+     * sequence order by a single lane, and the rows of consecutive matches on a lane are coalesced into
+     * batches of the current adaptive batch size, so small matches do not produce small batches.
+     *
+     * @return The number of MATCH_IDs whose rows could not all be written.
+     */
+    private long writeGroups(MatchDataColumns columns, MatchGroups groups, ExecutorService executor, String name,
+                             IngestionJob job) {
+        int[] rows = groups.rows();
+        KeyedOrderedExecutor<Integer> lanes = new KeyedOrderedExecutor<>(executor, writerLanes,
+                Integer.MAX_VALUE, batchSizer, matchCodes -> {
+                    int[] batch = new int[batchSizer.batchSize()];
+                    int size = 0;
+                    for (int m : matchCodes) {
+                        for (int i = groups.start(m); i < groups.end(m); i++) {
+                            batch[size++] = rows[i];
+                            if (size == batch.length) {
+                                insertRows(columns, batch, 0, size, job);
+                                size = 0;
+                                // Picks up the size adapted to the write that just completed
+                                if (batch.length != batchSizer.batchSize()) {
+                                    batch = new int[batchSizer.batchSize()];
+                                }
+                            }
                         }
                     }
-                } catch (Exception e) {
-                    logger.error("Error processing B events for MATCH_ID {}: {}", matchId, e.getMessage(), e);
-                }
-                return null;
-            };
-
-            bTasks.add(task);
-        }
+                    if (size > 0) {
+                        insertRows(columns, batch, 0, size, job);
+                    }
+                }, job.metrics()::laneWait);
+        job.metrics().registerLanes(name, lanes);
 
         try {
-            List<Future<Void>> futures = bExecutor.invokeAll(bTasks);
-            for (Future<Void> future : futures) {
-                try {
-                    future.get();
-                } catch (ExecutionException ee) {
-                    logger.error("Task execution failed: {}", ee.getCause().getMessage(), ee.getCause());
+            for (int m = 0; m < groups.matchCount(); m++) {
+                if (groups.start(m) < groups.end(m)) {
+                    lanes.submit(m, m);
                 }
             }
+            lanes.awaitCompletion();
         } catch (InterruptedException ie) {
-            logger.error("B Executor interrupted: {}", ie.getMessage(), ie);
+            logger.error("Writers of {} interrupted: {}", name, ie.getMessage(), ie);
             Thread.currentThread().interrupt();
+            return Math.max(1, lanes.getItemsFailed());
         } finally {
-            bExecutor.shutdown();
-            try {
-                if (!bExecutor.awaitTermination(1, TimeUnit.HOURS)) {
-                    bExecutor.shutdownNow();
+            // Drops the rows still queued after an interrupt, so no writes continue for the failed job
+            lanes.shutdown();
+            job.metrics().unregisterLanes(name, lanes);
+        }
+
+        if (lanes.getItemsFailed() > 0) {
+            logger.error("Failed to insert {} for {} matches", name, lanes.getItemsFailed());
+        }
+        return lanes.getItemsFailed();
+    }
+
+    /**
+     * A batch of grouped rows written by {@link #writeGroupsReactive}, with its outcome.
+     */
+    private static final class ReactiveBatch {
+        private final int[] rows;
+        private final int from;
+        private final int to;
+        private long writeNanos;
+        private int[] updateCounts;
+        private Throwable failure;
+
+        private ReactiveBatch(int[] rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Writes the grouped rows through the reactive client without a writer thread per batch. Batches of the
+     * current adaptive size are cut as Mutiny requests them and sent with {@link ReactiveMatchDataRepository#writeAsync},
+     * and {@code merge} keeps at most {@code file-processing.reactive.max-in-flight} of them pipelined over the
+     * reactive pool: a new batch is only requested when one completes. The calling thread consumes the completed
+     * batches and records them like the blocking writers do, so no statistics flush runs on an event loop.
+     * <p>
+     * The rows of a MATCH_ID may be written by concurrent batches. Their sequence numbers were assigned while
+     * parsing, so the stored rows are the same whatever order the batches commit in.
+     *
+     * @return The number of MATCH_IDs whose rows could not all be written.
+     */
+    private long writeGroupsReactive(MatchDataColumns columns, IngestionJob job, MatchGroups... groups) {
+        ReactiveMatchDataRepository repository = reactiveRepository.get();
+        boolean skipExisting = isResumed(job);
+        Iterable<ReactiveBatch> batches = () -> new Iterator<>() {
+            private int group;
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                while (group < groups.length && next >= groups[group].size()) {
+                    group++;
+                    next = 0;
+                }
+                return group < groups.length;
+            }
+
+            @Override
+            public ReactiveBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int from = next;
+                next = Math.min(groups[group].size(), from + batchSizer.batchSize());
+                return new ReactiveBatch(groups[group].rows(), from, next);
+            }
+        };
+
+        Multi<ReactiveBatch> written = Multi.createFrom().iterable(batches)
+                .onItem().transformToUni(batch -> Uni.createFrom().deferred(() -> {
+                    long writeStart = System.nanoTime();
+                    return repository.writeAsync(columns, batch.rows, batch.from, batch.to, skipExisting)
+                            .onItemOrFailure().transform((updateCounts, failure) -> {
+                                batch.writeNanos = System.nanoTime() - writeStart;
+                                batch.updateCounts = updateCounts;
+                                batch.failure = failure;
+                                return batch;
+                            });
+                }))
+                .merge(reactiveMaxInFlight);
+
+        RunMetrics metrics = job.metrics();
+        boolean[] failedMatches = new boolean[columns.getMatchIdCount()];
+        // Closing the stream cancels the batches not sent yet, if this thread is interrupted
+        try (Stream<ReactiveBatch> completed = written.subscribe().asStream()) {
+            for (Iterator<ReactiveBatch> it = completed.iterator(); it.hasNext(); ) {
+                ReactiveBatch batch = it.next();
+                int rowCount = batch.to - batch.from;
+                int[] rows = batch.rows;
+                int from = batch.from;
+                try {
+                    if (batch.failure != null) {
+                        metrics.rowsFailed(rowCount);
+                        for (int i = from; i < batch.to; i++) {
+                            failedMatches[columns.getMatchIdCode(rows[i])] = true;
+                        }
+                        logger.error("Failed to write a batch of {} rows of run {}: {}", rowCount, job.getRunId(),
+                                batch.failure.getMessage(), batch.failure);
+                        continue;
+                    }
+                    metrics.batchLatency(batch.writeNanos);
+                    metrics.batchRows(rowCount);
+                    batchSizer.record(0, batch.writeNanos);
+                    long minMicros = Long.MAX_VALUE;
+                    long maxMicros = Long.MIN_VALUE;
+                    for (int i = from; i < batch.to; i++) {
+                        long micros = columns.getDateInsertMicros(rows[i]);
+                        minMicros = Math.min(minMicros, micros);
+                        maxMicros = Math.max(maxMicros, micros);
+                    }
+                    recordWritten(job, rowCount, i -> columns.getEventType(rows[from + i]) == MatchDataColumns.EVENT_A,
+                            minMicros, maxMicros, batch.updateCounts);
+                } finally {
+                    // Also after a failure: a batched insert may have stored part of the rows
+                    invalidateMatchHistory(i -> columns.getMatchId(rows[from + i]), rowCount);
                 }
-            } catch (InterruptedException ie) {
-                logger.error("Error shutting down bExecutor: {}", ie.getMessage(), ie);
-                bExecutor.shutdownNow();
-                Thread.currentThread().interrupt();
             }
         }
+
+        long failed = 0;
+        for (boolean matchFailed : failedMatches) {
+            if (matchFailed) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
     }
 
     /**
-     * Retrieves the next run ID in a thread-safe manner.
+     * Retrieves a run and its progress from the run registry.
      *
-     * @return The next run ID.
+     * @param runId The run ID to look up.
+     * @return The run, or empty if no run has this ID.
      */
-    private synchronized int getNextRunId() {
-        return ++runCounter;
+    public Optional<RunDTO> findRun(long runId) {
+        return runSummaryCache.get(runId, runRepository::findRun);
     }
 
     /**
-     * Retrieves timestamps (min and max date_insert) for a given run ID.
+     * Retrieves the rows of one MATCH_ID, ordered by run, event type and sequence number, from an in-process
+     * cache that drops a MATCH_ID's entries whenever a run writes rows of it.
+     *
+     * @param runId The run to read, or {@code null} for all runs.
+     * @return The rows, empty if the MATCH_ID has none. Must not be modified.
+     */
+    public List<MatchDataDTO> getMatchHistory(String matchId, Long runId) throws Exception {
+        String scope = runId != null ? String.valueOf(runId) : null;
+        return matchHistoryCache.get(matchId, scope, () -> matchDataRepository.findMatchHistory(matchId, scope));
+    }
+
+    /**
+     * Makes the failed partitions of a run claimable again, and those abandoned by a node that stopped
+     * renewing their lease; a job joining the run then resumes them.
+     *
+     * @return The number of partitions to resume, 0 if the run has no failed or abandoned partition.
+     */
+    public int resumeRun(long runId) throws Exception {
+        int resumed = runRepository.resumeRun(runId, partitionLeaseMs);
+        runSummaryCache.invalidate(runId);
+        if (resumed > 0) {
+            logger.info("Run {} has {} failed or abandoned partitions to resume", runId, resumed);
+        }
+        return resumed;
+    }
+
+    void invalidateRun(long runId) {
+        runSummaryCache.invalidate(runId);
+        fingerprintCache.invalidateRun(runId);
+        // The rows of the run are gone, whatever their MATCH_IDs
+        matchHistoryCache.clear();
+    }
+
+    /**
+     * Retrieves timestamps (min and max date_insert) for a given run ID from the run summary, which is
+     * kept up to date as batches commit, so the cost does not depend on the size of match_data.
      *
      * @param runId The run ID to query.
-     * @return A map containing "min_date" and "max_date".
+     * @return A map containing "min_date" and "max_date", empty if the run is unknown or has no rows yet.
      */
     public Map<String, LocalDateTime> getTimestamps(String runId) {
-        return matchDataRepository.getTimestamps(runId);
+        Map<String, LocalDateTime> result = new HashMap<>();
+        long id;
+        try {
+            id = Long.parseLong(runId);
+        } catch (NumberFormatException e) {
+            return result;
+        }
+        findRun(id).ifPresent(run -> {
+            if (run.getMinDateInsert() != null) {
+                result.put("min_date", run.getMinDateInsert());
+                result.put("max_date", run.getMaxDateInsert());
+            }
+        });
+        return result;
     }
 }
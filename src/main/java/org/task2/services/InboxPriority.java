@@ -0,0 +1,11 @@
+package org.task2.services;
+
+/**
+ * Selects which waiting inbox file {@link InboxService} submits first when a job slot frees up.
+ */
+public enum InboxPriority {
+    /** The file modified longest ago, so files are ingested in arrival order. */
+    OLDEST,
+    /** The smallest file, so short feeds are not held up behind long ones. */
+    SMALLEST
+}
@@ -0,0 +1,258 @@
+package org.task2.services;
+
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Ingests the files dropped into a watched directory, enabled with {@code file-processing.inbox.enabled}.
+ * <p>
+ * A {@link WatchService} reports new and modified files; the directory is only listed at startup and when the
+ * watch service overflows. A file is submitted once its size and modification time have not changed for
+ * {@code file-processing.inbox.settle-ms}, so files still being copied in are not read half-written. Names
+ * starting with a dot or ending in {@code .tmp} or {@code .part} are ignored; writers can use them and rename
+ * the finished file.
+ * <p>
+ * At most {@code file-processing.jobs.max-concurrent} inbox files are ingested at once, so a burst of arrivals
+ * neither fills the job queue nor multiplies the writers. The others wait here and are submitted as slots free
+ * up, by {@link InboxPriority}. Once its job has finished, a file is moved to the {@code processed} or
+ * {@code failed} subdirectory. A file whose job was cut short by a restart is still in the inbox and is
+ * ingested again as a new run.
+ */
+@ApplicationScoped
+public class InboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboxService.class);
+
+    private static final String PROCESSED_DIRECTORY = "processed";
+    private static final String FAILED_DIRECTORY = "failed";
+
+    @Inject
+    IngestionJobService ingestionJobService;
+
+    @Inject
+    IngestionMetrics ingestionMetrics;
+
+    @ConfigProperty(name = "file-processing.inbox.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "file-processing.inbox.directory", defaultValue = "inbox")
+    String directory;
+
+    @ConfigProperty(name = "file-processing.inbox.priority", defaultValue = "oldest")
+    InboxPriority priority;
+
+    @ConfigProperty(name = "file-processing.inbox.settle-ms", defaultValue = "2000")
+    long settleMs;
+
+    @ConfigProperty(name = "file-processing.inbox.partitions", defaultValue = "1")
+    int partitionCount;
+
+    @ConfigProperty(name = "file-processing.jobs.max-concurrent", defaultValue = "2")
+    int maxInFlight;
+
+    private Path inbox;
+    private WatchService watchService;
+    // Files in the inbox that have not been submitted yet
+    private final Map<Path, InboxFile> waiting = new ConcurrentHashMap<>();
+    // Jobs of the submitted files that have not been archived yet
+    private final Map<Path, IngestionJob> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Size and modification time of a waiting file when it was last checked, and since when they are unchanged.
+     */
+    private static final class InboxFile {
+        private final Path path;
+        private long size = -1;
+        private long lastModified = -1;
+        private long unchangedSinceNanos;
+
+        private InboxFile(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return {@code false} if the file is gone.
+         */
+        private boolean refresh(long nowNanos) {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                return false;
+            }
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() != size || modified != lastModified) {
+                size = attributes.size();
+                lastModified = modified;
+                unchangedSinceNanos = nowNanos;
+            }
+            return true;
+        }
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            inbox = Path.of(directory).toAbsolutePath();
+            Files.createDirectories(inbox.resolve(PROCESSED_DIRECTORY));
+            Files.createDirectories(inbox.resolve(FAILED_DIRECTORY));
+            watchService = inbox.getFileSystem().newWatchService();
+            inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot watch inbox directory " + directory, e);
+        }
+        // Files dropped while the application was down
+        scan();
+        new NamedThreadFactory("inbox-watcher").newThread(this::watch).start();
+        ingestionMetrics.registerInbox(this);
+        logger.info("Watching inbox {}, submitting waiting files by {}", inbox, priority);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (watchService != null) {
+            try {
+                // Ends the watcher thread
+                watchService.close();
+            } catch (IOException e) {
+                logger.warn("Error closing the inbox watch service: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        scan();
+                    } else {
+                        consider(inbox.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    logger.error("Inbox {} is no longer accessible, stopped watching it", inbox);
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Shutting down
+        }
+    }
+
+    private void scan() {
+        try (Stream<Path> files = Files.list(inbox)) {
+            files.forEach(this::consider);
+        } catch (IOException e) {
+            logger.error("Error listing inbox {}: {}", inbox, e.getMessage(), e);
+        }
+    }
+
+    private void consider(Path path) {
+        String name = path.getFileName().toString();
+        if (name.startsWith(".") || name.endsWith(".tmp") || name.endsWith(".part") || !Files.isRegularFile(path)
+                || inFlight.containsKey(path)) {
+            return;
+        }
+        waiting.computeIfAbsent(path, InboxFile::new);
+    }
+
+    /**
+     * Archives the files whose jobs have finished and submits waiting files that have settled while job slots
+     * are free.
+     */
+    @Scheduled(every = "{file-processing.inbox.poll-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void dispatch() {
+        if (!enabled || inbox == null) {
+            return;
+        }
+
+        // Step 1: Move the files of finished jobs out of the inbox
+        for (Map.Entry<Path, IngestionJob> entry : inFlight.entrySet()) {
+            IngestionJob job = entry.getValue();
+            if (job.isFinished()) {
+                archive(entry.getKey(), job);
+                inFlight.remove(entry.getKey());
+            }
+        }
+
+        // Step 2: Find the files that stopped changing, in the order they are to be submitted
+        long now = System.nanoTime();
+        List<InboxFile> settled = new ArrayList<>();
+        for (InboxFile file : waiting.values()) {
+            // The watcher may report a file again while it is being submitted
+            if (inFlight.containsKey(file.path) || !file.refresh(now)) {
+                waiting.remove(file.path);
+            } else if (now - file.unchangedSinceNanos >= settleMs * 1_000_000L) {
+                settled.add(file);
+            }
+        }
+        settled.sort(priority == InboxPriority.SMALLEST
+                ? Comparator.<InboxFile>comparingLong(f -> f.size).thenComparingLong(f -> f.lastModified)
+                : Comparator.<InboxFile>comparingLong(f -> f.lastModified).thenComparingLong(f -> f.size));
+
+        // Step 3: Submit them while slots are free. API jobs share the job executor, so a rejected file waits
+        // for the next round.
+        for (InboxFile file : settled) {
+            if (inFlight.size() >= maxInFlight) {
+                break;
+            }
+            try {
+                IngestionJob job = ingestionJobService.submit(file.path.toString(), partitionCount);
+                inFlight.put(file.path, job);
+                waiting.remove(file.path);
+                logger.info("Submitted inbox file {} ({} bytes) as job {}", file.path.getFileName(), file.size, job.getId());
+            } catch (RejectedExecutionException e) {
+                logger.debug("Job queue full, inbox file {} waits: {}", file.path.getFileName(), e.getMessage());
+                break;
+            }
+        }
+    }
+
+    private void archive(Path path, IngestionJob job) {
+        boolean completed = job.getState() == IngestionJob.State.COMPLETED;
+        Path target = inbox.resolve(completed ? PROCESSED_DIRECTORY : FAILED_DIRECTORY).resolve(path.getFileName());
+        try {
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Inbox file {} {} as run {}, moved to {}", path.getFileName(),
+                    completed ? "ingested" : "failed", job.getRunId(), target.getParent().getFileName());
+        } catch (IOException e) {
+            logger.error("Error moving inbox file {} to {}: {}", path, target, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The number of inbox files not submitted yet.
+     */
+    int waitingFiles() {
+        return waiting.size();
+    }
+
+    /**
+     * @return The number of inbox files whose jobs have not finished.
+     */
+    int inFlightFiles() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,21 @@
+package org.task2.services;
+
+/**
+ * Selects how {@link FileProcessingService} moves parsed records to the database.
+ */
+public enum IngestMode {
+    /** Reads the whole file, groups records per MATCH_ID and event type, then writes the groups. */
+    GROUPED,
+    /** Streams records through bounded per-MATCH_ID lanes to the writers while the file is being read. */
+    STREAMING,
+    /**
+     * Reads the whole file, copies it into an unlogged, index-free staging table and moves it into
+     * {@code match_data} with one set-based statement that also assigns the sequence numbers.
+     */
+    STAGED,
+    /**
+     * Memory-maps an uncompressed file from the filesystem, parses line-aligned chunks on all cores, then writes
+     * like {@link #GROUPED}. Compressed and classpath input cannot be mapped and is read as in {@link #GROUPED}.
+     */
+    MAPPED
+}
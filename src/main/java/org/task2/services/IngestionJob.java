@@ -0,0 +1,174 @@
+package org.task2.services;
+
+import org.task2.model.PartitionClaimDTO;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one file ingestion, updated by {@link FileProcessingService} while the file is processed.
+ */
+public class IngestionJob {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final String fileName;
+    // Run to join instead of creating a new one, or null
+    private final Long joinRunId;
+    private final int partitionCount;
+    private final List<Integer> partitions = new CopyOnWriteArrayList<>();
+    private final LocalDateTime submittedAt = LocalDateTime.now();
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private volatile State state = State.QUEUED;
+    private volatile String runId;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+    private volatile String error;
+    private volatile RunMetrics metrics;
+    private volatile PartitionStats partitionStats;
+
+    public IngestionJob(String id, String fileName) {
+        this(id, fileName, null, 1);
+    }
+
+    /**
+     * @param joinRunId      An existing run whose pending partitions this job claims, or {@code null}
+     *                       to create a new run.
+     * @param partitionCount The number of MATCH_ID partitions of a new run.
+     */
+    public IngestionJob(String id, String fileName, Long joinRunId, int partitionCount) {
+        this.id = id;
+        this.fileName = fileName;
+        this.joinRunId = joinRunId;
+        this.partitionCount = partitionCount;
+    }
+
+    void start(String runId, RunMetrics metrics) {
+        this.runId = runId;
+        this.metrics = metrics;
+        this.startedAt = LocalDateTime.now();
+        this.startNanos = System.nanoTime();
+        this.state = State.RUNNING;
+    }
+
+    void complete() {
+        finish(State.COMPLETED);
+    }
+
+    void fail(String error) {
+        this.error = error;
+        finish(State.FAILED);
+    }
+
+    private void finish(State finalState) {
+        this.finishNanos = System.nanoTime();
+        this.finishedAt = LocalDateTime.now();
+        this.state = finalState;
+    }
+
+    void recordParsed(long rows) {
+        rowsParsed.addAndGet(rows);
+    }
+
+    void recordWritten(long rows) {
+        rowsWritten.addAndGet(rows);
+    }
+
+    /**
+     * Starts collecting the statistics of a newly claimed partition of the run.
+     */
+    void beginPartition(PartitionClaimDTO claim) {
+        partitions.add(claim.getPartitionIndex());
+        partitionStats = new PartitionStats(Long.parseLong(runId), claim, getRowsParsed(), getRowsWritten());
+    }
+
+    /**
+     * @return The statistics of the partition being ingested, or {@code null} outside of a partition.
+     */
+    PartitionStats partitionStats() {
+        return partitionStats;
+    }
+
+    RunMetrics metrics() {
+        return metrics;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Long getJoinRunId() {
+        return joinRunId;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * @return The partitions of the run claimed by this job so far.
+     */
+    public List<Integer> getPartitions() {
+        return List.copyOf(partitions);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public LocalDateTime getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    /**
+     * @return Rows written per second since the job started, up to now or until it finished.
+     */
+    public double getRowsPerSecond() {
+        if (startedAt == null) {
+            return 0;
+        }
+        long endNanos = isFinished() ? finishNanos : System.nanoTime();
+        double seconds = (endNanos - startNanos) / 1_000_000_000.0;
+        return seconds > 0 ? rowsWritten.get() / seconds : 0;
+    }
+}
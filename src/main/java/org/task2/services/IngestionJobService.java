@@ -0,0 +1,156 @@
+package org.task2.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.task2.model.RunDTO;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Runs file ingestions as background jobs on a long-lived, bounded executor.
+ * <p>
+ * At most {@code file-processing.jobs.max-concurrent} jobs run at once and at most
+ * {@code file-processing.jobs.max-queued} wait for a slot; further submissions are rejected instead of
+ * piling more work onto the shared writer pools and the connection pool behind them. Uploads run on the
+ * request thread and are limited to {@code file-processing.jobs.max-concurrent} as well, separately from
+ * queued jobs.
+ */
+@ApplicationScoped
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    @Inject
+    FileProcessingService fileProcessingService;
+
+    @ConfigProperty(name = "file-processing.jobs.max-concurrent", defaultValue = "2")
+    int maxConcurrentJobs;
+
+    @ConfigProperty(name = "file-processing.jobs.max-queued", defaultValue = "8")
+    int maxQueuedJobs;
+
+    @ConfigProperty(name = "file-processing.jobs.history-size", defaultValue = "1000")
+    int historySize;
+
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+    // Job ids in submission order, so the oldest finished jobs are evicted first
+    private final ConcurrentLinkedQueue<String> jobOrder = new ConcurrentLinkedQueue<>();
+
+    private ThreadPoolExecutor jobExecutor;
+    private Semaphore uploadSlots;
+
+    @PostConstruct
+    void init() {
+        jobExecutor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs), new NamedThreadFactory("ingestion-job"));
+        uploadSlots = new Semaphore(maxConcurrentJobs);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues the ingestion of {@code fileName} as a new run and returns immediately.
+     *
+     * @param partitionCount The number of MATCH_ID partitions the run is split into; other nodes can
+     *                       claim partitions with {@link #join(RunDTO)}.
+     * @return The queued job.
+     * @throws RejectedExecutionException If the admission limit is reached.
+     */
+    public IngestionJob submit(String fileName, int partitionCount) {
+        return enqueue(new IngestionJob(UUID.randomUUID().toString(), fileName, null, partitionCount));
+    }
+
+    /**
+     * Queues a job that claims the pending partitions of an existing run and returns immediately.
+     *
+     * @return The queued job.
+     * @throws RejectedExecutionException If the admission limit is reached.
+     */
+    public IngestionJob join(RunDTO run) {
+        return enqueue(new IngestionJob(UUID.randomUUID().toString(), run.getFileName(), run.getId(),
+                run.getPartitionCount()));
+    }
+
+    /**
+     * Ingests {@code body} as a new single-partition run on the calling thread, reading it as it arrives,
+     * and returns once the run has finished. The job can be followed with {@link #getJob(String)} meanwhile.
+     *
+     * @param fileName A name for the run.
+     * @return The finished job.
+     * @throws RejectedExecutionException If the upload limit is reached.
+     */
+    public IngestionJob upload(String fileName, InputStream body) {
+        if (!uploadSlots.tryAcquire()) {
+            throw new RejectedExecutionException("Too many uploads in progress");
+        }
+        try {
+            IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), fileName, null, 1);
+            track(job);
+            run(job, () -> fileProcessingService.processUpload(fileName, body, job));
+            return job;
+        } finally {
+            uploadSlots.release();
+        }
+    }
+
+    private IngestionJob enqueue(IngestionJob job) {
+        jobs.put(job.getId(), job);
+        try {
+            jobExecutor.execute(() -> run(job, () -> fileProcessingService.processFileStreamUsingCopy(job.getFileName(), job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        jobOrder.add(job.getId());
+        evictFinishedJobs();
+        return job;
+    }
+
+    private void track(IngestionJob job) {
+        jobs.put(job.getId(), job);
+        jobOrder.add(job.getId());
+        evictFinishedJobs();
+    }
+
+    public Optional<IngestionJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    private void run(IngestionJob job, Runnable ingestion) {
+        try {
+            ingestion.run();
+        } catch (Exception e) {
+            logger.error("Ingestion job {} failed: {}", job.getId(), e.getMessage(), e);
+            if (!job.isFinished()) {
+                job.fail(e.getMessage());
+            }
+        }
+    }
+
+    private void evictFinishedJobs() {
+        int excess = jobOrder.size() - historySize;
+        Iterator<String> iterator = jobOrder.iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            String id = iterator.next();
+            IngestionJob job = jobs.get(id);
+            if (job == null || job.isFinished()) {
+                iterator.remove();
+                jobs.remove(id);
+                excess--;
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.task2.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the Micrometer meters of the ingestion pipeline, exposed on the Prometheus endpoint.
+ * <p>
+ * Per-run meters are tagged with {@code run_id}. The meters of a run stay in the registry while any of its jobs
+ * is running on this node. To keep the number of time series bounded, only the meters of the last
+ * {@code file-processing.metrics.retained-runs} finished runs are kept after that.
+ */
+@ApplicationScoped
+public class IngestionMetrics {
+
+    static final String RUN_ID_TAG = "run_id";
+
+    private final MeterRegistry registry;
+    private final int retainedRuns;
+    // Meters of the running and the retained finished runs
+    private final Map<String, RunMetrics> runs = new HashMap<>();
+    // Jobs of each running run that have not released its meters
+    private final Map<String, Integer> runningJobs = new HashMap<>();
+    // Runs whose jobs have all released their meters, the first to finish first
+    private final Map<String, RunMetrics> finished = new LinkedHashMap<>();
+
+    @Inject
+    public IngestionMetrics(MeterRegistry registry,
+                            @ConfigProperty(name = "file-processing.metrics.retained-runs", defaultValue = "20") int retainedRuns) {
+        this.registry = registry;
+        this.retainedRuns = retainedRuns;
+    }
+
+    /**
+     * Registers queue depth and active thread gauges for a pool. Executors without a visible queue,
+     * such as virtual-thread-per-task executors, are skipped.
+     */
+    void registerExecutor(String name, ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor pool) {
+            Gauge.builder("ingestion.executor.queue.depth", pool, p -> p.getQueue().size())
+                    .description("Tasks waiting in the executor queue")
+                    .tag("executor", name)
+                    .register(registry);
+            Gauge.builder("ingestion.executor.active", pool, ThreadPoolExecutor::getActiveCount)
+                    .description("Threads currently running a task")
+                    .tag("executor", name)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Exposes the batch size and flush interval the sizer currently applies to all runs.
+     */
+    void registerBatchSizer(AdaptiveBatchSizer batchSizer) {
+        Gauge.builder("ingestion.batch.size.target", batchSizer, AdaptiveBatchSizer::batchSize)
+                .description("Rows per batch, adapted to the observed write latency")
+                .register(registry);
+        TimeGauge.builder("ingestion.batch.flush.interval", batchSizer, TimeUnit.NANOSECONDS,
+                        AdaptiveBatchSizer::flushIntervalNanos)
+                .description("Time a partial batch may wait for more rows before it is written")
+                .register(registry);
+    }
+
+    /**
+     * Exposes the number of jobs whose writers are waiting for a write permit.
+     */
+    void registerWritePermits(FairWritePermits writePermits) {
+        Gauge.builder("ingestion.write.permits.waiting.jobs", writePermits, FairWritePermits::waitingOwners)
+                .description("Jobs with writes waiting for a permit, each served in turn")
+                .register(registry);
+    }
+
+    /**
+     * Exposes the lookups, evictions and load time of the match history cache.
+     */
+    void registerMatchHistoryCache(MatchHistoryCache cache) {
+        FunctionCounter.builder("match.history.cache.requests", cache, MatchHistoryCache::hits)
+                .description("Match history lookups by result")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("match.history.cache.requests", cache, MatchHistoryCache::misses)
+                .description("Match history lookups by result")
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("match.history.cache.hit.ratio", cache, MatchHistoryCache::hitRatio)
+                .description("Share of match history lookups served from the cache")
+                .register(registry);
+        FunctionCounter.builder("match.history.cache.evictions", cache, MatchHistoryCache::sizeEvictions)
+                .description("Cached match histories removed, by cause")
+                .tag("cause", "size")
+                .register(registry);
+        FunctionCounter.builder("match.history.cache.evictions", cache, MatchHistoryCache::expirations)
+                .description("Cached match histories removed, by cause")
+                .tag("cause", "expired")
+                .register(registry);
+        FunctionCounter.builder("match.history.cache.evictions", cache, MatchHistoryCache::invalidations)
+                .description("Cached match histories removed, by cause")
+                .tag("cause", "written")
+                .register(registry);
+        Gauge.builder("match.history.cache.size", cache, MatchHistoryCache::size)
+                .description("MATCH_IDs with cached histories")
+                .register(registry);
+        FunctionTimer.builder("match.history.load", cache, MatchHistoryCache::misses, MatchHistoryCache::loadNanos,
+                        TimeUnit.NANOSECONDS)
+                .description("Time to read a match history from the database on a cache miss")
+                .register(registry);
+    }
+
+    /**
+     * Exposes the files of the watched inbox that wait to be ingested and the ones being ingested.
+     */
+    void registerInbox(InboxService inbox) {
+        Gauge.builder("ingestion.inbox.waiting", inbox, InboxService::waitingFiles)
+                .description("Inbox files not yet submitted, including files still being written")
+                .register(registry);
+        Gauge.builder("ingestion.inbox.in.flight", inbox, InboxService::inFlightFiles)
+                .description("Inbox files submitted as ingestion jobs that have not finished")
+                .register(registry);
+    }
+
+    /**
+     * Creates the meters of a run, or returns them if they are still registered. Jobs of the same run share
+     * its meters, and each job must {@link #release} them when it ends.
+     */
+    RunMetrics forRun(String runId) {
+        synchronized (runs) {
+            RunMetrics metrics = runs.computeIfAbsent(runId, id -> new RunMetrics(registry, id));
+            runningJobs.merge(runId, 1, Integer::sum);
+            finished.remove(runId);
+            return metrics;
+        }
+    }
+
+    /**
+     * Called by a job of the run when it ends. Once no job of the run is running, its meters count as finished,
+     * and those of the runs that finished first are dropped beyond the retained number.
+     */
+    void release(String runId) {
+        synchronized (runs) {
+            Integer jobs = runningJobs.get(runId);
+            if (jobs == null) {
+                return;
+            }
+            if (jobs > 1) {
+                runningJobs.put(runId, jobs - 1);
+                return;
+            }
+            runningJobs.remove(runId);
+            finished.put(runId, runs.get(runId));
+            Iterator<Map.Entry<String, RunMetrics>> oldest = finished.entrySet().iterator();
+            while (finished.size() > retainedRuns) {
+                Map.Entry<String, RunMetrics> run = oldest.next();
+                run.getValue().remove();
+                runs.remove(run.getKey());
+                oldest.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package org.task2.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs batches of items on a shared {@link Executor} while preserving submission order per key.
+ * <p>
+ * Every key is hashed to one of a fixed number of lanes. A lane is a FIFO queue with at most one drain
+ * task scheduled at a time, so items of the same key are handled by a single writer in the order they
+ * were submitted, without per-key locks or condition waits. Each drain task takes up to the current
+ * {@link AdaptiveBatchSizer#batchSize()} consecutive items from its lane, whatever their keys, and hands them
+ * to the handler as one batch, then reschedules itself if more items are waiting so that lanes share the
+ * executor's threads fairly. Drain tasks never block waiting for input, which makes it safe to run lanes
+ * of many instances on the same bounded pool.
+ * <p>
+ * With a flush timer, a lane holding less than a full batch is drained only once its first item has waited
+ * for the sizer's flush interval, or when it fills up, so that slow input still forms large batches. The
+ * timer re-submits the drain task instead of parking a thread, and {@link #awaitCompletion()} flushes
+ * partial batches right away.
+ * <p>
+ * When items carry an increasing position, such as their line in the input, {@link #lowWatermark(long)}
+ * reports the position below which every item has been handled successfully.
+ * <p>
+ * {@link #shutdown()} must be called once the lanes are no longer needed, also when the submitter gives up
+ * early, so that queued items are dropped and no drain or flush task outlives the owner.
+ */
+class KeyedOrderedExecutor<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyedOrderedExecutor.class);
+
+    @FunctionalInterface
+    interface BatchHandler<T> {
+        void handle(List<T> batch) throws Exception;
+    }
+
+    private final Executor executor;
+    private final AdaptiveBatchSizer batchSizer;
+    private final ScheduledExecutorService flushTimer;
+    private final BatchHandler<T> handler;
+    private final LongConsumer blockedListener;
+    private final ToLongFunction<T> position;
+    private final List<Lane> lanes;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Object completion = new Object();
+    // Position of the first item of the earliest failed batch
+    private final LongAccumulator failedPosition = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    // Set once no more items are coming; partial batches are then drained without waiting
+    private volatile boolean flushing;
+    // Set once the lanes are shut down; drain tasks then stop
+    private volatile boolean shutdown;
+
+    /**
+     * @param laneCapacity Items buffered per lane before {@link #submit} blocks, or {@link Integer#MAX_VALUE}
+     *                     for unbounded lanes when the input is already in memory.
+     * @param blockedListener Receives the nanoseconds {@link #submit} spent blocked on a full lane.
+     */
+    KeyedOrderedExecutor(Executor executor, int laneCount, int laneCapacity, AdaptiveBatchSizer batchSizer,
+                         BatchHandler<T> handler, LongConsumer blockedListener) {
+        this(executor, laneCount, laneCapacity, batchSizer, null, handler, blockedListener, null);
+    }
+
+    /**
+     * @param flushTimer Delays the drain of partial batches by the sizer's flush interval, or {@code null} to
+     *                   drain whatever is queued.
+     * @param position   Position of an item; items must be submitted in increasing position order.
+     */
+    KeyedOrderedExecutor(Executor executor, int laneCount, int laneCapacity, AdaptiveBatchSizer batchSizer,
+                         ScheduledExecutorService flushTimer, BatchHandler<T> handler, LongConsumer blockedListener,
+                         ToLongFunction<T> position) {
+        this.executor = executor;
+        this.position = position;
+        this.batchSizer = batchSizer;
+        this.flushTimer = flushTimer;
+        this.handler = handler;
+        this.blockedListener = blockedListener;
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new Lane(laneCapacity));
+        }
+    }
+
+    /**
+     * Queues {@code item} behind all earlier items of {@code key}, blocking while the key's lane is full.
+     */
+    void submit(Object key, T item) throws InterruptedException {
+        Lane lane = lanes.get(Math.floorMod(key.hashCode(), lanes.size()));
+        pending.incrementAndGet();
+        if (!lane.queue.offer(item)) {
+            // A full lane is drained without waiting for the flush interval
+            lane.wake();
+            long blockedSince = System.nanoTime();
+            lane.queue.put(item);
+            blockedListener.accept(System.nanoTime() - blockedSince);
+        }
+        lane.schedule();
+        if (lane.queue.size() >= batchSizer.batchSize()) {
+            lane.wake();
+        }
+    }
+
+    /**
+     * Waits until every submitted item has been handled. No items may be submitted afterwards.
+     */
+    void awaitCompletion() throws InterruptedException {
+        flushing = true;
+        for (Lane lane : lanes) {
+            lane.wake();
+        }
+        synchronized (completion) {
+            while (pending.get() > 0) {
+                completion.wait();
+            }
+        }
+    }
+
+    /**
+     * Drops the items still queued, counting them as failed, and stops the drain tasks and pending flush timers.
+     * Batches being handled run to completion. Does nothing to lanes that have completed.
+     */
+    void shutdown() {
+        shutdown = true;
+        for (Lane lane : lanes) {
+            lane.cancelFlush();
+            List<T> dropped = new ArrayList<>();
+            lane.queue.drainTo(dropped);
+            if (!dropped.isEmpty()) {
+                failed.addAndGet(dropped.size());
+                if (position != null) {
+                    // Keeps the low watermark below the dropped items
+                    failedPosition.accumulate(position.applyAsLong(dropped.get(0)));
+                }
+                complete(dropped.size());
+            }
+        }
+    }
+
+    /**
+     * @return Items submitted but not yet handled.
+     */
+    long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Requires a position function.
+     *
+     * @param submittedUpTo A position such that every item before it has already been submitted, read before
+     *                      this call.
+     * @return The position below which every item has been handled successfully.
+     */
+    long lowWatermark(long submittedUpTo) {
+        long watermark = Math.min(submittedUpTo, failedPosition.get());
+        for (Lane lane : lanes) {
+            // Queue head first: a drain task publishes its batch head before taking it off the queue
+            T queued = lane.queue.peek();
+            T inFlight = lane.inFlight;
+            if (queued != null) {
+                watermark = Math.min(watermark, position.applyAsLong(queued));
+            }
+            if (inFlight != null) {
+                watermark = Math.min(watermark, position.applyAsLong(inFlight));
+            }
+        }
+        return watermark;
+    }
+
+    long getItemsHandled() {
+        return handled.get();
+    }
+
+    long getItemsFailed() {
+        return failed.get();
+    }
+
+    private void complete(int count) {
+        if (pending.addAndGet(-count) == 0) {
+            synchronized (completion) {
+                completion.notifyAll();
+            }
+        }
+    }
+
+    private final class Lane implements Runnable {
+        private final BlockingQueue<T> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Set while the drain task waits on the flush timer for the batch to fill
+        private final AtomicBoolean waiting = new AtomicBoolean();
+        // First item of the batch being handled, or null
+        private volatile T inFlight;
+        // When the oldest item not yet drained was queued, approximately
+        private volatile long batchStartNanos;
+        // Timer that drains the waiting partial batch, or null
+        private volatile ScheduledFuture<?> flushWake;
+
+        Lane(int capacity) {
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                batchStartNanos = System.nanoTime();
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Drains the lane now if its drain task is waiting for the batch to fill.
+         */
+        void wake() {
+            if (waiting.compareAndSet(true, false)) {
+                executor.execute(this);
+            }
+        }
+
+        void cancelFlush() {
+            ScheduledFuture<?> wake = flushWake;
+            if (wake != null) {
+                wake.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (shutdown) {
+                scheduled.set(false);
+                return;
+            }
+            int batchSize = batchSizer.batchSize();
+            if (flushTimer != null && !flushing && queue.size() < batchSize && queue.remainingCapacity() > 0) {
+                long remainingNanos = batchStartNanos + batchSizer.flushIntervalNanos() - System.nanoTime();
+                if (remainingNanos > 0) {
+                    waiting.set(true);
+                    flushWake = flushTimer.schedule(this::wake, remainingNanos, TimeUnit.NANOSECONDS);
+                    // The lane may have filled, or completion begun, before the flag was set
+                    if (flushing || queue.size() >= batchSize) {
+                        wake();
+                    }
+                    return;
+                }
+            }
+
+            List<T> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+            inFlight = queue.peek();
+            queue.drainTo(batch, batchSize);
+            if (!batch.isEmpty()) {
+                try {
+                    handler.handle(batch);
+                    handled.addAndGet(batch.size());
+                } catch (Exception e) {
+                    failed.addAndGet(batch.size());
+                    if (position != null) {
+                        failedPosition.accumulate(position.applyAsLong(batch.get(0)));
+                    }
+                    logger.error("Error handling ordered batch of size {}: {}", batch.size(), e.getMessage(), e);
+                } finally {
+                    inFlight = null;
+                    complete(batch.size());
+                }
+            } else {
+                inFlight = null;
+            }
+
+            if (!queue.isEmpty()) {
+                batchStartNanos = System.nanoTime();
+                executor.execute(this);
+                return;
+            }
+            scheduled.set(false);
+            // An item may have been queued after the emptiness check but before the flag was cleared
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.task2.services;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
+import org.task2.repository.MatchDataRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the rows of a run to a stream as they are read from the database, so exports of any size run in
+ * constant memory.
+ */
+@ApplicationScoped
+public class MatchDataExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchDataExportService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER = "match_id,market_id,outcome_id,specifiers,date_insert,sequence_number,event_type";
+
+    @Inject
+    MatchDataRepository matchDataRepository;
+
+    /**
+     * Writes the rows selected by {@code query} to {@code out} in natural key order. A client resumes an
+     * interrupted export by passing the MATCH_ID, event type and sequence number of the last row it received
+     * as the query's cursor.
+     *
+     * @return The number of rows written.
+     */
+    public long export(MatchDataQueryDTO query, ExportFormat format, OutputStream out) throws Exception {
+        long startNanos = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        long rows = matchDataRepository.exportMatchData(query, row -> {
+            if (format == ExportFormat.CSV) {
+                writeCsv(writer, row);
+            } else {
+                writeJson(writer, row);
+            }
+        });
+        writer.flush();
+        logger.info("Exported {} rows of run {} as {} in {} ms", rows, query.getRunId(), format,
+                (System.nanoTime() - startNanos) / 1_000_000);
+        return rows;
+    }
+
+    private static void writeJson(Writer writer, MatchDataDTO row) throws IOException {
+        writer.write("{\"match_id\":");
+        writeJsonString(writer, row.getMatchId());
+        writer.write(",\"market_id\":");
+        writer.write(Integer.toString(row.getMarketId()));
+        writer.write(",\"outcome_id\":");
+        writeJsonString(writer, row.getOutcomeId());
+        writer.write(",\"specifiers\":");
+        writeJsonString(writer, row.getSpecifiers());
+        writer.write(",\"date_insert\":\"");
+        writer.write(row.getDateInsert().toString());
+        writer.write("\",\"sequence_number\":");
+        writer.write(Integer.toString(row.getSequenceNumber()));
+        writer.write(",\"event_type\":");
+        writeJsonString(writer, row.getEventType());
+        writer.write("}\n");
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    private static void writeCsv(Writer writer, MatchDataDTO row) throws IOException {
+        writeCsvValue(writer, row.getMatchId());
+        writer.write(',');
+        writer.write(Integer.toString(row.getMarketId()));
+        writer.write(',');
+        writeCsvValue(writer, row.getOutcomeId());
+        writer.write(',');
+        writeCsvValue(writer, row.getSpecifiers());
+        writer.write(',');
+        writer.write(row.getDateInsert().toString());
+        writer.write(',');
+        writer.write(Integer.toString(row.getSequenceNumber()));
+        writer.write(',');
+        writeCsvValue(writer, row.getEventType());
+        writer.write('\n');
+    }
+
+    /**
+     * Writes a field, quoted if it contains a separator, quote or line break. NULL is an empty field.
+     */
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,93 @@
+package org.task2.services;
+
+import org.task2.model.MatchFingerprintDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process LRU cache of the fingerprints stored in {@code match_fingerprint}. Entries are reloaded once they
+ * are older than the TTL, which bounds how long a fingerprint written by another node goes unnoticed. Callers
+ * that cannot accept that delay read through with {@code reload}.
+ */
+final class MatchFingerprintCache {
+
+    @FunctionalInterface
+    interface Loader {
+        Map<String, MatchFingerprintDTO> load(Collection<String> matchIds) throws Exception;
+    }
+
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    MatchFingerprintCache(int maxEntries, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param reload Whether to load every match id, refreshing the cache, instead of only the ones not cached.
+     * @return The fingerprints of those {@code matchIds} that have one, loading the ones not cached in one call.
+     */
+    Map<String, MatchFingerprintDTO> getAll(Collection<String> matchIds, boolean reload, Loader loader) throws Exception {
+        Map<String, MatchFingerprintDTO> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (entries) {
+            for (String matchId : matchIds) {
+                Entry entry = entries.get(matchId);
+                if (!reload && entry != null && now - entry.loadedAt < ttlNanos) {
+                    result.put(matchId, entry.fingerprint);
+                } else {
+                    // Dropped first, so a fingerprint deleted since it was cached is not served again
+                    entries.remove(matchId);
+                    missing.add(matchId);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, MatchFingerprintDTO> loaded = loader.load(missing);
+            putAll(loaded.values());
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    void putAll(Collection<MatchFingerprintDTO> fingerprints) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            for (MatchFingerprintDTO fingerprint : fingerprints) {
+                entries.put(fingerprint.getMatchId(), new Entry(fingerprint, now));
+            }
+        }
+    }
+
+    /**
+     * Drops the cached fingerprints whose content is held by {@code runId}.
+     */
+    void invalidateRun(long runId) {
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.fingerprint.getRunId() == runId);
+        }
+    }
+
+    private static final class Entry {
+        final MatchFingerprintDTO fingerprint;
+        final long loadedAt;
+
+        Entry(MatchFingerprintDTO fingerprint, long loadedAt) {
+            this.fingerprint = fingerprint;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.task2.services;
+
+import org.task2.model.MatchDataColumns;
+import org.task2.model.MatchFingerprintDTO;
+
+/**
+ * Content fingerprints of the rows of every MATCH_ID in a {@link MatchDataColumns} store, one rolling hash per
+ * event type, built in one pass over the rows.
+ * <p>
+ * A row hashes its market id, outcome id and specifiers with 64-bit FNV-1a. The rolling hash folds the row hashes
+ * in file order, which is sequence order, through a mixing step, so it changes when a row changes, moves, appears
+ * or disappears. The row counts are compared along with the hashes.
+ */
+final class MatchFingerprints {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // Hashed in place of a missing value, so that null and "" differ
+    private static final long NULL_MARKER = 0x9e3779b97f4a7c15L;
+
+    private final long[] aHashes;
+    private final long[] bHashes;
+    private final int[] aRows;
+    private final int[] bRows;
+
+    private MatchFingerprints(int matchCount) {
+        this.aHashes = new long[matchCount];
+        this.bHashes = new long[matchCount];
+        this.aRows = new int[matchCount];
+        this.bRows = new int[matchCount];
+    }
+
+    static MatchFingerprints build(MatchDataColumns columns) {
+        MatchFingerprints fingerprints = new MatchFingerprints(columns.getMatchIdCount());
+        for (int row = 0; row < columns.size(); row++) {
+            int m = columns.getMatchIdCode(row);
+            long rowHash = rowHash(columns.getMarketId(row), columns.getOutcomeId(row), columns.getSpecifiers(row));
+            if (columns.getEventType(row) == MatchDataColumns.EVENT_A) {
+                fingerprints.aHashes[m] = mix(fingerprints.aHashes[m] + rowHash);
+                fingerprints.aRows[m]++;
+            } else {
+                fingerprints.bHashes[m] = mix(fingerprints.bHashes[m] + rowHash);
+                fingerprints.bRows[m]++;
+            }
+        }
+        return fingerprints;
+    }
+
+    int matchCount() {
+        return aRows.length;
+    }
+
+    /**
+     * @return The number of rows of a match code, 0 for codes without rows in the store.
+     */
+    int rows(int matchCode) {
+        return aRows[matchCode] + bRows[matchCode];
+    }
+
+    MatchFingerprintDTO toDTO(int matchCode, String matchId, long runId) {
+        MatchFingerprintDTO dto = new MatchFingerprintDTO();
+        dto.setMatchId(matchId);
+        dto.setAFingerprint(aHashes[matchCode]);
+        dto.setBFingerprint(bHashes[matchCode]);
+        dto.setARows(aRows[matchCode]);
+        dto.setBRows(bRows[matchCode]);
+        dto.setRunId(runId);
+        return dto;
+    }
+
+    private static long rowHash(int marketId, String outcomeId, String specifiers) {
+        long hash = FNV_OFFSET;
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((marketId >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        hash = hash(hash, outcomeId);
+        return hash(hash, specifiers);
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return (hash ^ NULL_MARKER) * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // Field separator, so that ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0xffff) * FNV_PRIME;
+    }
+
+    /**
+     * MurmurHash3 finalizer: every input bit affects every output bit.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,66 @@
+package org.task2.services;
+
+import org.task2.model.MatchDataColumns;
+
+/**
+ * The rows of one event type grouped by MATCH_ID, built with a counting sort over the match id codes
+ * of a {@link MatchDataColumns} store.
+ * <p>
+ * The rows of match code {@code m} are {@code rows()[start(m)..end(m))}, in file order. No per-group
+ * objects are allocated: the whole grouping is two int arrays.
+ */
+final class MatchGroups {
+
+    private final int[] offsets;
+    private final int[] rows;
+
+    private MatchGroups(int[] offsets, int[] rows) {
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    static MatchGroups build(MatchDataColumns columns, byte eventType) {
+        int matchCount = columns.getMatchIdCount();
+        int[] offsets = new int[matchCount + 1];
+        int total = 0;
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.getEventType(row) == eventType) {
+                offsets[columns.getMatchIdCode(row) + 1]++;
+                total++;
+            }
+        }
+        for (int m = 0; m < matchCount; m++) {
+            offsets[m + 1] += offsets[m];
+        }
+
+        int[] rows = new int[total];
+        int[] next = new int[matchCount];
+        System.arraycopy(offsets, 0, next, 0, matchCount);
+        for (int row = 0; row < columns.size(); row++) {
+            if (columns.getEventType(row) == eventType) {
+                rows[next[columns.getMatchIdCode(row)]++] = row;
+            }
+        }
+        return new MatchGroups(offsets, rows);
+    }
+
+    int matchCount() {
+        return offsets.length - 1;
+    }
+
+    int start(int matchCode) {
+        return offsets[matchCode];
+    }
+
+    int end(int matchCode) {
+        return offsets[matchCode + 1];
+    }
+
+    int[] rows() {
+        return rows;
+    }
+
+    int size() {
+        return rows.length;
+    }
+}
@@ -0,0 +1,176 @@
+package org.task2.services;
+
+import org.task2.model.MatchDataDTO;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process LRU cache of the rows of recently requested MATCH_IDs, for all runs or scoped to one run.
+ * <p>
+ * Entries are dropped when a run writes rows of their MATCH_ID, and reloaded once they are older than the TTL,
+ * which bounds how long rows written by another node go unnoticed. The size bound counts MATCH_IDs. A load
+ * that overlaps a write of its MATCH_ID is returned but not cached, so an invalidation is never undone by a
+ * load that read the rows before the write committed.
+ */
+final class MatchHistoryCache {
+
+    @FunctionalInterface
+    interface Loader {
+        List<MatchDataDTO> load() throws Exception;
+    }
+
+    // Scope of the entry holding the rows of all runs
+    private static final String ALL_RUNS = "";
+
+    private final long ttlNanos;
+    // Per MATCH_ID, the entries by run scope, so that a write drops all of them at once
+    private final Map<String, Map<String, Entry>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    MatchHistoryCache(int maxMatchIds, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Entry>> eldest) {
+                if (size() > maxMatchIds) {
+                    sizeEvictions.add(eldest.getValue().size());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param runId The run the rows are scoped to, or {@code null} for all runs.
+     * @return The cached rows, or the rows read by {@code loader} if none are cached. Must not be modified.
+     */
+    List<MatchDataDTO> get(String matchId, String runId, Loader loader) throws Exception {
+        String scope = runId != null ? runId : ALL_RUNS;
+        // Marks the load in progress; a write of the MATCH_ID meanwhile drops it with the other entries
+        Entry loading = new Entry(null, 0);
+        synchronized (entries) {
+            Map<String, Entry> scopes = entries.get(matchId);
+            Entry entry = scopes != null ? scopes.get(scope) : null;
+            if (entry != null && entry.rows != null) {
+                if (System.nanoTime() - entry.loadedAt < ttlNanos) {
+                    hits.increment();
+                    return entry.rows;
+                }
+                expirations.increment();
+            }
+            misses.increment();
+            entries.computeIfAbsent(matchId, id -> new HashMap<>()).put(scope, loading);
+        }
+
+        long start = System.nanoTime();
+        List<MatchDataDTO> rows = List.copyOf(loader.load());
+        long loadedAt = System.nanoTime();
+        loadNanos.add(loadedAt - start);
+        synchronized (entries) {
+            Map<String, Entry> scopes = entries.get(matchId);
+            if (scopes != null && scopes.get(scope) == loading) {
+                scopes.put(scope, new Entry(rows, loadedAt));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Drops the entries of {@code matchIds}, after a run has written rows of them.
+     */
+    void invalidateAll(Iterable<String> matchIds) {
+        synchronized (entries) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            for (String matchId : matchIds) {
+                Map<String, Entry> scopes = entries.remove(matchId);
+                if (scopes != null) {
+                    invalidations.add(scopes.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all entries, after rows of unknown MATCH_IDs have been removed.
+     */
+    void clear() {
+        synchronized (entries) {
+            for (Map<String, Entry> scopes : entries.values()) {
+                invalidations.add(scopes.size());
+            }
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return The number of MATCH_IDs with cached entries.
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that loaded the rows, including those of expired entries.
+     */
+    long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The ratio of lookups served from the cache, or 0 before the first lookup.
+     */
+    double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    long sizeEvictions() {
+        return sizeEvictions.sum();
+    }
+
+    long expirations() {
+        return expirations.sum();
+    }
+
+    long invalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return The total time spent loading rows on misses, in nanoseconds.
+     */
+    long loadNanos() {
+        return loadNanos.sum();
+    }
+
+    private static final class Entry {
+        // null while the rows are being loaded
+        final List<MatchDataDTO> rows;
+        final long loadedAt;
+
+        Entry(List<MatchDataDTO> rows, long loadedAt) {
+            this.rows = rows;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
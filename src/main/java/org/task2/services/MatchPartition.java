@@ -0,0 +1,53 @@
+package org.task2.services;
+
+/**
+ * One of {@code count} equal ranges of the 32-bit MATCH_ID hash space. Every record of a MATCH_ID falls
+ * in the same partition, so nodes ingesting different partitions of one file never write the same
+ * MATCH_ID and per-match ordering is kept.
+ */
+final class MatchPartition {
+
+    static final MatchPartition ALL = new MatchPartition(0, 1);
+
+    private final int index;
+    private final int count;
+
+    MatchPartition(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid partition " + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    boolean contains(String matchId) {
+        return count == 1 || partitionOf(matchId, count) == index;
+    }
+
+    /**
+     * Maps the mixed hash of {@code matchId} onto {@code count} contiguous ranges.
+     */
+    static int partitionOf(String matchId, int count) {
+        // String.hashCode is specified by the JLS, so every node computes the same partition
+        int h = matchId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (int) (((h & 0xFFFFFFFFL) * count) >>> 32);
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
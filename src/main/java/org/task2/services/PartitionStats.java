@@ -0,0 +1,159 @@
+package org.task2.services;
+
+import org.task2.model.MatchDataColumns;
+import org.task2.model.PartitionClaimDTO;
+import org.task2.model.RunStatsDTO;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Statistics of the run partition a job is ingesting, accumulated by the writers as batches commit and
+ * flushed to the run registry by {@link FileProcessingService}.
+ * <p>
+ * A resumed partition starts from the statistics its failed attempts left in the registry, so only the rows
+ * written by this attempt are added.
+ */
+final class PartitionStats {
+
+    private final long runId;
+    private final int partitionIndex;
+    private final int attempt;
+    // Job counters when the partition was claimed, so the partition gets only its own rows
+    private final long parsedBefore;
+    private final long writtenBefore;
+    private final boolean resumed;
+    private final long previousWritten;
+    private final long previousCheckpoint;
+    private final LongAdder aRows = new LongAdder();
+    private final LongAdder bRows = new LongAdder();
+    private final LongAccumulator minDateInsertMicros = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxDateInsertMicros = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private volatile long matchIds;
+    private volatile long matchesUnchanged;
+    private volatile LongSupplier checkpoint;
+    // One flush at a time, so an older snapshot never overwrites a newer one
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile long lastFlushNanos = System.nanoTime();
+
+    PartitionStats(long runId, PartitionClaimDTO claim, long parsedBefore, long writtenBefore) {
+        this.runId = runId;
+        this.partitionIndex = claim.getPartitionIndex();
+        this.attempt = claim.getAttempt();
+        this.parsedBefore = parsedBefore;
+        this.writtenBefore = writtenBefore;
+        this.resumed = claim.isResumed();
+
+        RunStatsDTO previous = claim.getPreviousStats();
+        previousWritten = previous.getRowsWritten();
+        previousCheckpoint = previous.getCheckpointLine();
+        aRows.add(previous.getARows());
+        bRows.add(previous.getBRows());
+        if (previous.getMinDateInsert() != null) {
+            minDateInsertMicros.accumulate(MatchDataColumns.toMicros(previous.getMinDateInsert()));
+            maxDateInsertMicros.accumulate(MatchDataColumns.toMicros(previous.getMaxDateInsert()));
+        }
+    }
+
+    long getRunId() {
+        return runId;
+    }
+
+    int getPartitionIndex() {
+        return partitionIndex;
+    }
+
+    /**
+     * @return The attempt that claimed the partition, which fences the updates of earlier attempts.
+     */
+    int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * @return Whether an earlier attempt may already have written rows of the partition.
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * @return The data line before which every row was written by earlier attempts.
+     */
+    long getPreviousCheckpoint() {
+        return previousCheckpoint;
+    }
+
+    /**
+     * Sets the source of the checkpoint flushed with the statistics, for ingestions that write in file order.
+     */
+    void trackCheckpoint(LongSupplier lineCheckpoint) {
+        this.checkpoint = lineCheckpoint;
+    }
+
+    /**
+     * Records a committed batch.
+     */
+    void recordBatch(long aRowCount, long bRowCount, long minMicros, long maxMicros) {
+        aRows.add(aRowCount);
+        bRows.add(bRowCount);
+        minDateInsertMicros.accumulate(minMicros);
+        maxDateInsertMicros.accumulate(maxMicros);
+    }
+
+    void recordMatchIds(long count) {
+        matchIds = count;
+    }
+
+    /**
+     * Records the MATCH_IDs skipped by delta ingestion, which are not counted by {@link #recordMatchIds(long)}.
+     */
+    void recordMatchesUnchanged(long count) {
+        matchesUnchanged = count;
+    }
+
+    /**
+     * Starts a progress flush if the last flush is at least {@code intervalNanos} old and no other flush
+     * is running. A started flush must be ended with {@link #endFlush()}.
+     *
+     * @return Whether the caller should flush.
+     */
+    boolean tryBeginFlush(long intervalNanos) {
+        return System.nanoTime() - lastFlushNanos >= intervalNanos && flushLock.tryLock();
+    }
+
+    /**
+     * Starts the final flush of the partition, waiting for a running progress flush to end.
+     */
+    void beginFinalFlush() {
+        flushLock.lock();
+    }
+
+    void endFlush() {
+        lastFlushNanos = System.nanoTime();
+        flushLock.unlock();
+    }
+
+    RunStatsDTO snapshot(IngestionJob job) {
+        RunStatsDTO stats = new RunStatsDTO();
+        stats.setRowsParsed(job.getRowsParsed() - parsedBefore);
+        stats.setRowsWritten(previousWritten + job.getRowsWritten() - writtenBefore);
+        stats.setARows(aRows.sum());
+        stats.setBRows(bRows.sum());
+        stats.setMatchIds(matchIds);
+        stats.setMatchesUnchanged(matchesUnchanged);
+        LongSupplier lineCheckpoint = checkpoint;
+        stats.setCheckpointLine(lineCheckpoint == null
+                ? previousCheckpoint
+                : Math.max(previousCheckpoint, lineCheckpoint.getAsLong()));
+        long min = minDateInsertMicros.get();
+        long max = maxDateInsertMicros.get();
+        if (min <= max) {
+            stats.setMinDateInsert(MatchDataColumns.fromMicros(min));
+            stats.setMaxDateInsert(MatchDataColumns.fromMicros(max));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,60 @@
+package org.task2.services;
+
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.task2.repository.MatchDataRepository;
+import org.task2.repository.MatchFingerprintRepository;
+import org.task2.repository.RunRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Removes runs that finished more than {@code file-processing.retention.days} ago. Their rows go with
+ * their {@code match_data} partition, which is dropped as a whole instead of being deleted row by row.
+ * Delta fingerprints pointing at a dropped run are removed first, so the next feed writes those matches again.
+ */
+@ApplicationScoped
+public class RetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetentionService.class);
+
+    @Inject
+    MatchDataRepository matchDataRepository;
+
+    @Inject
+    RunRepository runRepository;
+
+    @Inject
+    MatchFingerprintRepository matchFingerprintRepository;
+
+    @Inject
+    FileProcessingService fileProcessingService;
+
+    @ConfigProperty(name = "file-processing.retention.days", defaultValue = "0")
+    int retentionDays;
+
+    @Scheduled(every = "{file-processing.retention.check-every}", delayed = "1m",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeExpiredRuns() {
+        if (retentionDays <= 0) {
+            return;
+        }
+        List<Long> runIds = runRepository.findRunsFinishedBefore(LocalDateTime.now().minusDays(retentionDays));
+        for (long runId : runIds) {
+            try {
+                matchFingerprintRepository.deleteFingerprintsOfRun(runId);
+                matchDataRepository.dropRunData(String.valueOf(runId));
+                runRepository.deleteRun(runId);
+                fileProcessingService.invalidateRun(runId);
+                logger.info("Dropped run {} after the {} day retention period", runId, retentionDays);
+            } catch (Exception e) {
+                logger.error("Error dropping run {}: {}", runId, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.task2.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of a single ingestion run, all tagged with its {@code run_id}. The jobs of a run share one instance,
+ * which records the meters it registers so that {@link #remove()} can drop them from the registry.
+ */
+class RunMetrics {
+
+    private final MeterRegistry registry;
+    private final String runId;
+    private final List<Meter> meters = new CopyOnWriteArrayList<>();
+    // Lanes currently writing rows of the run, by lanes name; each name has one gauge summing their pending rows
+    private final Map<String, Set<KeyedOrderedExecutor<?>>> activeLanes = new ConcurrentHashMap<>();
+    private volatile boolean removed;
+    private final Counter linesRead;
+    private final Counter malformedLines;
+    private final Counter rowsWrittenA;
+    private final Counter rowsWrittenB;
+    private final Counter rowsFailed;
+    private final Counter unchangedMatches;
+    private final Counter unchangedRows;
+    private final Timer batchLatency;
+    private final DistributionSummary batchRows;
+    private final Timer permitWait;
+    private final Timer laneWait;
+
+    RunMetrics(MeterRegistry registry, String runId) {
+        this.registry = registry;
+        this.runId = runId;
+        this.linesRead = track(Counter.builder("ingestion.lines.read")
+                .description("Data lines read from the input, header excluded")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+        this.malformedLines = track(Counter.builder("ingestion.lines.malformed")
+                .description("Lines skipped because they could not be parsed")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+        this.rowsWrittenA = rowsWritten(registry, runId, "A");
+        this.rowsWrittenB = rowsWritten(registry, runId, "B");
+        this.rowsFailed = track(Counter.builder("ingestion.rows.failed")
+                .description("Rows in batches that could not be written")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+        this.unchangedMatches = track(Counter.builder("ingestion.matches.unchanged")
+                .description("MATCH_IDs skipped by delta ingestion because their rows did not change")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+        this.unchangedRows = track(Counter.builder("ingestion.rows.unchanged")
+                .description("Rows of the MATCH_IDs skipped by delta ingestion")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+        this.batchLatency = track(Timer.builder("ingestion.batch.latency")
+                .description("Time to write one batch to the database")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .publishPercentileHistogram()
+                .register(registry));
+        this.batchRows = track(DistributionSummary.builder("ingestion.batch.rows")
+                .description("Rows per written batch")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+        this.permitWait = track(Timer.builder("ingestion.write.permit.wait")
+                .description("Time writers waited for one of the connections reserved for writes")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+        this.laneWait = track(Timer.builder("ingestion.lane.wait")
+                .description("Time the reader was blocked on a full per-MATCH_ID lane")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .register(registry));
+    }
+
+    private Counter rowsWritten(MeterRegistry registry, String runId, String eventType) {
+        return track(Counter.builder("ingestion.rows.written")
+                .description("Rows written to match_data")
+                .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                .tag("event_type", eventType)
+                .register(registry));
+    }
+
+    private <M extends Meter> M track(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    void linesRead(long lines) {
+        linesRead.increment(lines);
+    }
+
+    void malformedLines(long lines) {
+        malformedLines.increment(lines);
+    }
+
+    void rowsWritten(long aRows, long bRows) {
+        rowsWrittenA.increment(aRows);
+        rowsWrittenB.increment(bRows);
+    }
+
+    void rowsFailed(long rows) {
+        rowsFailed.increment(rows);
+    }
+
+    void unchanged(long matches, long rows) {
+        unchangedMatches.increment(matches);
+        unchangedRows.increment(rows);
+    }
+
+    void batchLatency(long nanos) {
+        batchLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void batchRows(int rows) {
+        batchRows.record(rows);
+    }
+
+    void permitWait(long nanos) {
+        permitWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void laneWait(long nanos) {
+        laneWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts the items queued but not yet written by {@code lanes} in the pending rows of {@code name} lanes
+     * until {@link #unregisterLanes} is called.
+     */
+    void registerLanes(String name, KeyedOrderedExecutor<?> lanes) {
+        if (removed) {
+            return;
+        }
+        activeLanes.computeIfAbsent(name, n -> {
+            // Registered once, against the set, so lanes started later for the run are reported as well
+            Set<KeyedOrderedExecutor<?>> active = ConcurrentHashMap.newKeySet();
+            track(Gauge.builder("ingestion.lanes.pending", active, RunMetrics::pending)
+                    .description("Rows queued on per-MATCH_ID lanes and not yet written")
+                    .tag(IngestionMetrics.RUN_ID_TAG, runId)
+                    .tag("lanes", n)
+                    .register(registry));
+            return active;
+        }).add(lanes);
+    }
+
+    void unregisterLanes(String name, KeyedOrderedExecutor<?> lanes) {
+        Set<KeyedOrderedExecutor<?>> active = activeLanes.get(name);
+        if (active != null) {
+            active.remove(lanes);
+        }
+    }
+
+    private static double pending(Set<KeyedOrderedExecutor<?>> lanes) {
+        long pending = 0;
+        for (KeyedOrderedExecutor<?> executor : lanes) {
+            pending += executor.getPending();
+        }
+        return pending;
+    }
+
+    /**
+     * Removes the meters of the run from the registry. Jobs still running keep updating the detached meters.
+     */
+    void remove() {
+        removed = true;
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+        activeLanes.clear();
+    }
+}
@@ -0,0 +1,67 @@
+package org.task2.services;
+
+import org.task2.model.RunDTO;
+import org.task2.model.RunStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongFunction;
+
+/**
+ * Small in-process LRU cache of run summaries read from the run registry. Finished runs no longer change
+ * and stay cached until evicted; running runs are reloaded once their entry is older than the TTL.
+ */
+final class RunSummaryCache {
+
+    private final long ttlNanos;
+    private final Map<Long, Entry> entries;
+
+    RunSummaryCache(int maxEntries, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    Optional<RunDTO> get(long runId, LongFunction<Optional<RunDTO>> loader) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(runId);
+        }
+        if (entry != null && (isFinished(entry.run) || System.nanoTime() - entry.loadedAt < ttlNanos)) {
+            return Optional.of(entry.run);
+        }
+
+        Optional<RunDTO> run = loader.apply(runId);
+        run.ifPresent(loaded -> {
+            synchronized (entries) {
+                entries.put(runId, new Entry(loaded, System.nanoTime()));
+            }
+        });
+        return run;
+    }
+
+    void invalidate(long runId) {
+        synchronized (entries) {
+            entries.remove(runId);
+        }
+    }
+
+    private static boolean isFinished(RunDTO run) {
+        return run.getStatus() == RunStatus.COMPLETED || run.getStatus() == RunStatus.FAILED;
+    }
+
+    private static final class Entry {
+        final RunDTO run;
+        final long loadedAt;
+
+        Entry(RunDTO run, long loadedAt) {
+            this.run = run;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
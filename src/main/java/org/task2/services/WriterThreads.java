@@ -0,0 +1,11 @@
+package org.task2.services;
+
+/**
+ * Selects the kind of threads that run the A and B writer tasks.
+ */
+public enum WriterThreads {
+    /** Fixed pools of platform threads, sized from the CPU count and the connection pool. */
+    PLATFORM,
+    /** One virtual thread per task; concurrent DB writes are bounded by the connection pool size instead. */
+    VIRTUAL
+}
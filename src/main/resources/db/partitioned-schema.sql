@@ -0,0 +1,48 @@
+-- Schema for file-processing.partitioning.enabled=true: match_data (and match_fact, for the normalized layout)
+-- partitioned by run_id, with one partition per run (match_data_run_<run id>) created when the run starts and
+-- dropped by retention. Apply it once, before enabling partitioning; the application refuses to create run
+-- partitions while the parent table is not partitioned.
+--
+-- On a database that already has a flat match_data, rename it first and move its rows over run by run:
+--   ALTER TABLE match_data RENAME TO match_data_flat;
+--   ALTER TABLE match_data_flat RENAME CONSTRAINT match_data_pkey TO match_data_flat_pkey;
+--   ALTER INDEX idx_match_id RENAME TO idx_match_data_flat_match_id;
+--   ALTER INDEX idx_date_insert RENAME TO idx_match_data_flat_date_insert;
+--   ALTER INDEX uk_match_data_natural_key RENAME TO uk_match_data_flat_natural_key;
+--   -- apply this script, then for every run id in match_data_flat:
+--   CREATE TABLE match_data_run_<run id> PARTITION OF match_data FOR VALUES IN ('<run id>');
+--   INSERT INTO match_data_run_<run id> SELECT * FROM match_data_flat WHERE run_id = '<run id>';
+
+CREATE SEQUENCE IF NOT EXISTS match_data_id_seq;
+CREATE TABLE match_data (
+    id bigint NOT NULL DEFAULT nextval('match_data_id_seq'),
+    match_id varchar(255) NOT NULL,
+    market_id integer NOT NULL,
+    outcome_id varchar(255) NOT NULL,
+    specifiers varchar(255),
+    date_insert timestamp(6) NOT NULL,
+    run_id varchar(255) NOT NULL,
+    sequence_number integer NOT NULL,
+    event_type varchar(1) NOT NULL,
+    PRIMARY KEY (id, run_id)
+) PARTITION BY LIST (run_id);
+CREATE INDEX idx_match_id ON match_data (match_id);
+CREATE INDEX idx_date_insert ON match_data (date_insert);
+-- Natural key of a row, which lets a resumed run skip the rows its failed attempt already wrote
+CREATE UNIQUE INDEX uk_match_data_natural_key ON match_data (run_id, match_id, event_type, sequence_number);
+
+-- Normalized layout (file-processing.storage=normalized): match_fact partitioned by its bigint run_id
+-- (match_fact_run_<run id>). Rename an existing flat match_fact and move its rows over like match_data above.
+CREATE TABLE match_fact (
+    run_id bigint NOT NULL,
+    date_insert timestamp(6) NOT NULL,
+    match_key integer NOT NULL,
+    outcome_key integer NOT NULL,
+    market_id integer NOT NULL,
+    sequence_number integer NOT NULL,
+    specifier_key integer,
+    event_type "char" NOT NULL
+) PARTITION BY LIST (run_id);
+CREATE INDEX idx_match_fact_match_key ON match_fact (match_key);
+CREATE INDEX idx_match_fact_date_insert ON match_fact (date_insert);
+CREATE UNIQUE INDEX uk_match_fact_natural_key ON match_fact (run_id, match_key, event_type, sequence_number);
@@ -3,4 +3,40 @@
 -- insert into myentity (id, field) values(1, 'field-1');
 -- insert into myentity (id, field) values(2, 'field-2');
 -- insert into myentity (id, field) values(3, 'field-3');
--- alter sequence myentity_seq restart with 4;
\ No newline at end of file
+-- alter sequence myentity_seq restart with 4;
+
+-- match_data is generated by Hibernate as a flat table. The partitioned schema used with
+-- file-processing.partitioning.enabled=true is in db/partitioned-schema.sql.
+
+-- Normalized layout (file-processing.storage=normalized): the strings are stored once in dimension tables with
+-- integer surrogate keys, and match_fact holds fixed-width rows of keys. Columns are ordered by alignment, so the
+-- rows carry no padding. This is the flat match_fact; db/partitioned-schema.sql partitions it by run_id.
+DROP TABLE IF EXISTS match_fact;
+DROP TABLE IF EXISTS match_dim;
+DROP TABLE IF EXISTS outcome_dim;
+DROP TABLE IF EXISTS specifier_dim;
+CREATE TABLE match_dim (
+    match_key integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    match_id varchar(255) NOT NULL UNIQUE
+);
+CREATE TABLE outcome_dim (
+    outcome_key integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    outcome_id varchar(255) NOT NULL UNIQUE
+);
+CREATE TABLE specifier_dim (
+    specifier_key integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    specifiers varchar(255) NOT NULL UNIQUE
+);
+CREATE TABLE match_fact (
+    run_id bigint NOT NULL,
+    date_insert timestamp(6) NOT NULL,
+    match_key integer NOT NULL,
+    outcome_key integer NOT NULL,
+    market_id integer NOT NULL,
+    sequence_number integer NOT NULL,
+    specifier_key integer,
+    event_type "char" NOT NULL
+);
+CREATE INDEX idx_match_fact_match_key ON match_fact (match_key);
+CREATE INDEX idx_match_fact_date_insert ON match_fact (date_insert);
+CREATE UNIQUE INDEX uk_match_fact_natural_key ON match_fact (run_id, match_key, event_type, sequence_number);
@@ -0,0 +1,60 @@
+package org.task2.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchDataColumnsTest {
+
+    @Test
+    void numbersRowsPerMatchIdAndEventType() {
+        MatchDataColumns columns = new MatchDataColumns("1", 4);
+        columns.add("m1", 1, "o", "s", 0, MatchDataColumns.EVENT_A);
+        columns.add("m1", 2, "o", null, 0, MatchDataColumns.EVENT_B);
+        columns.add("m2", 3, "o", "s", 0, MatchDataColumns.EVENT_A);
+        columns.add("m1", 4, "o", "s", 0, MatchDataColumns.EVENT_A);
+
+        assertEquals(1, columns.getSequenceNumber(0));
+        assertEquals(1, columns.getSequenceNumber(1));
+        assertEquals(1, columns.getSequenceNumber(2));
+        assertEquals(2, columns.getSequenceNumber(3));
+        assertNull(columns.getSpecifiers(1));
+    }
+
+    @Test
+    void retainMatchesKeepsOrderAndSequenceNumbersOfKeptRows() {
+        MatchDataColumns columns = new MatchDataColumns("1", 2);
+        columns.add("m1", 1, "o1", "s", 0, MatchDataColumns.EVENT_A);
+        columns.add("m2", 2, "o2", "s", 0, MatchDataColumns.EVENT_A);
+        columns.add("m1", 3, "o3", null, 0, MatchDataColumns.EVENT_B);
+        columns.add("m3", 4, "o4", "s", 0, MatchDataColumns.EVENT_A);
+        columns.add("m1", 5, "o5", "s", 0, MatchDataColumns.EVENT_A);
+        assertEquals(3, columns.countMatchesWithRows());
+
+        boolean[] keep = new boolean[columns.getMatchIdCount()];
+        keep[columns.getMatchIdCode(0)] = true; // m1
+        keep[columns.getMatchIdCode(3)] = true; // m3
+        columns.retainMatches(keep);
+
+        assertEquals(4, columns.size());
+        assertEquals(2, columns.countMatchesWithRows());
+        int[] marketIds = {1, 3, 4, 5};
+        int[] sequenceNumbers = {1, 1, 1, 2};
+        for (int row = 0; row < columns.size(); row++) {
+            assertEquals(marketIds[row], columns.getMarketId(row));
+            assertEquals(sequenceNumbers[row], columns.getSequenceNumber(row));
+        }
+        assertEquals("m3", columns.getMatchId(2));
+        assertEquals("o5", columns.getOutcomeId(3));
+    }
+
+    @Test
+    void retainingNoMatchesEmptiesTheStore() {
+        MatchDataColumns columns = new MatchDataColumns("1", 2);
+        columns.add("m1", 1, "o", "s", 0, MatchDataColumns.EVENT_A);
+        columns.retainMatches(new boolean[0]);
+
+        assertEquals(0, columns.size());
+        assertEquals(0, columns.countMatchesWithRows());
+    }
+}
@@ -0,0 +1,66 @@
+package org.task2.parser;
+
+import org.junit.jupiter.api.Test;
+import org.task2.model.MatchDataDTO;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchDataLineParserTest {
+
+    private final MatchDataLineParser parser = new MatchDataLineParser();
+
+    private boolean parse(String line, MatchDataDTO target) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(bytes, 0, bytes.length, target);
+    }
+
+    @Test
+    void parsesQuotedFields() {
+        MatchDataDTO row = new MatchDataDTO();
+        assertTrue(parse("'sr:match:1'|'60'|'3'|'total=2.5'", row));
+        assertEquals("sr:match:1", row.getMatchId());
+        assertEquals(60, row.getMarketId());
+        assertEquals("3", row.getOutcomeId());
+        assertEquals("total=2.5", row.getSpecifiers());
+    }
+
+    @Test
+    void missingOrEmptySpecifiersAreNull() {
+        MatchDataDTO row = new MatchDataDTO();
+        assertTrue(parse("sr:match:1|60|3", row));
+        assertNull(row.getSpecifiers());
+        assertTrue(parse("sr:match:1|60|3|", row));
+        assertNull(row.getSpecifiers());
+    }
+
+    @Test
+    void rejectsEmptyTrailingOutcome() {
+        MatchDataDTO row = new MatchDataDTO();
+        assertFalse(parse("a|1|", row));
+        assertFalse(parse("a|1||", row));
+        assertFalse(parse("a|1", row));
+    }
+
+    @Test
+    void acceptsEmptyOutcomeFollowedByFields() {
+        // Like String.split, only trailing empty fields are dropped
+        MatchDataDTO row = new MatchDataDTO();
+        assertTrue(parse("a|1||x", row));
+        assertEquals("", row.getOutcomeId());
+        assertEquals("x", row.getSpecifiers());
+        assertTrue(parse("a|1|''", row));
+        assertEquals("", row.getOutcomeId());
+    }
+
+    @Test
+    void rejectsInvalidMarketId() {
+        MatchDataDTO row = new MatchDataDTO();
+        assertFalse(parse("a|x|3", row));
+        assertFalse(parse("a||3", row));
+        assertFalse(parse("a|99999999999|3", row));
+        assertTrue(parse("a|-5|3", row));
+        assertEquals(-5, row.getMarketId());
+    }
+}
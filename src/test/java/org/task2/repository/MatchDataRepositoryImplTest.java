@@ -0,0 +1,119 @@
+package org.task2.repository;
+
+import org.junit.jupiter.api.Test;
+import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchDataRepositoryImplTest {
+
+    private static String copyValue(String value) {
+        return MatchDataRepositoryImpl.appendCopyValue(new StringBuilder(), value).toString();
+    }
+
+    @Test
+    void escapesCopyTextSpecialCharacters() {
+        assertEquals("total=2.5", copyValue("total=2.5"));
+        assertEquals("a\\\\b", copyValue("a\\b"));
+        assertEquals("a\\tb\\nc\\rd", copyValue("a\tb\nc\rd"));
+        assertEquals("\\\\N", copyValue("\\N"));
+        assertEquals("", copyValue(""));
+    }
+
+    @Test
+    void writesNullAsCopyNullMarker() {
+        assertEquals("\\N", copyValue(null));
+    }
+
+    @Test
+    void appendsOneTabSeparatedLinePerRow() {
+        MatchDataDTO row = new MatchDataDTO();
+        row.setMatchId("sr:match:1");
+        row.setMarketId(60);
+        row.setOutcomeId("3");
+        row.setSpecifiers(null);
+        row.setDateInsert(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6_000));
+        row.setRunId("7");
+        row.setSequenceNumber(2);
+        row.setEventType("A");
+
+        StringBuilder buffer = new StringBuilder();
+        MatchDataRepositoryImpl.appendCopyRow(buffer, row);
+        assertEquals("sr:match:1\t60\t3\t\\N\t2024-01-02T03:04:05.000006\t7\t2\tA\n", buffer.toString());
+    }
+
+    @Test
+    void exportsInNaturalKeyOrderFromTheRunPartition() throws Exception {
+        CapturingRepository repository = new CapturingRepository();
+        MatchDataQueryDTO query = new MatchDataQueryDTO();
+        query.setRunId("42");
+
+        repository.exportMatchData(query, row -> {
+        });
+
+        assertEquals("SELECT match_id, market_id, outcome_id, specifiers, date_insert, sequence_number, event_type " +
+                "FROM " + repository.tableFor("42") + " WHERE run_id = ? " +
+                "ORDER BY match_id, event_type, sequence_number", repository.sql);
+        assertEquals(List.of("42"), repository.parameters);
+    }
+
+    @Test
+    void resumesAfterTheCursorRowWithARowValueComparison() throws Exception {
+        CapturingRepository repository = new CapturingRepository();
+        MatchDataQueryDTO query = new MatchDataQueryDTO();
+        query.setRunId("42");
+        query.setEventType("B");
+        query.setAfterMatchId("sr:match:9");
+        query.setAfterEventType("B");
+        query.setAfterSequenceNumber(17);
+        query.setLimit(1000L);
+
+        repository.exportMatchData(query, row -> {
+        });
+
+        // The comparison and the order follow uk_match_data_natural_key, so the index serves both
+        assertTrue(repository.sql.endsWith(" WHERE run_id = ? AND event_type = ? " +
+                "AND (run_id, match_id, event_type, sequence_number) > (?, ?, ?, ?) " +
+                "ORDER BY match_id, event_type, sequence_number LIMIT ?"), repository.sql);
+        assertEquals(List.of("42", "B", "42", "sr:match:9", "B", 17, 1000L), repository.parameters);
+    }
+
+    @Test
+    void filtersOneMatchWithoutACursor() throws Exception {
+        CapturingRepository repository = new CapturingRepository();
+        MatchDataQueryDTO query = new MatchDataQueryDTO();
+        query.setRunId("42");
+        query.setMatchId("sr:match:1");
+
+        repository.exportMatchData(query, row -> {
+        });
+
+        assertTrue(repository.sql.endsWith(" WHERE run_id = ? AND match_id = ? " +
+                "ORDER BY match_id, event_type, sequence_number"), repository.sql);
+        assertEquals(List.of("42", "sr:match:1"), repository.parameters);
+    }
+
+    /**
+     * Records the export query instead of running it.
+     */
+    private static class CapturingRepository extends MatchDataRepositoryImpl {
+        private String sql;
+        private List<Object> parameters;
+
+        CapturingRepository() {
+            super(null, null, null, true, false, 1000);
+        }
+
+        @Override
+        long streamRows(String sql, List<Object> parameters, String runId, RowHandler handler) {
+            this.sql = sql;
+            this.parameters = new ArrayList<>(parameters);
+            return 0;
+        }
+    }
+}
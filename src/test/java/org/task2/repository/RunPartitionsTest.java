@@ -0,0 +1,71 @@
+package org.task2.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against the PostgreSQL database given by {@code -Dtest.postgres.url}, in a schema of its own that is
+ * recreated for every test. Skipped without a database.
+ */
+@EnabledIfSystemProperty(named = "test.postgres.url", matches = ".+")
+class RunPartitionsTest {
+
+    private static final String SCHEMA = "run_partitions_test";
+
+    private PGSimpleDataSource dataSource;
+
+    @BeforeEach
+    void createSchema() throws SQLException {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(System.getProperty("test.postgres.url"));
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            stmt.execute("CREATE SCHEMA " + SCHEMA);
+        }
+        dataSource.setCurrentSchema(SCHEMA);
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private RunPartitions partitions() {
+        return new RunPartitions(dataSource, "match_data", "(run_id, match_id)", false, true, false);
+    }
+
+    @Test
+    void refusesToPartitionAFlatTable() throws Exception {
+        execute("CREATE TABLE match_data (id bigint NOT NULL, run_id varchar(255) NOT NULL, " +
+                "match_id varchar(255) NOT NULL, PRIMARY KEY (id, run_id))");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> partitions().create("7"));
+
+        assertTrue(e.getMessage().contains("db/partitioned-schema.sql"), e.getMessage());
+    }
+
+    @Test
+    void createsARunPartitionOfAPartitionedTable() throws Exception {
+        execute("CREATE TABLE match_data (id bigint NOT NULL, run_id varchar(255) NOT NULL, " +
+                "match_id varchar(255) NOT NULL, PRIMARY KEY (id, run_id)) PARTITION BY LIST (run_id)");
+
+        partitions().create("7");
+
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT count(*) FROM pg_inherits " +
+                     "WHERE inhparent = 'match_data'::regclass AND inhrelid = 'match_data_run_7'::regclass")) {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.task2.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.task2.model.PartitionClaimDTO;
+import org.task2.model.RunStatsDTO;
+import org.task2.model.RunStatus;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against the PostgreSQL database given by {@code -Dtest.postgres.url}, in a schema of its own that is
+ * recreated for every test, since the registry relies on PostgreSQL row locking. Skipped without a database.
+ */
+@EnabledIfSystemProperty(named = "test.postgres.url", matches = ".+")
+class RunRepositoryImplTest {
+
+    private static final String SCHEMA = "run_repository_test";
+    private static final long LEASE_MILLIS = 60_000;
+
+    private PGSimpleDataSource dataSource;
+    private RunRepositoryImpl repository;
+
+    @BeforeEach
+    void createSchema() throws SQLException {
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(System.getProperty("test.postgres.url"));
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            stmt.execute("CREATE SCHEMA " + SCHEMA);
+            stmt.execute("SET search_path TO " + SCHEMA);
+            stmt.execute("CREATE SEQUENCE run_id_seq");
+            stmt.execute("CREATE TABLE run (id bigint PRIMARY KEY, file_name varchar(255) NOT NULL, " +
+                    "status varchar(16) NOT NULL, partition_count integer NOT NULL, rows_parsed bigint NOT NULL, " +
+                    "rows_written bigint NOT NULL, a_rows bigint NOT NULL, b_rows bigint NOT NULL, " +
+                    "match_ids bigint NOT NULL, matches_unchanged bigint NOT NULL, min_date_insert timestamp(6), " +
+                    "max_date_insert timestamp(6), created_at timestamp(6) NOT NULL, finished_at timestamp(6), " +
+                    "error varchar(2000), uploaded boolean NOT NULL)");
+            stmt.execute("CREATE TABLE run_partition (id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "run_id bigint NOT NULL, partition_index integer NOT NULL, node_id varchar(255), " +
+                    "status varchar(16) NOT NULL, attempts integer NOT NULL, rows_parsed bigint NOT NULL, " +
+                    "rows_written bigint NOT NULL, claimed_at timestamp(6), finished_at timestamp(6), " +
+                    "a_rows bigint NOT NULL, b_rows bigint NOT NULL, match_ids bigint NOT NULL, " +
+                    "matches_unchanged bigint NOT NULL, min_date_insert timestamp(6), max_date_insert timestamp(6), " +
+                    "checkpoint_line bigint NOT NULL, UNIQUE (run_id, partition_index))");
+        }
+        dataSource.setCurrentSchema(SCHEMA);
+        repository = new RunRepositoryImpl(dataSource);
+    }
+
+    /**
+     * Moves the last renewal of a partition's lease into the past, as if its node had stopped.
+     */
+    private void expireLease(long runId, int partitionIndex) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE run_partition SET claimed_at = claimed_at - INTERVAL '10 minutes' " +
+                    "WHERE run_id = " + runId + " AND partition_index = " + partitionIndex);
+        }
+    }
+
+    private static RunStatsDTO stats(long rowsWritten, long checkpointLine) {
+        RunStatsDTO stats = new RunStatsDTO();
+        stats.setRowsParsed(rowsWritten);
+        stats.setRowsWritten(rowsWritten);
+        stats.setCheckpointLine(checkpointLine);
+        return stats;
+    }
+
+    @Test
+    void runningPartitionsAreNotClaimedWhileTheirLeaseIsRenewed() throws Exception {
+        long runId = repository.createRun("feed.txt", 1, false);
+        PartitionClaimDTO claim = repository.claimPartition(runId, "node-1", LEASE_MILLIS).orElseThrow();
+        assertEquals(1, claim.getAttempt());
+
+        assertTrue(repository.renewLease(runId, claim.getPartitionIndex(), claim.getAttempt()));
+        assertEquals(Optional.empty(), repository.claimPartition(runId, "node-2", LEASE_MILLIS));
+    }
+
+    @Test
+    void expiredPartitionIsClaimedAgainFromItsCheckpoint() throws Exception {
+        long runId = repository.createRun("feed.txt", 1, false);
+        PartitionClaimDTO first = repository.claimPartition(runId, "node-1", LEASE_MILLIS).orElseThrow();
+        repository.updatePartition(runId, 0, first.getAttempt(), RunStatus.RUNNING, stats(500, 400), null);
+        expireLease(runId, 0);
+
+        PartitionClaimDTO second = repository.claimPartition(runId, "node-2", LEASE_MILLIS).orElseThrow();
+
+        assertEquals(0, second.getPartitionIndex());
+        assertEquals(2, second.getAttempt());
+        assertTrue(second.isResumed());
+        assertEquals(400, second.getPreviousStats().getCheckpointLine());
+        assertEquals(500, second.getPreviousStats().getRowsWritten());
+    }
+
+    @Test
+    void attemptThatLostItsLeaseCannotUpdateThePartition() throws Exception {
+        long runId = repository.createRun("feed.txt", 1, false);
+        PartitionClaimDTO first = repository.claimPartition(runId, "node-1", LEASE_MILLIS).orElseThrow();
+        expireLease(runId, 0);
+        PartitionClaimDTO second = repository.claimPartition(runId, "node-2", LEASE_MILLIS).orElseThrow();
+
+        assertFalse(repository.renewLease(runId, 0, first.getAttempt()));
+        assertThrows(IllegalStateException.class, () ->
+                repository.updatePartition(runId, 0, first.getAttempt(), RunStatus.FAILED, stats(10, 0), "stale"));
+
+        assertEquals(RunStatus.COMPLETED,
+                repository.updatePartition(runId, 0, second.getAttempt(), RunStatus.COMPLETED, stats(900, 0), null));
+        assertNull(repository.findRun(runId).orElseThrow().getError());
+    }
+
+    @Test
+    void resumesAPartitionAbandonedWhileRunning() throws Exception {
+        long runId = repository.createRun("feed.txt", 2, false);
+        PartitionClaimDTO abandoned = repository.claimPartition(runId, "node-1", LEASE_MILLIS).orElseThrow();
+        repository.updatePartition(runId, abandoned.getPartitionIndex(), abandoned.getAttempt(), RunStatus.RUNNING,
+                stats(300, 250), null);
+        PartitionClaimDTO completed = repository.claimPartition(runId, "node-2", LEASE_MILLIS).orElseThrow();
+        assertEquals(RunStatus.RUNNING, repository.updatePartition(runId, completed.getPartitionIndex(),
+                completed.getAttempt(), RunStatus.COMPLETED, stats(700, 0), null));
+
+        // Node 1 is still within its lease, so there is nothing to resume yet
+        assertEquals(0, repository.resumeRun(runId, LEASE_MILLIS));
+        expireLease(runId, abandoned.getPartitionIndex());
+        assertEquals(1, repository.resumeRun(runId, LEASE_MILLIS));
+        assertEquals(RunStatus.RUNNING, repository.findRun(runId).orElseThrow().getStatus());
+
+        PartitionClaimDTO resumed = repository.claimPartition(runId, "node-3", LEASE_MILLIS).orElseThrow();
+        assertEquals(abandoned.getPartitionIndex(), resumed.getPartitionIndex());
+        assertEquals(2, resumed.getAttempt());
+        assertEquals(250, resumed.getPreviousStats().getCheckpointLine());
+        assertEquals(RunStatus.COMPLETED, repository.updatePartition(runId, resumed.getPartitionIndex(),
+                resumed.getAttempt(), RunStatus.COMPLETED, stats(300, 0), null));
+        assertEquals(1000, repository.findRun(runId).orElseThrow().getRowsWritten());
+    }
+
+    @Test
+    void resumesFailedPartitions() throws Exception {
+        long runId = repository.createRun("feed.txt", 1, false);
+        PartitionClaimDTO claim = repository.claimPartition(runId, "node-1", LEASE_MILLIS).orElseThrow();
+        assertEquals(RunStatus.FAILED, repository.updatePartition(runId, 0, claim.getAttempt(), RunStatus.FAILED,
+                stats(10, 0), "write failed"));
+
+        assertEquals(1, repository.resumeRun(runId, LEASE_MILLIS));
+        assertEquals(0, repository.resumeRun(runId, LEASE_MILLIS));
+        assertNull(repository.findRun(runId).orElseThrow().getError());
+        assertEquals(2, repository.claimPartition(runId, "node-1", LEASE_MILLIS).orElseThrow().getAttempt());
+    }
+
+    @Test
+    void recordsWhetherTheInputWasUploaded() throws Exception {
+        assertTrue(repository.findRun(repository.createRun("upload", 1, true)).orElseThrow().isUploaded());
+        assertFalse(repository.findRun(repository.createRun("feed.txt", 1, false)).orElseThrow().isUploaded());
+    }
+}
@@ -0,0 +1,82 @@
+package org.task2.resource;
+
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.task2.model.RunDTO;
+import org.task2.services.FileProcessingService;
+import org.task2.services.IngestionJob;
+import org.task2.services.IngestionJobService;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class FileStreamResourceTest {
+
+    private final FileStreamResource resource = new FileStreamResource();
+
+    @BeforeEach
+    void setUp() {
+        resource.fileProcessingService = mock(FileProcessingService.class);
+        resource.ingestionJobService = mock(IngestionJobService.class);
+    }
+
+    private RunDTO run(boolean uploaded) {
+        RunDTO run = new RunDTO();
+        run.setId(42);
+        run.setFileName("upload");
+        run.setPartitionCount(1);
+        run.setUploaded(uploaded);
+        when(resource.fileProcessingService.findRun(42)).thenReturn(Optional.of(run));
+        return run;
+    }
+
+    @Test
+    void uploadedRunIsNotResumed() throws Exception {
+        run(true);
+
+        Response response = resource.resumeRun(42);
+
+        assertEquals(409, response.getStatus());
+        assertTrue(response.getEntity().toString().contains("was uploaded"), response.getEntity().toString());
+        // The partitions are not reset, so the run keeps its status
+        verify(resource.fileProcessingService, never()).resumeRun(anyLong());
+        verify(resource.ingestionJobService, never()).join(any());
+    }
+
+    @Test
+    void uploadedRunCannotBeJoined() throws Exception {
+        run(true);
+
+        Response response = resource.processFile(null, 1, 42L);
+
+        assertEquals(409, response.getStatus());
+        verify(resource.ingestionJobService, never()).join(any());
+    }
+
+    @Test
+    void runReadFromAFileIsResumed() throws Exception {
+        RunDTO run = run(false);
+        when(resource.fileProcessingService.resumeRun(42)).thenReturn(1);
+        when(resource.ingestionJobService.join(run)).thenReturn(new IngestionJob("job", "upload", 42L, 1));
+
+        assertEquals(202, resource.resumeRun(42).getStatus());
+        verify(resource.ingestionJobService).join(run);
+    }
+
+    @Test
+    void fileOutsideTheInputDirectoryIsRejected() throws Exception {
+        when(resource.fileProcessingService.resolveInput("/etc/passwd"))
+                .thenThrow(new IllegalArgumentException("File /etc/passwd is outside the input directory /data"));
+
+        Response response = resource.processFile("/etc/passwd", 1, null);
+
+        assertEquals(400, response.getStatus());
+        verify(resource.ingestionJobService, never()).submit(any(), anyInt());
+    }
+}
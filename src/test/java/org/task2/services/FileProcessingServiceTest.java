@@ -0,0 +1,186 @@
+package org.task2.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.task2.model.MatchDataColumns;
+import org.task2.model.MatchFingerprintDTO;
+import org.task2.model.PartitionClaimDTO;
+import org.task2.model.RunStatsDTO;
+import org.task2.repository.MatchDataRepository;
+import org.task2.repository.MatchFingerprintRepository;
+import org.task2.repository.RepositoryBackend;
+import org.task2.repository.RunRepository;
+import org.task2.repository.WriteMode;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class FileProcessingServiceTest {
+
+    private final FileProcessingService service = new FileProcessingService();
+    private final MatchDataRepository matchDataRepository = mock(MatchDataRepository.class);
+    private final MatchFingerprintRepository fingerprintRepository = mock(MatchFingerprintRepository.class);
+
+    @TempDir
+    Path inputDir;
+
+    @BeforeEach
+    void setUp() {
+        service.matchDataRepository = matchDataRepository;
+        service.matchFingerprintRepository = fingerprintRepository;
+        service.runRepository = mock(RunRepository.class);
+        service.ingestionMetrics = new IngestionMetrics(new SimpleMeterRegistry(), 5);
+        service.writeMode = WriteMode.COPY;
+        service.ingestMode = IngestMode.GROUPED;
+        service.writerThreads = WriterThreads.PLATFORM;
+        service.repositoryBackend = RepositoryBackend.JDBC;
+        service.maxPoolSize = 10;
+        service.batchInitialSize = 100;
+        service.batchMinSize = 10;
+        service.batchMaxSize = 1000;
+        service.batchTargetLatencyMs = 100;
+        service.batchMaxFlushIntervalMs = 50;
+        service.deltaEnabled = true;
+        service.deltaCacheSize = 100;
+        service.deltaCacheTtlMs = 60_000;
+        service.matchHistoryCacheSize = 100;
+        service.matchHistoryCacheTtlMs = 60_000;
+        service.statsCacheSize = 10;
+        service.statsCacheTtlMs = 1000;
+        service.statsFlushIntervalMs = 60_000;
+        service.configuredNodeId = Optional.of("test");
+        service.inputBaseDir = inputDir.resolve("input").toString();
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private static MatchDataColumns columns() {
+        MatchDataColumns columns = new MatchDataColumns("7", 8);
+        columns.add("unchanged", 1, "o", "s=1", 0, MatchDataColumns.EVENT_A);
+        columns.add("changed", 1, "o", "s=1", 0, MatchDataColumns.EVENT_A);
+        columns.add("unchanged", 2, "o", null, 0, MatchDataColumns.EVENT_B);
+        columns.add("new", 3, "o", null, 0, MatchDataColumns.EVENT_B);
+        return columns;
+    }
+
+    private IngestionJob startJob() {
+        return startJob(1);
+    }
+
+    private IngestionJob startJob(int partitionCount) {
+        IngestionJob job = new IngestionJob("job", "feed.txt", null, partitionCount);
+        job.start("7", service.ingestionMetrics.forRun("7"));
+        PartitionClaimDTO claim = new PartitionClaimDTO();
+        claim.setAttempt(1);
+        claim.setPreviousStats(new RunStatsDTO());
+        job.beginPartition(claim);
+        return job;
+    }
+
+    @Test
+    void deltaIngestionCountsOnlyTheMatchesItWrites() throws Exception {
+        // Stored fingerprints: "unchanged" as in the feed, "changed" with different rows
+        MatchDataColumns previous = columns();
+        MatchFingerprints fingerprints = MatchFingerprints.build(previous);
+        MatchFingerprintDTO unchanged = fingerprints.toDTO(0, "unchanged", 3);
+        MatchFingerprintDTO changed = fingerprints.toDTO(0, "changed", 3);
+        when(fingerprintRepository.findFingerprints(anyCollection()))
+                .thenReturn(Map.of("unchanged", unchanged, "changed", changed));
+
+        IngestionJob job = startJob();
+        service.writeColumns(columns(), job);
+
+        RunStatsDTO stats = job.partitionStats().snapshot(job);
+        assertEquals(2, stats.getMatchIds());
+        assertEquals(1, stats.getMatchesUnchanged());
+        assertEquals(2, stats.getRowsWritten());
+        assertEquals(1, stats.getARows());
+        assertEquals(1, stats.getBRows());
+        verify(fingerprintRepository).saveFingerprints(argThat((Collection<MatchFingerprintDTO> saved) -> saved.size() == 2
+                && saved.stream().noneMatch(f -> f.getMatchId().equals("unchanged"))));
+    }
+
+    @Test
+    void withoutStoredFingerprintsEveryMatchIsWritten() throws Exception {
+        when(fingerprintRepository.findFingerprints(anyCollection())).thenReturn(Map.of());
+
+        IngestionJob job = startJob();
+        service.writeColumns(columns(), job);
+
+        RunStatsDTO stats = job.partitionStats().snapshot(job);
+        assertEquals(3, stats.getMatchIds());
+        assertEquals(0, stats.getMatchesUnchanged());
+        assertEquals(4, stats.getRowsWritten());
+    }
+
+    @Test
+    void singlePartitionRunsReuseCachedFingerprints() throws Exception {
+        MatchFingerprintDTO unchanged = MatchFingerprints.build(columns()).toDTO(0, "unchanged", 3);
+        when(fingerprintRepository.findFingerprints(anyCollection())).thenReturn(Map.of("unchanged", unchanged));
+
+        service.writeColumns(columns(), startJob());
+        IngestionJob job = startJob();
+        service.writeColumns(columns(), job);
+
+        // The first write cached the loaded fingerprint and the ones it saved, so every match is unchanged now
+        verify(fingerprintRepository, times(1)).findFingerprints(anyCollection());
+        assertEquals(3, job.partitionStats().snapshot(job).getMatchesUnchanged());
+    }
+
+    @Test
+    void partitionedRunsCompareAgainstTheStoredFingerprints() throws Exception {
+        MatchDataColumns previous = columns();
+        MatchFingerprints fingerprints = MatchFingerprints.build(previous);
+        MatchFingerprintDTO cached = fingerprints.toDTO(0, "unchanged", 3);
+        // Another node wrote a different version of the match after this node cached it
+        MatchFingerprintDTO written = fingerprints.toDTO(1, "unchanged", 4);
+        when(fingerprintRepository.findFingerprints(anyCollection()))
+                .thenReturn(Map.of("unchanged", cached))
+                .thenReturn(Map.of("unchanged", written));
+        service.writeColumns(columns(), startJob());
+
+        IngestionJob job = startJob(2);
+        service.writeColumns(columns(), job);
+
+        verify(fingerprintRepository, times(2)).findFingerprints(argThat((Collection<String> ids) -> ids.size() == 3));
+        RunStatsDTO stats = job.partitionStats().snapshot(job);
+        assertEquals(0, stats.getMatchesUnchanged());
+        assertEquals(4, stats.getRowsWritten());
+    }
+
+    @Test
+    void readsInputFromTheInputDirectory() throws Exception {
+        Path input = Files.createDirectories(inputDir.resolve("input"));
+        Path feed = Files.writeString(input.resolve("feed.txt"), "header\n");
+
+        assertEquals(Optional.of(feed), service.resolveInput("feed.txt"));
+        assertEquals(Optional.of(feed), service.resolveInput(feed.toString()));
+        // Not a file there, so looked up on the classpath
+        assertEquals(Optional.empty(), service.resolveInput("data.txt"));
+    }
+
+    @Test
+    void rejectsInputOutsideTheInputDirectory() throws Exception {
+        Path input = Files.createDirectories(inputDir.resolve("input"));
+        Path secret = Files.writeString(inputDir.resolve("secret.txt"), "secret\n");
+        Files.createSymbolicLink(input.resolve("link.txt"), secret);
+
+        assertThrows(IllegalArgumentException.class, () -> service.resolveInput(secret.toString()));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveInput("../secret.txt"));
+        assertThrows(IllegalArgumentException.class, () -> service.resolveInput("link.txt"));
+    }
+}
@@ -0,0 +1,123 @@
+package org.task2.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestionMetricsTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private boolean hasMeters(String runId) {
+        return registry.getMeters().stream()
+                .anyMatch(meter -> runId.equals(meter.getId().getTag(IngestionMetrics.RUN_ID_TAG)));
+    }
+
+    @Test
+    void dropsTheMetersOfFinishedRunsBeyondTheRetainedOnes() {
+        IngestionMetrics metrics = new IngestionMetrics(registry, 2);
+        for (int run = 1; run <= 3; run++) {
+            RunMetrics runMetrics = metrics.forRun(String.valueOf(run));
+            runMetrics.linesRead(10);
+            runMetrics.registerLanes("a-events", lanes());
+            metrics.release(String.valueOf(run));
+        }
+
+        assertTrue(registry.find("ingestion.lines.read").tag(IngestionMetrics.RUN_ID_TAG, "1").meters().isEmpty());
+        assertTrue(registry.find("ingestion.lanes.pending").tag(IngestionMetrics.RUN_ID_TAG, "1").meters().isEmpty());
+        assertFalse(hasMeters("1"));
+        for (String run : new String[]{"2", "3"}) {
+            assertEquals(10, registry.get("ingestion.lines.read").tag(IngestionMetrics.RUN_ID_TAG, run).counter().count());
+        }
+    }
+
+    @Test
+    void keepsTheMetersOfRunningRuns() {
+        IngestionMetrics metrics = new IngestionMetrics(registry, 1);
+        metrics.forRun("1").linesRead(1);
+        for (int run = 2; run <= 4; run++) {
+            metrics.forRun(String.valueOf(run)).linesRead(1);
+            metrics.release(String.valueOf(run));
+        }
+
+        // Run 1 is still running, so only the finished runs before run 4 were dropped
+        assertTrue(hasMeters("1"));
+        assertFalse(hasMeters("2"));
+        assertFalse(hasMeters("3"));
+        assertTrue(hasMeters("4"));
+
+        metrics.release("1");
+        assertTrue(hasMeters("1"));
+        assertFalse(hasMeters("4"));
+    }
+
+    @Test
+    void runFinishesWhenItsLastJobReleasesItsMeters() {
+        IngestionMetrics metrics = new IngestionMetrics(registry, 1);
+        RunMetrics first = metrics.forRun("1");
+        first.linesRead(1);
+        // A second job joins the run on this node
+        assertSame(first, metrics.forRun("1"));
+        metrics.forRun("2").linesRead(1);
+        metrics.release("2");
+
+        metrics.release("1");
+        metrics.forRun("3").linesRead(1);
+        metrics.release("3");
+        assertTrue(hasMeters("1"));
+        assertFalse(hasMeters("2"));
+
+        metrics.release("1");
+        assertFalse(hasMeters("3"));
+        assertTrue(hasMeters("1"));
+    }
+
+    @Test
+    void jobsOfARetainedRunShareItsMeters() {
+        IngestionMetrics metrics = new IngestionMetrics(registry, 1);
+        metrics.forRun("1").linesRead(1);
+        metrics.forRun("1").linesRead(2);
+
+        assertSame(metrics.forRun("1"), metrics.forRun("1"));
+        assertEquals(3, registry.get("ingestion.lines.read").tag(IngestionMetrics.RUN_ID_TAG, "1").counter().count());
+    }
+
+    @Test
+    void lanesGaugeFollowsTheLanesOfLaterJobs() throws InterruptedException {
+        RunMetrics metrics = new IngestionMetrics(registry, 5).forRun("1");
+        KeyedOrderedExecutor<Integer> first = lanes();
+        metrics.registerLanes("b-events", first);
+        first.submit(1, 1);
+        assertEquals(1, pendingGauge().value());
+        metrics.unregisterLanes("b-events", first);
+        assertEquals(0, pendingGauge().value());
+
+        KeyedOrderedExecutor<Integer> second = lanes();
+        metrics.registerLanes("b-events", second);
+        second.submit(1, 1);
+        second.submit(2, 2);
+        assertEquals(2, pendingGauge().value());
+        assertEquals(1, registry.find("ingestion.lanes.pending").meters().size());
+    }
+
+    private Gauge pendingGauge() {
+        return registry.get("ingestion.lanes.pending").tag("lanes", "b-events").gauge();
+    }
+
+    /**
+     * Lanes whose drain tasks never run, so submitted items stay pending.
+     */
+    private static KeyedOrderedExecutor<Integer> lanes() {
+        Executor idle = task -> {
+        };
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(100, 10, 1000, 100_000_000L, 50_000_000L);
+        return new KeyedOrderedExecutor<>(idle, 2, Integer.MAX_VALUE, batchSizer, batch -> {
+        }, nanos -> {
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package org.task2.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedOrderedExecutorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+        flushTimer.shutdownNow();
+    }
+
+    private static AdaptiveBatchSizer batchSizer(int batchSize, long flushIntervalMillis) {
+        return new AdaptiveBatchSizer(batchSize, batchSize, batchSize, 100_000_000L, flushIntervalMillis * 1_000_000L);
+    }
+
+    @Test
+    void handlesTheItemsOfEachKeyInSubmissionOrder() throws InterruptedException {
+        Map<Integer, List<Integer>> handled = new ConcurrentHashMap<>();
+        KeyedOrderedExecutor<int[]> lanes = new KeyedOrderedExecutor<>(executor, 3, 16, batchSizer(7, 0),
+                batch -> {
+                    for (int[] item : batch) {
+                        handled.computeIfAbsent(item[0], k -> new ArrayList<>()).add(item[1]);
+                    }
+                }, nanos -> {
+                });
+
+        for (int i = 0; i < 10_000; i++) {
+            int key = i % 37;
+            lanes.submit(key, new int[]{key, i});
+        }
+        lanes.awaitCompletion();
+
+        assertEquals(10_000, lanes.getItemsHandled());
+        assertEquals(0, lanes.getPending());
+        assertEquals(37, handled.size());
+        for (List<Integer> values : handled.values()) {
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue(values.get(i - 1) < values.get(i), "out of order: " + values);
+            }
+        }
+    }
+
+    @Test
+    void failedBatchesHoldBackTheLowWatermark() throws InterruptedException {
+        KeyedOrderedExecutor<Long> lanes = new KeyedOrderedExecutor<>(executor, 2, Integer.MAX_VALUE, batchSizer(1, 0),
+                null, batch -> {
+                    if (batch.get(0) == 5L) {
+                        throw new IllegalStateException("write failed");
+                    }
+                }, nanos -> {
+                }, Long::longValue);
+
+        for (long line = 0; line < 10; line++) {
+            lanes.submit(line, line);
+        }
+        lanes.awaitCompletion();
+
+        assertEquals(1, lanes.getItemsFailed());
+        assertEquals(9, lanes.getItemsHandled());
+        assertEquals(5, lanes.lowWatermark(10));
+    }
+
+    @Test
+    void flushTimerDrainsPartialBatches() throws InterruptedException {
+        List<Integer> batchSizes = new ArrayList<>();
+        CountDownLatch drained = new CountDownLatch(1);
+        AdaptiveBatchSizer batchSizer = batchSizer(100, 200);
+        // The flush interval follows the measured write latency, capped at the maximum
+        batchSizer.record(0, 1_000_000_000L);
+        assertEquals(200_000_000L, batchSizer.flushIntervalNanos());
+        KeyedOrderedExecutor<Integer> lanes = new KeyedOrderedExecutor<>(executor, 1, Integer.MAX_VALUE,
+                batchSizer, flushTimer, batch -> {
+                    synchronized (batchSizes) {
+                        batchSizes.add(batch.size());
+                    }
+                    drained.countDown();
+                }, nanos -> {
+                }, null);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            lanes.submit(i, i);
+        }
+        assertFalse(drained.await(50, TimeUnit.MILLISECONDS));
+        assertTrue(drained.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= 150_000_000L);
+        lanes.awaitCompletion();
+        assertEquals(List.of(3), batchSizes);
+    }
+
+    @Test
+    void shutdownDropsQueuedItemsAndStopsDraining() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> handled = new ArrayList<>();
+        KeyedOrderedExecutor<Long> lanes = new KeyedOrderedExecutor<>(executor, 1, Integer.MAX_VALUE, batchSizer(1, 0),
+                null, batch -> {
+                    started.countDown();
+                    release.await();
+                    synchronized (handled) {
+                        handled.addAll(batch);
+                    }
+                }, nanos -> {
+                }, Long::longValue);
+
+        for (long line = 0; line < 5; line++) {
+            lanes.submit(0, line);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        lanes.shutdown();
+        release.countDown();
+        lanes.awaitCompletion();
+
+        // Only the batch in flight at shutdown is written
+        assertEquals(List.of(0L), handled);
+        assertEquals(4, lanes.getItemsFailed());
+        assertEquals(0, lanes.getPending());
+        assertEquals(1, lanes.lowWatermark(5));
+    }
+}
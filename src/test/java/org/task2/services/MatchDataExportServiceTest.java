@@ -0,0 +1,71 @@
+package org.task2.services;
+
+import org.junit.jupiter.api.Test;
+import org.task2.model.MatchDataDTO;
+import org.task2.model.MatchDataQueryDTO;
+import org.task2.repository.MatchDataRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MatchDataExportServiceTest {
+
+    private final MatchDataQueryDTO query = new MatchDataQueryDTO();
+
+    private String export(ExportFormat format) throws Exception {
+        query.setRunId("7");
+        MatchDataExportService service = new MatchDataExportService();
+        service.matchDataRepository = mock(MatchDataRepository.class);
+        when(service.matchDataRepository.exportMatchData(same(query), any())).thenAnswer(invocation -> {
+            MatchDataRepository.RowHandler handler = invocation.getArgument(1);
+            // Like the repository, one instance is refilled for every row
+            MatchDataDTO row = new MatchDataDTO();
+            row.setRunId("7");
+            fill(row, "sr:match:1", "3", "total=2.5", 1, "A");
+            handler.handle(row);
+            fill(row, "sr:match:1", "say \"hi\",\nbye", null, 2, "B");
+            handler.handle(row);
+            return 2L;
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, service.export(query, format, out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void fill(MatchDataDTO row, String matchId, String outcomeId, String specifiers, int sequence,
+                             String eventType) {
+        row.setMatchId(matchId);
+        row.setMarketId(60);
+        row.setOutcomeId(outcomeId);
+        row.setSpecifiers(specifiers);
+        row.setDateInsert(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+        row.setSequenceNumber(sequence);
+        row.setEventType(eventType);
+    }
+
+    @Test
+    void writesOneJsonObjectPerLine() throws Exception {
+        assertEquals("""
+                {"match_id":"sr:match:1","market_id":60,"outcome_id":"3","specifiers":"total=2.5","date_insert":"2024-01-02T03:04:05","sequence_number":1,"event_type":"A"}
+                {"match_id":"sr:match:1","market_id":60,"outcome_id":"say \\"hi\\",\\nbye","specifiers":null,"date_insert":"2024-01-02T03:04:05","sequence_number":2,"event_type":"B"}
+                """, export(ExportFormat.NDJSON));
+    }
+
+    @Test
+    void writesCsvWithHeaderAndQuotedFields() throws Exception {
+        assertEquals("""
+                match_id,market_id,outcome_id,specifiers,date_insert,sequence_number,event_type
+                sr:match:1,60,3,total=2.5,2024-01-02T03:04:05,1,A
+                sr:match:1,60,"say ""hi"",
+                bye",,2024-01-02T03:04:05,2,B
+                """, export(ExportFormat.CSV));
+    }
+}
@@ -0,0 +1,46 @@
+package org.task2.services;
+
+import org.junit.jupiter.api.Test;
+import org.task2.model.MatchDataColumns;
+import org.task2.model.MatchFingerprintDTO;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchFingerprintsTest {
+
+    private static MatchFingerprintDTO fingerprint(long runId, String... rows) {
+        MatchDataColumns columns = new MatchDataColumns(String.valueOf(runId), rows.length);
+        for (String row : rows) {
+            String[] fields = row.split("\\|", -1);
+            String specifiers = fields[3].isEmpty() ? null : fields[3];
+            columns.add(fields[0], Integer.parseInt(fields[1]), fields[2], specifiers, runId,
+                    specifiers != null ? MatchDataColumns.EVENT_A : MatchDataColumns.EVENT_B);
+        }
+        return MatchFingerprints.build(columns).toDTO(0, columns.getMatchIdForCode(0), runId);
+    }
+
+    @Test
+    void sameRowsInAnotherRunHaveTheSameContent() {
+        MatchFingerprintDTO first = fingerprint(1, "m|1|o|s=1", "m|2|o|", "m|3|o|s=2");
+        MatchFingerprintDTO second = fingerprint(2, "m|1|o|s=1", "m|2|o|", "m|3|o|s=2");
+        assertTrue(first.sameContent(second));
+        assertEquals(2, first.getARows());
+        assertEquals(1, first.getBRows());
+    }
+
+    @Test
+    void changedMovedAddedOrRemovedRowsChangeTheContent() {
+        MatchFingerprintDTO base = fingerprint(1, "m|1|o|s=1", "m|3|o|s=2");
+        assertFalse(base.sameContent(fingerprint(2, "m|1|o|s=1", "m|3|o|s=3")));
+        assertFalse(base.sameContent(fingerprint(2, "m|3|o|s=2", "m|1|o|s=1")));
+        assertFalse(base.sameContent(fingerprint(2, "m|1|o|s=1", "m|3|o|s=2", "m|4|o|s=1")));
+        assertFalse(base.sameContent(fingerprint(2, "m|1|o|s=1")));
+        assertFalse(base.sameContent(null));
+    }
+
+    @Test
+    void missingAndEmptyFieldsDiffer() {
+        assertFalse(fingerprint(1, "m|1||").sameContent(fingerprint(1, "m|1|o|")));
+        assertFalse(fingerprint(1, "m|1|o|a=1").sameContent(fingerprint(1, "m|1|o|a=1", "m|1|o|")));
+    }
+}
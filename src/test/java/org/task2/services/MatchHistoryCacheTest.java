@@ -0,0 +1,167 @@
+package org.task2.services;
+
+import org.junit.jupiter.api.Test;
+import org.task2.model.MatchDataDTO;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchHistoryCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private MatchHistoryCache.Loader loader(String matchId) {
+        return () -> {
+            loads.incrementAndGet();
+            return rows(matchId);
+        };
+    }
+
+    private static List<MatchDataDTO> rows(String matchId) {
+        MatchDataDTO row = new MatchDataDTO();
+        row.setMatchId(matchId);
+        return List.of(row);
+    }
+
+    @Test
+    void servesRepeatedLookupsFromTheCache() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 60_000);
+        List<MatchDataDTO> first = cache.get("m1", null, loader("m1"));
+        assertSame(first, cache.get("m1", null, loader("m1")));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0.5, cache.hitRatio());
+    }
+
+    @Test
+    void cachesEachRunScopeSeparately() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 60_000);
+        cache.get("m1", null, loader("m1"));
+        cache.get("m1", "7", loader("m1"));
+        cache.get("m1", "7", loader("m1"));
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void reloadsExpiredEntries() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 0);
+        cache.get("m1", null, loader("m1"));
+        cache.get("m1", null, loader("m1"));
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.expirations());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedMatchIds() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(2, 60_000);
+        cache.get("m1", null, loader("m1"));
+        cache.get("m1", "7", loader("m1"));
+        cache.get("m2", null, loader("m2"));
+        cache.get("m1", null, loader("m1"));
+        cache.get("m3", null, loader("m3"));
+
+        assertEquals(2, cache.size());
+        // Both scopes of m2 went with it, m1 was used more recently
+        assertEquals(1, cache.sizeEvictions());
+        cache.get("m1", "7", loader("m1"));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void writesDropEveryScopeOfTheirMatchIds() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 60_000);
+        cache.get("m1", null, loader("m1"));
+        cache.get("m1", "7", loader("m1"));
+        cache.get("m2", null, loader("m2"));
+
+        cache.invalidateAll(List.of("m1", "unknown"));
+
+        assertEquals(2, cache.invalidations());
+        assertEquals(1, cache.size());
+        cache.get("m1", "7", loader("m1"));
+        cache.get("m2", null, loader("m2"));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void loadOverlappingAWriteIsNotCached() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 60_000);
+        List<MatchDataDTO> stale = cache.get("m1", null, () -> {
+            loads.incrementAndGet();
+            // The write commits after the rows were read
+            List<MatchDataDTO> rows = rows("m1");
+            cache.invalidateAll(List.of("m1"));
+            return rows;
+        });
+
+        assertEquals("m1", stale.get(0).getMatchId());
+        assertEquals(0, cache.size());
+        cache.get("m1", null, loader("m1"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void loadOverlappingAClearIsNotCached() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 60_000);
+        cache.get("m1", null, () -> {
+            loads.incrementAndGet();
+            cache.clear();
+            return rows("m1");
+        });
+
+        cache.get("m1", null, loader("m1"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void failedLoadsAreRetried() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 60_000);
+        assertThrows(IllegalStateException.class, () -> cache.get("m1", null, () -> {
+            throw new IllegalStateException("database down");
+        }));
+
+        cache.get("m1", null, loader("m1"));
+        cache.get("m1", null, loader("m1"));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    void writeDuringAConcurrentLoadKeepsTheStaleRowsOut() throws Exception {
+        MatchHistoryCache cache = new MatchHistoryCache(10, 60_000);
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<MatchDataDTO>> load = executor.submit(() -> cache.get("m1", null, () -> {
+                List<MatchDataDTO> rows = rows("m1");
+                read.countDown();
+                assertTrue(written.await(5, TimeUnit.SECONDS));
+                return rows;
+            }));
+            assertTrue(read.await(5, TimeUnit.SECONDS));
+            cache.invalidateAll(List.of("m1"));
+            written.countDown();
+            load.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        cache.get("m1", null, loader("m1"));
+        assertEquals(1, loads.get());
+        assertEquals(0, cache.hits());
+    }
+}